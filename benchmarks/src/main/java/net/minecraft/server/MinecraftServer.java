@@ -0,0 +1,15 @@
+package net.minecraft.server;
+
+import net.minecraft.src.ServerConfigurationManager;
+
+/**
+* Stand-in for the vanilla server so NetAPI can be benchmarked
+* without one. Only what NetAPI uses is here.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class MinecraftServer {
+	public ServerConfigurationManager configManager = new ServerConfigurationManager();
+}
\ No newline at end of file
@@ -0,0 +1,16 @@
+package net.minecraft.src;
+
+/**
+* Stand-in for the vanilla player
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class EntityPlayer {
+	public String username;
+	public double posX;
+	public double posY;
+	public double posZ;
+	public int dimension;
+}
\ No newline at end of file
@@ -0,0 +1,12 @@
+package net.minecraft.src;
+
+/**
+* Stand-in for the vanilla server side player
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class EntityPlayerMP extends EntityPlayer {
+	public NetServerHandler playerNetServerHandler;
+}
\ No newline at end of file
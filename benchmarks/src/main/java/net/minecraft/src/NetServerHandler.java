@@ -0,0 +1,12 @@
+package net.minecraft.src;
+
+/**
+* Stand-in for the vanilla player connection handler
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetServerHandler {
+	public NetworkManager netManager;
+}
\ No newline at end of file
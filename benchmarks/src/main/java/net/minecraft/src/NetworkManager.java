@@ -0,0 +1,13 @@
+package net.minecraft.src;
+
+/**
+* Stand-in for the vanilla network manager
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetworkManager {
+	public void setUsername(String username) {
+	}
+}
\ No newline at end of file
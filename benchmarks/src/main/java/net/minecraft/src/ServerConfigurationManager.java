@@ -0,0 +1,21 @@
+package net.minecraft.src;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+* Stand-in for the vanilla player list. The benchmarks log
+* players in to a MemoryPlayerDirectory instead, so this is
+* only needed to compile NetAPI.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class ServerConfigurationManager {
+	public List playerEntities = new ArrayList();
+	
+	public EntityPlayerMP getPlayerEntity(String username) {
+		return null;
+	}
+}
\ No newline at end of file
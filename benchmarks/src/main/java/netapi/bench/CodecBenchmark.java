@@ -0,0 +1,133 @@
+package netapi.bench;
+
+import netapi.NetFrame;
+import netapi.packet.NetCodecRegistry;
+import netapi.packet.NetInput;
+import netapi.packet.NetOutput;
+import netapi.packet.NetPacket;
+import netapi.packet.StringPacket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+* Encoding and decoding a packet with its codec, compared to
+* a packet with no codec that falls back to Java serialization
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+	/**
+	* A packet with no codec, sent with Java serialization
+	*
+	* @since	0.2
+	*/
+	public static class SerializedPacket extends NetPacket {
+		public String data;
+		
+		public SerializedPacket(String data, String id) {
+			super(id);
+			this.data = data;
+		}
+	}
+	
+	private StringPacket		codecPacket;
+	private SerializedPacket	serializedPacket;
+	private NetOutput			out;
+	private ByteBuffer			codecEncoded;
+	private ByteBuffer			serializedEncoded;
+	
+	@Setup
+	public void setup() throws IOException {
+		codecPacket			= new StringPacket("Player moved to 128, 64, -256", "benchmod");
+		serializedPacket	= new SerializedPacket("Player moved to 128, 64, -256", "benchmod");
+		out					= new NetOutput();
+		
+		codecEncoded		= encode(codecPacket);
+		serializedEncoded	= encode(serializedPacket);
+	}
+	
+	/**
+	* Encode a packet into a buffer of its own
+	*
+	* @since	0.2
+	* @throws	IOException	If the packet cannot be encoded
+	* @param	packet	Packet to encode
+	* @return	Flipped copy of the encoded packet
+	*/
+	private ByteBuffer encode(NetPacket packet) throws IOException {
+		out.reset();
+		NetCodecRegistry.encode(packet, out);
+		
+		ByteBuffer encoded = out.getBuffer();
+		encoded.flip();
+		
+		ByteBuffer copy = ByteBuffer.allocate(encoded.remaining());
+		copy.put(encoded);
+		copy.flip();
+		return copy;
+	}
+	
+	@Benchmark
+	public int encodeCodec() throws IOException {
+		out.reset();
+		NetCodecRegistry.encode(codecPacket, out);
+		return out.size();
+	}
+	
+	@Benchmark
+	public int encodeSerialized() throws IOException {
+		out.reset();
+		NetCodecRegistry.encode(serializedPacket, out);
+		return out.size();
+	}
+	
+	@Benchmark
+	public NetPacket decodeCodec() throws IOException {
+		return NetCodecRegistry.decode(new NetInput(codecEncoded.duplicate()));
+	}
+	
+	@Benchmark
+	public NetPacket decodeSerialized() throws IOException {
+		return NetCodecRegistry.decode(new NetInput(serializedEncoded.duplicate()));
+	}
+	
+	@Benchmark
+	public NetPacket roundTripCodec() throws IOException {
+		return NetCodecRegistry.decode(new NetInput(encode(codecPacket)));
+	}
+	
+	@Benchmark
+	public NetPacket roundTripSerialized() throws IOException {
+		return NetCodecRegistry.decode(new NetInput(encode(serializedPacket)));
+	}
+	
+	@Benchmark
+	public int encodeFrame() throws IOException {
+		NetFrame frame = NetFrame.encode(codecPacket);
+		int length = frame.length();
+		frame.release();
+		
+		return length;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package netapi.bench;
+
+import netapi.NetAPI;
+import netapi.packet.StringPacket;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+* Broadcasting a packet to every connected client, timed until
+* every client has received it, over loopback sockets
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FanoutBenchmark {
+	@Param({"1", "8", "32"})
+	public int clients;
+	
+	private LoopbackClient[]	connected;
+	private StringPacket		packet;
+	private AtomicLong			received = new AtomicLong();
+	private long				expected;
+	
+	@Setup
+	public void setup() throws IOException {
+		LoopbackServer server = LoopbackServer.get();
+		packet		= new StringPacket("Block changed at 128, 64, -256", "benchmod");
+		connected	= new LoopbackClient[clients];
+		
+		for(int x = 0; x < clients; x++) {
+			connected[x] = server.connect();
+			startReader(connected[x]);
+		}
+	}
+	
+	/**
+	* Count everything a client receives on a thread of its own
+	*
+	* @since	0.2
+	* @param	client	Client to read
+	*/
+	private void startReader(final LoopbackClient client) {
+		Thread reader = new Thread("Reader " + client.getUsername()) {
+			public void run() {
+				try {
+					while(true) {
+						client.read();
+						received.incrementAndGet();
+					}
+				} catch (IOException e) {
+					// Closed at tear down
+				}
+			}
+		};
+		
+		reader.setDaemon(true);
+		reader.start();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		for(LoopbackClient client : connected) {
+			client.close();
+		}
+	}
+	
+	@Benchmark
+	public void broadcast() {
+		expected += clients;
+		NetAPI.sendPacket(packet);
+		
+		while(received.get() < expected) {
+			Thread.yield();
+		}
+	}
+}
\ No newline at end of file
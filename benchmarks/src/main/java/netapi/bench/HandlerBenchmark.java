@@ -0,0 +1,77 @@
+package netapi.bench;
+
+import netapi.NetAPI;
+import netapi.NetDispatcher;
+import netapi.NetPacketHandler;
+import netapi.dispatch.InlineDispatcher;
+import netapi.packet.NetPacket;
+import netapi.packet.StringPacket;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+* Looking up the handlers of a received packet and running
+* them, as done for every packet a connection receives
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandlerBenchmark {
+	@Param({"1", "4", "16"})
+	public int handlers;
+	
+	private StringPacket	packet;
+	private NetDispatcher	dispatcher;
+	
+	@Setup
+	public void setup(final Blackhole hole) {
+		packet		= new StringPacket("handled", "benchmod");
+		dispatcher	= new InlineDispatcher();
+		
+		for(int x = 0; x < handlers; x++) {
+			NetAPI.addHandler(packet, new NetPacketHandler() {
+				public void handle(NetPacket received) {
+					hole.consume(received);
+				}
+			});
+		}
+	}
+	
+	@TearDown
+	public void tearDown() {
+		NetAPI.removeAllHandlers(packet);
+	}
+	
+	@Benchmark
+	public NetPacketHandler[] getHandlers() {
+		return NetAPI.getHandlers(packet);
+	}
+	
+	@Benchmark
+	public void dispatchInline() {
+		for(NetPacketHandler handler : NetAPI.getHandlers(packet)) {
+			dispatcher.dispatch(handler, packet);
+		}
+	}
+}
\ No newline at end of file
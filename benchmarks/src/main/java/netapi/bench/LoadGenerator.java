@@ -0,0 +1,235 @@
+package netapi.bench;
+
+import netapi.NetAPI;
+import netapi.NetPacketHandler;
+import netapi.packet.NetPacket;
+import netapi.packet.StringPacket;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* Load tests the NetAPI server without the game. Simulated
+* clients connect over loopback, and each repeatedly sends a
+* packet that the server echoes back, for a set time. The
+* throughput and round trip latency are then printed.
+*
+* java -cp target/benchmarks.jar netapi.bench.LoadGenerator [clients] [seconds] [payload bytes]
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class LoadGenerator {
+	/**
+	* Most round trips each client records the time of
+	*
+	* @since	0.2
+	*/
+	private static final int MAX_SAMPLES = 0x100000;
+	/**
+	* Mod ID the load packets are sent with
+	*
+	* @since	0.2
+	*/
+	private static final String MOD_ID = "loadgen";
+	
+	/**
+	* Run the load test
+	*
+	* @since	0.2
+	* @throws	Exception	If the clients cannot connect
+	* @param	args	Clients, seconds and payload bytes
+	*/
+	public static void main(String[] args) throws Exception {
+		int clients		= (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+		int seconds		= (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+		int payload		= (args.length > 2) ? Integer.parseInt(args[2]) : 64;
+		
+		LoopbackServer server = LoopbackServer.get();
+		
+		// Echo every load packet back to its sender
+		NetAPI.addHandler(new StringPacket("", MOD_ID), new NetPacketHandler() {
+			public void handle(NetPacket packet) {
+				NetAPI.sendPacketToPlayer(packet, packet.getSender());
+			}
+		});
+		
+		System.out.println("Connecting " + clients + " clients");
+		LoadClient[] load = new LoadClient[clients];
+		for(int x = 0; x < clients; x++) {
+			load[x] = new LoadClient(server.connect(), payload);
+		}
+		
+		System.out.println("Running for " + seconds + " seconds");
+		long end = System.nanoTime() + (seconds * 1000000000L);
+		CountDownLatch done = new CountDownLatch(clients);
+		for(LoadClient client : load) {
+			client.start(end, done);
+		}
+		done.await();
+		
+		report(load, seconds);
+		System.exit(0);
+	}
+	
+	/**
+	* Print the throughput and latency of a finished run
+	*
+	* @since	0.2
+	* @param	load		Clients that ran
+	* @param	seconds		Length of the run
+	*/
+	private static void report(LoadClient[] load, int seconds) {
+		long total	= 0;
+		int samples	= 0;
+		int failed	= 0;
+		
+		for(LoadClient client : load) {
+			total	+= client.roundTrips.get();
+			samples	+= client.samples;
+			failed	+= (client.failure == null) ? 0 : 1;
+		}
+		
+		long[] all = new long[samples];
+		int offset = 0;
+		for(LoadClient client : load) {
+			System.arraycopy(client.latencies, 0, all, offset, client.samples);
+			offset += client.samples;
+		}
+		Arrays.sort(all);
+		
+		System.out.println("Round trips:  " + total + " (" + (total / seconds) + "/s)");
+		if(all.length > 0) {
+			System.out.println("Latency (us): p50 " + percentile(all, 0.5) + ", p99 " + percentile(all, 0.99)
+				+ ", p99.9 " + percentile(all, 0.999) + ", max " + all[all.length - 1]);
+		}
+		if(failed > 0) {
+			System.out.println("Clients failed: " + failed);
+		}
+	}
+	
+	/**
+	* Get a percentile of sorted latencies
+	*
+	* @since	0.2
+	* @param	sorted		Latencies in microseconds, sorted
+	* @param	fraction	Percentile as a fraction
+	* @return	Latency at the percentile
+	*/
+	private static long percentile(long[] sorted, double fraction) {
+		return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+	}
+	
+	/**
+	* A simulated client sending packets one after another, each
+	* once the last has come back
+	*
+	* @author	Clinton Alexander
+	* @since	0.2
+	*/
+	private static class LoadClient extends Thread {
+		/**
+		* The connected client
+		*
+		* @since	0.2
+		*/
+		private LoopbackClient	client;
+		/**
+		* Packet sent each time
+		*
+		* @since	0.2
+		*/
+		private StringPacket	packet;
+		/**
+		* Number of round trips done
+		*
+		* @since	0.2
+		*/
+		public AtomicLong		roundTrips	= new AtomicLong();
+		/**
+		* Round trip times in microseconds
+		*
+		* @since	0.2
+		*/
+		public long[]			latencies	= new long[MAX_SAMPLES];
+		/**
+		* Number of round trip times recorded
+		*
+		* @since	0.2
+		*/
+		public int				samples;
+		/**
+		* What stopped the client early, null if nothing
+		*
+		* @since	0.2
+		*/
+		public IOException		failure;
+		/**
+		* Time in nanoseconds to stop at
+		*
+		* @since	0.2
+		*/
+		private long			end;
+		/**
+		* Counted down when the client stops
+		*
+		* @since	0.2
+		*/
+		private CountDownLatch	done;
+		
+		/**
+		* Create a load client
+		*
+		* @since	0.2
+		* @param	client		The connected client
+		* @param	payload		Bytes of data in each packet
+		*/
+		public LoadClient(LoopbackClient client, int payload) {
+			super("Load " + client.getUsername());
+			setDaemon(true);
+			
+			char[] data = new char[payload];
+			Arrays.fill(data, 'x');
+			
+			this.client	= client;
+			this.packet	= new StringPacket(new String(data), MOD_ID);
+		}
+		
+		/**
+		* Start sending until the given time
+		*
+		* @since	0.2
+		* @param	end		Time to stop from System.nanoTime()
+		* @param	done	Counted down when the client stops
+		*/
+		public void start(long end, CountDownLatch done) {
+			this.end	= end;
+			this.done	= done;
+			start();
+		}
+		
+		public void run() {
+			try {
+				long now;
+				while((now = System.nanoTime()) < end) {
+					client.send(packet);
+					client.read();
+					
+					long latency = (System.nanoTime() - now) / 1000;
+					if(samples < latencies.length) {
+						latencies[samples++] = latency;
+					}
+					roundTrips.incrementAndGet();
+				}
+			} catch (IOException e) {
+				failure = e;
+			}
+			
+			client.close();
+			done.countDown();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+package netapi.bench;
+
+import netapi.NetProtocol;
+import netapi.packet.NetCodecContext;
+import netapi.packet.NetPacket;
+import netapi.packet.UsernamePacket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+* A bare NetAPI client speaking the same protocol as the game
+* client, without any of the game
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class LoopbackClient {
+	/**
+	* The socket connected to the server
+	*
+	* @since	0.2
+	*/
+	private Socket				socket;
+	/**
+	* Stream frames are sent on
+	*
+	* @since	0.2
+	*/
+	private DataOutputStream	out;
+	/**
+	* Stream frames are received on
+	*
+	* @since	0.2
+	*/
+	private DataInputStream		in;
+	/**
+	* Username of this client
+	*
+	* @since	0.2
+	*/
+	private String				username;
+	/**
+	* What has been sent to the server
+	*
+	* @since	0.2
+	*/
+	private NetCodecContext		sendContext		= new NetCodecContext();
+	/**
+	* What has been received from the server
+	*
+	* @since	0.2
+	*/
+	private NetCodecContext		receiveContext	= new NetCodecContext();
+	
+	/**
+	* Connect and send the username handshake
+	*
+	* @since	0.2
+	* @throws	IOException	If the client cannot connect
+	* @param	port		Loopback port of the server
+	* @param	username	Username to connect as
+	*/
+	public LoopbackClient(int port, String username) throws IOException {
+		this.username	= username;
+		this.socket		= new Socket("127.0.0.1", port);
+		socket.setTcpNoDelay(true);
+		
+		out	= new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		in	= new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		
+		// The name goes before the contexts are in use
+		NetProtocol.writeFrame(out, new UsernamePacket(username));
+		out.flush();
+	}
+	
+	/**
+	* Send a packet to the server straight away
+	*
+	* @since	0.2
+	* @throws	IOException	If the socket fails
+	* @param	packet	Packet to send
+	*/
+	public void send(NetPacket packet) throws IOException {
+		NetProtocol.writeFrame(out, packet, sendContext);
+		out.flush();
+	}
+	
+	/**
+	* Wait for the next packet from the server
+	*
+	* @since	0.2
+	* @throws	IOException	If the socket fails
+	* @return	Received packet
+	*/
+	public NetPacket read() throws IOException {
+		return NetProtocol.readFrame(in, receiveContext);
+	}
+	
+	/**
+	* Get the username of this client
+	*
+	* @since	0.2
+	* @return	Username
+	*/
+	public String getUsername() {
+		return username;
+	}
+	
+	/**
+	* Disconnect from the server
+	*
+	* @since	0.2
+	*/
+	public void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Closing anyway
+		}
+	}
+}
\ No newline at end of file
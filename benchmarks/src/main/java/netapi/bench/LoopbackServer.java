@@ -0,0 +1,114 @@
+package netapi.bench;
+
+import netapi.NetAPI;
+import netapi.packet.StringPacket;
+import netapi.server.MemoryPlayerDirectory;
+import netapi.server.NetListenThread;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+* A NetAPI server listening on the loopback address, for
+* benchmark clients to connect to
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class LoopbackServer {
+	/**
+	* The server every benchmark in this JVM shares
+	*
+	* @since	0.2
+	*/
+	private static LoopbackServer	shared;
+	/**
+	* Players logged in, in place of the game
+	*
+	* @since	0.2
+	*/
+	private MemoryPlayerDirectory	directory = new MemoryPlayerDirectory();
+	/**
+	* The listening socket
+	*
+	* @since	0.2
+	*/
+	private ServerSocket			socket;
+	/**
+	* The thread accepting connections
+	*
+	* @since	0.2
+	*/
+	private NetListenThread			listenThread;
+	/**
+	* Number of clients connected so far, for naming
+	*
+	* @since	0.2
+	*/
+	private int						clients;
+	
+	/**
+	* Start listening on a free loopback port
+	*
+	* @since	0.2
+	* @throws	IOException	If the socket cannot be opened
+	*/
+	private LoopbackServer() throws IOException {
+		NetAPI.setPlayerDirectory(directory);
+		
+		socket = ServerSocketChannel.open().socket();
+		socket.bind(new InetSocketAddress("127.0.0.1", 0));
+		
+		listenThread = new NetListenThread(socket);
+		listenThread.setDaemon(true);
+		listenThread.start();
+	}
+	
+	/**
+	* Get the server, starting it if needed
+	*
+	* @since	0.2
+	* @throws	IOException	If the socket cannot be opened
+	* @return	The server
+	*/
+	public static synchronized LoopbackServer get() throws IOException {
+		if(shared == null) {
+			shared = new LoopbackServer();
+		}
+		
+		return shared;
+	}
+	
+	/**
+	* Log a new player in, connect them and wait until the server
+	* has assigned them a connection
+	*
+	* @since	0.2
+	* @throws	IOException	If the client cannot connect
+	* @return	Connected client
+	*/
+	public LoopbackClient connect() throws IOException {
+		String username;
+		synchronized(this) {
+			username = "bench" + (clients++);
+		}
+		
+		directory.login(username);
+		LoopbackClient client = new LoopbackClient(socket.getLocalPort(), username);
+		
+		// Refused until the player has a connection
+		while(!NetAPI.trySendToPlayer(new StringPacket("ready"), username)) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted connecting " + username);
+			}
+		}
+		client.read();
+		
+		return client;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,60 @@
+package netapi.bench;
+
+import netapi.packet.NetP2PPacket;
+import netapi.packet.NetPacket;
+import netapi.packet.StringPacket;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+* One client sending a P2P packet through the server to
+* another, timed until it arrives, over loopback sockets
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RelayBenchmark {
+	private LoopbackClient	sender;
+	private LoopbackClient	recipient;
+	private NetP2PPacket	packet;
+	
+	@Setup
+	public void setup() throws IOException {
+		LoopbackServer server = LoopbackServer.get();
+		sender		= server.connect();
+		recipient	= server.connect();
+		packet		= new NetP2PPacket(recipient.getUsername(), new StringPacket("Hello there", "benchmod"));
+	}
+	
+	@TearDown
+	public void tearDown() {
+		sender.close();
+		recipient.close();
+	}
+	
+	@Benchmark
+	public NetPacket relay() throws IOException {
+		sender.send(packet);
+		return recipient.read();
+	}
+}
\ No newline at end of file
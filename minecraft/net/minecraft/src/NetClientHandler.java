@@ -13,6 +13,7 @@ import net.minecraft.client.Minecraft;
 // +NetAPI
 //=========
 import netapi.NetAPI;
+import netapi.NetConfig;
 import netapi.packet.UsernamePacket;
 import netapi.client.NetConnectThread;
 //=========
@@ -62,9 +63,12 @@ public class NetClientHandler extends NetHandler
 		//=========
 		// +NetAPI
 		//=========
-		String user = minecraft.session.username;
-		NetConnectThread con = new NetConnectThread(netManager, InetAddress.getByName(s), i - 1, user);
-		con.start();
+		// Tunnelled packets wait for the login to finish instead
+		if(!NetConfig.isTunnelled()) {
+			String user = minecraft.session.username;
+			NetConnectThread con = new NetConnectThread(netManager, InetAddress.getByName(s), i - 1, user);
+			con.start();
+		}
 		//=========
 		// -NetAPI
 		//=========
@@ -89,6 +93,15 @@ public class NetClientHandler extends NetHandler
         mc.thePlayer.dimension = packet1login.dimension;
         mc.displayGuiScreen(new GuiDownloadTerrain(this));
         mc.thePlayer.entityId = packet1login.protocolVersion;
+		//=========
+		// +NetAPI
+		//=========
+		if(NetConfig.isTunnelled()) {
+			netManager.openNetAPITunnel(mc.session.username);
+		}
+		//=========
+		// -NetAPI
+		//=========
     }
 
     public void handlePickupSpawn(Packet21PickupSpawn packet21pickupspawn)
@@ -9,6 +9,7 @@ package net.minecraft.src;
 //=========
 import netapi.NetPacketThread;
 import netapi.NetAPI;
+import netapi.NetTunnel;
 import netapi.packet.UsernamePacket;
 //=========
 // -NetAPI
@@ -23,12 +24,24 @@ import java.util.*;
 //            NetworkMasterThread, ThreadCloseConnection
 
 public class NetworkManager
+	//=========
+	// +NetAPI
+	//=========
+	implements NetTunnel
+	//=========
+	// -NetAPI
+	//=========
 {
 	//=========
 	// +NetAPI
 	//=========
 	private NetPacketThread netSendThread;
 	private NetPacketThread netReceiveThread;
+	
+	static {
+		// NetAPI frames ride the game connection as a packet of their own
+		Packet.addIdClassMapping(Packet220NetAPI.ID, true, true, Packet220NetAPI.class);
+	}
 	//=========
 	// -NetAPI
 	//=========
@@ -77,15 +90,72 @@ public class NetworkManager
 	* @throws	IOException	In the case where a connection fails.
 	* @since	0.1
 	* @param	socket		NetAPI Socket
-	* @param	oos			Output stream for socket
+	* @param	out			Output stream for socket
 	*/
-	public void setNetAPISocket(Socket socket, ObjectOutputStream oos) throws IOException {
+	public void setNetAPISocket(Socket socket, DataOutputStream out) throws IOException {
 		System.out.println("(NetAPI) Creating packet threads");
-		netSendThread 		= NetAPI.getNewNetThread(socket, oos);
+		netSendThread 		= NetAPI.getNewNetThread(socket, out);
 		netReceiveThread	= NetAPI.getNewNetThread(socket, false);
 		System.out.println("(NetAPI) Starting packet threads");
 		netSendThread.start();
 		netReceiveThread.start();
+		NetAPI.publishSubscriptions();
+	}
+	
+	/**
+	* Send NetAPI packets inside this connection rather than on
+	* a socket of their own. The server opens its side of the
+	* tunnel when the username packet arrives.
+	*
+	* @since	0.2
+	* @param	username	Name of user logging in
+	*/
+	public void openNetAPITunnel(String username) {
+		System.out.println("(NetAPI) Opening tunnel as " + username);
+		netSendThread = NetAPI.getNewNetThread(this);
+		netSendThread.send(new UsernamePacket(username));
+		NetAPI.publishSubscriptions();
+	}
+	
+	/**
+	* Queue a NetAPI frame to be written among the game's packets
+	*
+	* @since	0.2
+	* @param	data	Array holding the frame data
+	* @param	offset	Start of the frame data
+	* @param	length	Length of the frame data
+	*/
+	public void sendFrame(byte[] data, int offset, int length) {
+		addToSendQueue(new Packet220NetAPI(data, offset, length));
+	}
+	
+	/**
+	* Get the number of bytes queued but not yet written
+	*
+	* @since	0.2
+	* @return	Bytes queued
+	*/
+	public int getQueuedBytes() {
+		return sendQueueByteLength;
+	}
+	
+	/**
+	* Hand a NetAPI frame to NetAPI. A bad frame is dropped
+	* without touching the game.
+	*
+	* @since	0.2
+	* @param	packet	Packet carrying the frame
+	*/
+	private void receiveFrame(Packet220NetAPI packet) {
+		if(netSendThread == null) {
+			return;
+		}
+		
+		try {
+			netSendThread.receiveFrame(packet.data, packet.offset, packet.length);
+		} catch (IOException e) {
+			System.err.println("(NetAPI) Bad frame received: " + e.getMessage());
+		}
 	}
 	//=========
 	// -NetAPI
@@ -167,6 +237,17 @@ public class NetworkManager
             if(packet != null)
             {
                 field_28145_d[packet.getPacketId()] += packet.getPacketSize() + 1;
+				//=========
+				// +NetAPI
+				//=========
+				if(packet instanceof Packet220NetAPI)
+				{
+					receiveFrame((Packet220NetAPI) packet);
+					return true;
+				}
+				//=========
+				// -NetAPI
+				//=========
                 readPackets.add(packet);
                 flag = true;
             } else
@@ -0,0 +1,85 @@
+package net.minecraft.src;
+
+import netapi.NetProtocol;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+* A NetAPI frame carried inside the game connection. The game
+* never handles these; the network manager hands them straight
+* to NetAPI from its reader thread.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class Packet220NetAPI extends Packet {
+	/**
+	* Packet ID reserved for NetAPI frames
+	*
+	* @since	0.2
+	*/
+	public static final int ID = 220;
+	/**
+	* Array holding the frame data
+	*
+	* @since	0.2
+	*/
+	public byte[]	data;
+	/**
+	* Start of the frame data
+	*
+	* @since	0.2
+	*/
+	public int		offset;
+	/**
+	* Length of the frame data
+	*
+	* @since	0.2
+	*/
+	public int		length;
+	
+	/**
+	* Create an empty packet to be read into
+	*
+	* @since	0.2
+	*/
+	public Packet220NetAPI() {
+	}
+	
+	/**
+	* Create a packet carrying a frame
+	*
+	* @since	0.2
+	* @param	data	Array holding the frame data
+	* @param	offset	Start of the frame data
+	* @param	length	Length of the frame data
+	*/
+	public Packet220NetAPI(byte[] data, int offset, int length) {
+		this.data	= data;
+		this.offset	= offset;
+		this.length	= length;
+	}
+	
+	public void readPacketData(DataInputStream in) throws IOException {
+		length	= NetProtocol.readLength(in.readInt());
+		offset	= 0;
+		data	= new byte[length];
+		in.readFully(data);
+	}
+	
+	public void writePacketData(DataOutputStream out) throws IOException {
+		out.writeInt(length);
+		out.write(data, offset, length);
+	}
+	
+	public void processPacket(NetHandler handler) {
+		// Taken by the network manager before reaching a handler
+	}
+	
+	public int getPacketSize() {
+		return NetProtocol.HEADER_LENGTH + length;
+	}
+}
\ No newline at end of file
@@ -2,14 +2,24 @@ package netapi;
 
 import netapi.packet.NetPacket;
 import netapi.packet.NetP2PPacket;
+import netapi.packet.NetRequestPacket;
+import netapi.packet.NetSubscribePacket;
+
+import netapi.client.NetDatagramThread;
+import netapi.dispatch.PooledDispatcher;
 
 import java.net.Socket;
-import java.io.ObjectOutputStream;
-import java.io.ObjectInputStream;
+import java.io.DataOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Collection;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import net.minecraft.src.EntityPlayer;
@@ -24,12 +34,53 @@ import net.minecraft.src.EntityPlayer;
 */
 public class NetAPI {
 	/**	
-	* The packet handler mappings
+	* The packet handler mappings. The map and its arrays are
+	* never changed once published, they are replaced with
+	* changed copies, so they can be read without locking.
 	*
 	* @since	0.1
 	*/
-	private static Hashtable<Class, HashSet<NetPacketHandler>> handlers 
-		= new Hashtable<Class, HashSet<NetPacketHandler>>();
+	private static volatile Map<Class, NetPacketHandler[]> handlers 
+		= new HashMap<Class, NetPacketHandler[]>();
+	/**
+	* Lock held while replacing the handler mappings
+	*
+	* @since	0.2
+	*/
+	private static final Object handlerLock = new Object();
+	/**
+	* Shared result for packets without handlers
+	*
+	* @since	0.2
+	*/
+	private static final NetPacketHandler[] NO_HANDLERS = new NetPacketHandler[0];
+	/**
+	* The responder of each packet type that can be requested
+	*
+	* @since	0.2
+	*/
+	private static ConcurrentHashMap<Class, NetResponder> responders = new ConcurrentHashMap<Class, NetResponder>();
+	/**
+	* Mod IDs of the packets each handler of a packet class was
+	* added for, once for each handler, guarded by the handler lock
+	*
+	* @since	0.2
+	*/
+	private static HashMap<Class, ArrayList<String>> handledMods = new HashMap<Class, ArrayList<String>>();
+	/**
+	* Mods subscribed to without handlers, guarded by the handler
+	* lock
+	*
+	* @since	0.2
+	*/
+	private static HashSet<String> subscribedMods = new HashSet<String>();
+	/**
+	* Mods the server was last told are handled, null for every
+	* mod, guarded by the handler lock
+	*
+	* @since	0.2
+	*/
+	private static String[] subscriptions = new String[0];
 	/**
 	* The packet thread for sending packets
 	*
@@ -37,11 +88,29 @@ public class NetAPI {
 	*/
 	private static NetPacketThread netThread = null;
 	/**
+	* The thread for datagrams, null unless the server offered them
+	*
+	* @since	0.2
+	*/
+	private static NetDatagramThread datagramThread = null;
+	/**
+	* Requests sent to the server waiting for an answer
+	*
+	* @since	0.2
+	*/
+	private static volatile NetRequestTable requests = new NetRequestTable();
+	/**
 	* The logger for netAPI 
 	*
 	* @since	0.1
 	*/
 	public static final Logger log = Logger.getLogger("Minecraft");
+	/**
+	* The strategy for running packet handlers
+	*
+	* @since	0.2
+	*/
+	private static volatile NetDispatcher dispatcher;
 	
 	//===================
 	// Packet methods
@@ -56,6 +125,45 @@ public class NetAPI {
 		netThread.send(packet);
 	}
 	
+	/**
+	* Send a given packet with a coalescing key. A packet sent
+	* with the same key that is still queued is replaced by this
+	* one, so a slow connection only sends the latest.
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	key			Coalescing key, or null to always queue
+	*/
+	public static void sendPacket(NetPacket packet, Object key) {
+		netThread.send(packet, key);
+	}
+	
+	/**
+	* Send a given packet in the lane of the given priority
+	* rather than that of its type
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	priority	Priority to send with, or null for the
+	*						priority of the packet's type
+	*/
+	public static void sendPacket(NetPacket packet, NetPriority priority) {
+		netThread.send(packet, null, priority);
+	}
+	
+	/**
+	* Send a given packet with a coalescing key and priority
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	key			Coalescing key, or null to always queue
+	* @param	priority	Priority to send with, or null for the
+	*						priority of the packet's type
+	*/
+	public static void sendPacket(NetPacket packet, Object key, NetPriority priority) {
+		netThread.send(packet, key, priority);
+	}
+	
 	/**
 	* Sends a packet to a specific player
 	*
@@ -104,24 +212,144 @@ public class NetAPI {
 		netThread.send(packet);
 	}
 	
+	/**
+	* Send a packet without waiting out the coalescing window,
+	* for packets where latency matters
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	*/
+	public static void sendNow(NetPacket packet) {
+		netThread.send(packet);
+		netThread.flush();
+	}
+	
+	/**
+	* Send a packet only if the connection is keeping up
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @return	False if the send queue is full and the packet was not sent
+	*/
+	public static boolean trySend(NetPacket packet) {
+		return netThread.trySend(packet);
+	}
+	
+	/**
+	* Check if more is queued than the connection is sending
+	*
+	* @since	0.2
+	* @return	True if the send queue is full
+	*/
+	public static boolean isBackedUp() {
+		return netThread.isBackedUp();
+	}
+	
+	/**
+	* Send every queued packet as soon as possible, without
+	* waiting out the coalescing window
+	*
+	* @since	0.2
+	*/
+	public static void flush() {
+		netThread.flush();
+	}
+	
+	//===================
+	// Request methods
+	//===================
+	
+	/**
+	* Send a request to the server, to be answered by the
+	* responder for its type
+	*
+	* @since	0.2
+	* @param	packet	The request to send
+	* @return	Future of the answer
+	*/
+	public static NetFuture request(NetPacket packet) {
+		return request(packet, NetConfig.getRequestTimeout());
+	}
+	
+	/**
+	* Send a request to the server, waiting the given time for
+	* the answer
+	*
+	* @since	0.2
+	* @param	packet	The request to send
+	* @param	timeout	Milliseconds before the request fails
+	* @return	Future of the answer, already failed if not connected
+	*/
+	public static NetFuture request(NetPacket packet, long timeout) {
+		NetPacketThread thread = netThread;
+		if(thread == null) {
+			return NetFuture.failed(new IOException("Not connected"));
+		}
+		
+		NetFuture future = requests.start(timeout);
+		thread.send(new NetRequestPacket(future.getID(), packet));
+		
+		return future;
+	}
+	
+	/**
+	* Get the requests waiting for the server to answer
+	*
+	* @since	0.2
+	* @return	Table of waiting requests
+	*/
+	static NetRequestTable getRequests() {
+		return requests;
+	}
+	
+	/**
+	* Get the responder for a given packet
+	*
+	* @since	0.2
+	* @param	packet		Packet to find the responder of
+	* @return	The responder, or null if requests of its type
+	*			are not answered
+	*/
+	public static NetResponder getResponder(NetPacket packet) {
+		return responders.get(packet.getClass());
+	}
+	
+	/**
+	* Set the responder answering requests of a given packet's
+	* type, replacing any responder already set
+	*
+	* @since	0.2
+	* @param	packet		Packet we are answering requests of
+	* @param	responder	The responder
+	*/
+	public static void addResponder(NetPacket packet, NetResponder responder) {
+		responders.put(packet.getClass(), responder);
+	}
+	
+	/**
+	* Stop answering requests of a given packet's type
+	*
+	* @since	0.2
+	* @param	packet		Packet we are no longer answering
+	*/
+	public static void removeResponder(NetPacket packet) {
+		responders.remove(packet.getClass());
+	}
+	
 	//===================
 	// Handler handling methods
 	//===================
 	
 	/**
-	* Get a array of all handlers for a given packet
+	* Get a array of all handlers for a given packet. The array
+	* is shared and must not be changed.
 	*
 	* @return	Array of all handlers for a given object
 	*/
 	public static NetPacketHandler[] getHandlers(NetPacket packet) {
-		Class packetClass = packet.getClass();
-		if(!handlers.containsKey(packetClass)) {
-			return new NetPacketHandler[0];
-		} else {
-			HashSet<NetPacketHandler> s = handlers.get(packetClass);
-			
-			return s.toArray(new NetPacketHandler[s.size()]);
-		}
+		NetPacketHandler[] found = handlers.get(packet.getClass());
+		
+		return (found == null) ? NO_HANDLERS : found;
 	}
 	
 	/**
@@ -132,11 +360,25 @@ public class NetAPI {
 	*/
 	public static void addHandler(NetPacket packet, NetPacketHandler handler) {
 		Class packetClass = packet.getClass();
-		if(!handlers.containsKey(packetClass)) {
-			handlers.put(packetClass, new HashSet<NetPacketHandler>());
-		}
 		
-		handlers.get(packetClass).add(handler);
+		synchronized(handlerLock) {
+			NetPacketHandler[] old = getHandlers(packet);
+			if(indexOf(old, handler) >= 0) {
+				return;
+			}
+			
+			NetPacketHandler[] added = Arrays.copyOf(old, old.length + 1);
+			added[old.length] = handler;
+			
+			ArrayList<String> mods = handledMods.get(packetClass);
+			if(mods == null) {
+				mods = new ArrayList<String>();
+				handledMods.put(packetClass, mods);
+			}
+			mods.add(packet.getModID());
+			
+			publishHandlers(packetClass, added);
+		}
 	}
 	
 	/**
@@ -147,16 +389,24 @@ public class NetAPI {
 	*/
 	public static void removeHandler(NetPacket packet, NetPacketHandler handler) {
 		Class packetClass = packet.getClass();
-		if(handlers.containsKey(packetClass)) {
-			HashSet<NetPacketHandler> set = handlers.get(packetClass);
-			
-			if(set.contains(handler)) {
-				set.remove(handler);
+		
+		synchronized(handlerLock) {
+			NetPacketHandler[] old = getHandlers(packet);
+			int index = indexOf(old, handler);
+			if(index < 0) {
+				return;
 			}
 			
-			if(set.size() == 0) {
-				removeAllHandlers(packet);
+			NetPacketHandler[] removed = new NetPacketHandler[old.length - 1];
+			System.arraycopy(old, 0, removed, 0, index);
+			System.arraycopy(old, index + 1, removed, index, removed.length - index);
+			
+			ArrayList<String> mods = handledMods.get(packetClass);
+			if(mods != null) {
+				mods.remove(packet.getModID());
 			}
+			
+			publishHandlers(packetClass, removed);
 		}
 	}
 	
@@ -166,9 +416,182 @@ public class NetAPI {
 	* @param	packet 		Packer we are deleting all handlers for
 	*/
 	public static void removeAllHandlers(NetPacket packet) {
-		Class packetClass = packet.getClass();
-		if(handlers.containsKey(packetClass)) {
-			handlers.remove(packetClass);
+		synchronized(handlerLock) {
+			publishHandlers(packet.getClass(), NO_HANDLERS);
+		}
+	}
+	
+	/**
+	* Replace the handlers of a packet class with a copy of the
+	* mappings. Must be called holding the handler lock.
+	*
+	* @since	0.2
+	* @param	packetClass		Class of packet
+	* @param	classHandlers	New handlers, empty for none
+	*/
+	private static void publishHandlers(Class packetClass, NetPacketHandler[] classHandlers) {
+		Map<Class, NetPacketHandler[]> copy = new HashMap<Class, NetPacketHandler[]>(handlers);
+		
+		if(classHandlers.length == 0) {
+			copy.remove(packetClass);
+			handledMods.remove(packetClass);
+		} else {
+			copy.put(packetClass, classHandlers);
+		}
+		
+		handlers = copy;
+		updateSubscriptions();
+	}
+	
+	//===================
+	// Subscription methods
+	//===================
+	
+	/**
+	* Ask the server for packets of a mod sent to everyone, for
+	* mods that take their packets other than through handlers of
+	* their own packet types, such as inside P2P packets. Mods with
+	* handlers are subscribed to already.
+	*
+	* @since	0.2
+	* @param	modID	ID of the mod
+	*/
+	public static void subscribe(String modID) {
+		synchronized(handlerLock) {
+			subscribedMods.add(modID);
+			updateSubscriptions();
+		}
+	}
+	
+	/**
+	* Stop asking for packets of a mod subscribed to, unless it
+	* still has handlers
+	*
+	* @since	0.2
+	* @param	modID	ID of the mod
+	*/
+	public static void unsubscribe(String modID) {
+		synchronized(handlerLock) {
+			subscribedMods.remove(modID);
+			updateSubscriptions();
+		}
+	}
+	
+	/**
+	* Tell the server the mods handled once they change. A handler
+	* added for a packet without a mod ID may be handed packets of
+	* that class carrying any mod ID, so then every mod is asked for.
+	* Must be called holding the handler lock.
+	*
+	* @since	0.2
+	*/
+	private static void updateSubscriptions() {
+		TreeSet<String> mods = new TreeSet<String>(subscribedMods);
+		boolean every = false;
+		for(ArrayList<String> classMods : handledMods.values()) {
+			for(String modID : classMods) {
+				if(modID.length() > 0) {
+					mods.add(modID);
+				} else {
+					every = true;
+				}
+			}
+		}
+		
+		String[] current = every ? null : mods.toArray(new String[mods.size()]);
+		if(!Arrays.equals(current, subscriptions)) {
+			subscriptions = current;
+			sendSubscriptions();
+		}
+	}
+	
+	/**
+	* Send the mods handled to the server, if connected. Must be
+	* called holding the handler lock.
+	*
+	* @since	0.2
+	*/
+	private static void sendSubscriptions() {
+		NetPacketThread thread = netThread;
+		
+		if(thread != null) {
+			thread.send(new NetSubscribePacket(subscriptions));
+		}
+	}
+	
+	/**
+	* Tell the server which mods are handled once connected, so
+	* it only sends packets of those mods. Not a part of the API.
+	*
+	* @since	0.2
+	*/
+	public static void publishSubscriptions() {
+		synchronized(handlerLock) {
+			sendSubscriptions();
+		}
+	}
+	
+	/**
+	* Find a handler in an array of handlers
+	*
+	* @since	0.2
+	* @param	array		Handlers to search
+	* @param	handler		Handler to find
+	* @return	Index of the handler, or -1 if not found
+	*/
+	private static int indexOf(NetPacketHandler[] array, NetPacketHandler handler) {
+		for(int x = 0; x < array.length; x++) {
+			if(array[x].equals(handler)) {
+				return x;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	* Get the strategy handlers are run with. Unless another is
+	* set, handlers run on a shared pool of threads.
+	*
+	* @since	0.2
+	* @return	Handler dispatcher
+	*/
+	public static NetDispatcher getDispatcher() {
+		NetDispatcher current = dispatcher;
+		
+		if(current == null) {
+			synchronized(NetAPI.class) {
+				if(dispatcher == null) {
+					dispatcher = new PooledDispatcher(NetConfig.getHandlerThreads(),
+						NetConfig.getHandlerQueueDepth());
+				}
+				current = dispatcher;
+			}
+		}
+		
+		return current;
+	}
+	
+	/**
+	* Set the strategy handlers are run with, shutting down
+	* the old one
+	*
+	* @since	0.2
+	* @param	newDispatcher	Handler dispatcher
+	*/
+	public static void setDispatcher(NetDispatcher newDispatcher) {
+		if(newDispatcher == null) {
+			throw new IllegalArgumentException("Dispatcher cannot be null");
+		}
+		
+		NetDispatcher old;
+		synchronized(NetAPI.class) {
+			old			= dispatcher;
+			dispatcher	= newDispatcher;
+		}
+		
+		if(old != null) {
+			old.shutdown();
 		}
 	}
 	
@@ -213,11 +636,10 @@ public class NetAPI {
 	* to a new server. Not a part of the API.
 	*
 	* @since	0.1
-	* @param	oos			Data sending stream
-	* @param	username	Username that is sending new packet threads
+	* @param	out			Data sending stream
 	*/
-	public static NetPacketThread getNewNetThread(Socket socket, ObjectOutputStream oos) {
-		netThread = new NetPacketThread(socket, oos);
+	public static NetPacketThread getNewNetThread(Socket socket, DataOutputStream out) {
+		netThread = new NetPacketThread(socket, out);
 	
 		return netThread;
 	}
@@ -227,17 +649,76 @@ public class NetAPI {
 	* to a new server. Not a part of the API.
 	*
 	* @since	0.1
-	* @param	ois			Data sending stream
-	* @param	username	Username that is receiving new packet threads
+	* @param	in			Data receiving stream
 	*/
-	public static NetPacketThread getNewNetThread(Socket socket, ObjectInputStream ois) {
-		return new NetPacketThread(socket, ois);
+	public static NetPacketThread getNewNetThread(Socket socket, DataInputStream in) {
+		return new NetPacketThread(socket, in);
+	}
+	
+	/**
+	* Create and set a new net thread sending packets inside
+	* the game connection. Not a part of the API.
+	*
+	* @since	0.2
+	* @param	tunnel		The game connection
+	*/
+	public static NetPacketThread getNewNetThread(NetTunnel tunnel) {
+		netThread = new NetPacketThread(tunnel);
+		
+		return netThread;
+	}
+	
+	/**
+	* Open datagrams to the server once it has offered them.
+	* Not a part of the API.
+	*
+	* @since	0.2
+	* @param	socket	Socket connected to the server
+	* @param	token	Token offered by the server
+	*/
+	public static void openDatagrams(Socket socket, long token) {
+		synchronized(NetAPI.class) {
+			closeDatagrams();
+			
+			try {
+				datagramThread = new NetDatagramThread(socket.getInetAddress(), socket.getPort(), token);
+			} catch (IOException e) {
+				System.err.println("(NetAPI) Could not open datagrams: " + e.getMessage());
+				return;
+			}
+			
+			datagramThread.start();
+			if(netThread != null) {
+				netThread.setDatagramThread(datagramThread);
+			}
+		}
+	}
+	
+	/**
+	* Close datagrams to the server, if open
+	*
+	* @since	0.2
+	*/
+	private static void closeDatagrams() {
+		if(datagramThread != null) {
+			datagramThread.stopThread();
+			datagramThread = null;
+		}
 	}
 	
 	/**
 	* Called when disconnecting
 	*/
 	public static void onDisconnect() {
+		synchronized(NetAPI.class) {
+			closeDatagrams();
+		}
+		
 		netThread = null;
+		
+		// Nothing sent so far can be answered now
+		NetRequestTable closed = requests;
+		requests = new NetRequestTable();
+		closed.close();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,357 @@
+package netapi;
+
+import java.io.File;
+
+/**
+* Tunable settings for NetAPI. Every setting can be given as
+* a system property on the command line (-Dnetapi.name=value)
+* or changed with its setter.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetConfig {
+	/**
+	* Milliseconds to wait for more packets before sending,
+	* zero to send every packet as soon as it is queued
+	*
+	* @since	0.2
+	*/
+	private static long coalesceWindow = Long.getLong("netapi.coalesceWindow", 0);
+	/**
+	* Most bytes sent in a single write. Once this much is
+	* queued it is sent without waiting out the coalescing window.
+	*
+	* @since	0.2
+	*/
+	private static int maxBatchBytes = Integer.getInteger("netapi.maxBatchBytes", 0x10000);
+	/**
+	* Most packets waiting to be sent to the server. Packets
+	* sent once the queue is full are dropped.
+	*
+	* @since	0.2
+	*/
+	private static int sendQueueLength = Integer.getInteger("netapi.sendQueueLength", 4096);
+	/**
+	* Number of threads running packet handlers
+	*
+	* @since	0.2
+	*/
+	private static int handlerThreads = Integer.getInteger("netapi.handlerThreads", 4);
+	/**
+	* Most packets waiting to be handled before more are dropped
+	*
+	* @since	0.2
+	*/
+	private static int handlerQueueDepth = Integer.getInteger("netapi.handlerQueueDepth", 1024);
+	/**
+	* True to send NetAPI packets inside the game connection
+	* rather than opening a socket of their own
+	*
+	* @since	0.2
+	*/
+	private static boolean tunnelled = Boolean.getBoolean("netapi.tunnel");
+	/**
+	* Packets encoding to at least this many bytes are compressed,
+	* zero to never compress
+	*
+	* @since	0.2
+	*/
+	private static int compressThreshold = Integer.getInteger("netapi.compressThreshold", 0);
+	/**
+	* Frames longer than this many bytes are sent in fragments
+	* of this size, zero to send every frame whole
+	*
+	* @since	0.2
+	*/
+	private static int fragmentBytes = Integer.getInteger("netapi.fragmentBytes", 0x10000);
+	/**
+	* Most bytes of fragmented frames a connection holds at once
+	* while they are put back together
+	*
+	* @since	0.2
+	*/
+	private static int maxReassemblyBytes = Integer.getInteger("netapi.maxReassemblyBytes", 0x400000);
+	/**
+	* Longest packet sent as a datagram, longer ones are sent
+	* on the connection
+	*
+	* @since	0.2
+	*/
+	private static int maxDatagramBytes = Integer.getInteger("netapi.maxDatagramBytes", 1200);
+	/**
+	* Milliseconds to wait for the answer to a request unless
+	* given a timeout of its own
+	*
+	* @since	0.2
+	*/
+	private static long requestTimeout = Long.getLong("netapi.requestTimeout", 30000);
+	/**
+	* Directory files sent by the server are written to
+	*
+	* @since	0.2
+	*/
+	private static File fileDirectory = new File(System.getProperty("netapi.fileDirectory", "netapi/files"));
+	
+	/**
+	* Get the coalescing window for sending packets
+	*
+	* @since	0.2
+	* @return	Milliseconds to wait for more packets before sending
+	*/
+	public static long getCoalesceWindow() {
+		return coalesceWindow;
+	}
+	
+	/**
+	* Set the coalescing window for sending packets. A longer
+	* window sends more packets at once at the cost of latency.
+	*
+	* @since	0.2
+	* @param	window	Milliseconds to wait, zero to send at once
+	*/
+	public static void setCoalesceWindow(long window) {
+		coalesceWindow = Math.max(0, window);
+	}
+	
+	/**
+	* Get the most bytes sent in a single write
+	*
+	* @since	0.2
+	* @return	Most bytes in a batch
+	*/
+	public static int getMaxBatchBytes() {
+		return maxBatchBytes;
+	}
+	
+	/**
+	* Set the most bytes sent in a single write. A packet
+	* larger than this is still sent, in a batch of its own.
+	*
+	* @since	0.2
+	* @param	bytes	Most bytes in a batch, at least one
+	*/
+	public static void setMaxBatchBytes(int bytes) {
+		maxBatchBytes = Math.max(1, bytes);
+	}
+	
+	/**
+	* Get the most packets waiting to be sent to the server
+	*
+	* @since	0.2
+	* @return	Send queue length
+	*/
+	public static int getSendQueueLength() {
+		return sendQueueLength;
+	}
+	
+	/**
+	* Set the most packets waiting to be sent to the server.
+	* Only has an effect on the next connection.
+	*
+	* @since	0.2
+	* @param	length	Send queue length, at least one
+	*/
+	public static void setSendQueueLength(int length) {
+		sendQueueLength = Math.max(1, length);
+	}
+	
+	/**
+	* Get the number of threads running packet handlers
+	*
+	* @since	0.2
+	* @return	Number of handler threads
+	*/
+	public static int getHandlerThreads() {
+		return handlerThreads;
+	}
+	
+	/**
+	* Set the number of threads running packet handlers. Only has
+	* an effect before the first packet is handled.
+	*
+	* @since	0.2
+	* @param	threads		Number of handler threads, at least one
+	*/
+	public static void setHandlerThreads(int threads) {
+		handlerThreads = Math.max(1, threads);
+	}
+	
+	/**
+	* Get the most packets waiting to be handled
+	*
+	* @since	0.2
+	* @return	Most packets waiting before more are dropped
+	*/
+	public static int getHandlerQueueDepth() {
+		return handlerQueueDepth;
+	}
+	
+	/**
+	* Set the most packets waiting to be handled. Only has an
+	* effect before the first packet is handled.
+	*
+	* @since	0.2
+	* @param	depth	Most packets waiting, at least one
+	*/
+	public static void setHandlerQueueDepth(int depth) {
+		handlerQueueDepth = Math.max(1, depth);
+	}
+	
+	/**
+	* Check whether NetAPI packets are sent inside the game
+	* connection
+	*
+	* @since	0.2
+	* @return	True if tunnelled, false for a socket of their own
+	*/
+	public static boolean isTunnelled() {
+		return tunnelled;
+	}
+	
+	/**
+	* Set whether NetAPI packets are sent inside the game
+	* connection. Only servers running this version of NetAPI
+	* accept tunnelled packets, and it only has an effect on
+	* the next connection.
+	*
+	* @since	0.2
+	* @param	tunnel	True to tunnel, false for a socket of their own
+	*/
+	public static void setTunnelled(boolean tunnel) {
+		tunnelled = tunnel;
+	}
+	
+	/**
+	* Get the size from which packets are compressed
+	*
+	* @since	0.2
+	* @return	Bytes from which packets are compressed, zero if never
+	*/
+	public static int getCompressThreshold() {
+		return compressThreshold;
+	}
+	
+	/**
+	* Set the size from which packets are compressed. Only
+	* peers running this version of NetAPI can read compressed
+	* packets, so it is off unless set.
+	*
+	* @since	0.2
+	* @param	bytes	Bytes from which packets are compressed, zero to never compress
+	*/
+	public static void setCompressThreshold(int bytes) {
+		compressThreshold = Math.max(0, bytes);
+	}
+	
+	/**
+	* Get the size frames are cut into to be sent in fragments
+	*
+	* @since	0.2
+	* @return	Bytes in each fragment, zero if frames are sent whole
+	*/
+	public static int getFragmentBytes() {
+		return fragmentBytes;
+	}
+	
+	/**
+	* Set the size frames are cut into to be sent in fragments.
+	* A frame in fragments does not hold up the frames queued after
+	* it, but costs a few bytes more to send.
+	*
+	* @since	0.2
+	* @param	bytes	Bytes in each fragment, zero to send frames whole
+	*/
+	public static void setFragmentBytes(int bytes) {
+		fragmentBytes = Math.max(0, bytes);
+	}
+	
+	/**
+	* Get the most bytes of fragmented frames held at once
+	*
+	* @since	0.2
+	* @return	Bytes held at most for each connection
+	*/
+	public static int getMaxReassemblyBytes() {
+		return maxReassemblyBytes;
+	}
+	
+	/**
+	* Set the most bytes of fragmented frames held at once. The
+	* other end is disconnected if it sends more, and frames that
+	* would take more are sent whole, so both ends must use the
+	* same limit.
+	*
+	* @since	0.2
+	* @param	bytes	Bytes held at most for each connection
+	*/
+	public static void setMaxReassemblyBytes(int bytes) {
+		maxReassemblyBytes = Math.max(0, bytes);
+	}
+	
+	/**
+	* Get the longest packet sent as a datagram
+	*
+	* @since	0.2
+	* @return	Bytes in the longest datagram, zero if none are sent
+	*/
+	public static int getMaxDatagramBytes() {
+		return maxDatagramBytes;
+	}
+	
+	/**
+	* Set the longest packet sent as a datagram. Datagrams longer
+	* than the path allows are split by IP and lost if any part is,
+	* so this is best kept under the MTU.
+	*
+	* @since	0.2
+	* @param	bytes	Bytes in the longest datagram, zero to send none
+	*/
+	public static void setMaxDatagramBytes(int bytes) {
+		maxDatagramBytes = Math.max(0, bytes);
+	}
+	
+	/**
+	* Get how long requests wait for their answer
+	*
+	* @since	0.2
+	* @return	Milliseconds before a request fails
+	*/
+	public static long getRequestTimeout() {
+		return requestTimeout;
+	}
+	
+	/**
+	* Set how long requests wait for their answer, unless given
+	* a timeout of their own
+	*
+	* @since	0.2
+	* @param	millis	Milliseconds before a request fails
+	*/
+	public static void setRequestTimeout(long millis) {
+		requestTimeout = Math.max(1, millis);
+	}
+	
+	/**
+	* Get the directory files sent by the server are written to
+	*
+	* @since	0.2
+	* @return	Directory for received files, null if refused
+	*/
+	public static File getFileDirectory() {
+		return fileDirectory;
+	}
+	
+	/**
+	* Set the directory files sent by the server are written to.
+	* It only has an effect on the next connection.
+	*
+	* @since	0.2
+	* @param	directory	Directory for received files, null to
+	*						refuse them
+	*/
+	public static void setFileDirectory(File directory) {
+		fileDirectory = directory;
+	}
+}
\ No newline at end of file
@@ -1,15 +1,26 @@
 package netapi;
 
+import netapi.client.NetDatagramThread;
+import netapi.packet.NetCodecContext;
+import netapi.packet.NetCodecRegistry;
+import netapi.packet.NetDatagramPacket;
+import netapi.packet.NetDeltaPacket;
+import netapi.packet.NetInput;
 import netapi.packet.NetPacket;
 import netapi.packet.NetP2PPacket;
+import netapi.packet.NetRequestPacket;
+import netapi.packet.NetResponsePacket;
 
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
 /**
 * A thread that handles all packet handling
@@ -22,29 +33,83 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 */
 public class NetPacketThread extends Thread {
 	/**
-	* The current send queue
+	* Size of the buffer kept for reading frames. Larger frames
+	* are read into a buffer of their own.
+	*
+	* @since	0.2
+	*/
+	private static final int READ_BUFFER_SIZE = 0x2000;
+	/**
+	* Most bytes queued on a tunnelled game connection before
+	* packets are dropped, well short of the point where the game
+	* disconnects
+	*
+	* @since	0.2
+	*/
+	private static final int MAX_TUNNEL_BYTES = 0x80000;
+	/**
+	* Answers requests from the server, sending each answer back
+	* by the sending thread. One handler for all of them, so a
+	* serial dispatcher answers them one at a time.
+	*
+	* @since	0.2
+	*/
+	private static final NetPacketHandler answerer = new NetPacketHandler() {
+		public void handle(NetPacket packet) {
+			NetAPI.sendPacket(NetRequestTable.respond((NetRequestPacket) packet));
+		}
+	};
+	/**
+	* The current send queue, a lane for each priority
 	*
 	* @since	0.1
 	*/
-	private	ConcurrentLinkedQueue<NetPacket> sendQueue = new ConcurrentLinkedQueue<NetPacket>();
+	private	NetLanes<QueuedPacket> sendLanes = new NetLanes<QueuedPacket>();
+	/**
+	* Number of packets in the lanes, taken by the sender thread
+	* before taking a packet
+	*
+	* @since	0.2
+	*/
+	private Semaphore			queuedPackets	= new Semaphore(0);
+	/**
+	* Room left in the lanes, taken before queueing a packet
+	*
+	* @since	0.2
+	*/
+	private Semaphore			queueRoom		= new Semaphore(NetConfig.getSendQueueLength());
+	/**
+	* Queued packets sent with a coalescing key that a newer
+	* packet with the same key can still replace
+	*
+	* @since	0.2
+	*/
+	private ConcurrentHashMap<Object, QueuedPacket> keyedPackets
+		= new ConcurrentHashMap<Object, QueuedPacket>();
+	/**
+	* Number of packets dropped because the queue was full
+	*
+	* @since	0.2
+	*/
+	private int					droppedPackets;
 	/**
 	* The output stream for this thread
 	*
 	* @since	0.1
 	*/
-	private ObjectOutputStream	oos		= null;
+	private DataOutputStream	out		= null;
 	/**
 	* The input stream for this thread
 	*
 	* @since	0.1
 	*/
-	private ObjectInputStream	ois		= null;
+	private DataInputStream		in		= null;
 	/**
 	* Whether this current thread is alive
 	*
 	* @since	0.1
 	*/
-	private	boolean				alive = true;
+	private	volatile boolean	alive = true;
 	/**
 	* True if sender thread, false if receiver
 	*
@@ -57,6 +122,56 @@ public class NetPacketThread extends Thread {
 	* @since	0.1
 	*/
 	private Socket				socket;
+	/**
+	* Lock waited on during the coalescing window
+	*
+	* @since	0.2
+	*/
+	private final Object		flushLock	= new Object();
+	/**
+	* True if the queue should be sent without waiting out
+	* the coalescing window
+	*
+	* @since	0.2
+	*/
+	private boolean				flushRequested;
+	/**
+	* Buffer frames are read into, reused for every frame
+	*
+	* @since	0.2
+	*/
+	private ByteBuffer			readBuffer;
+	/**
+	* Input decoding frames out of the read buffer
+	*
+	* @since	0.2
+	*/
+	private NetInput			readInput;
+	/**
+	* What has been sent to the server, guarded by itself in a tunnel
+	*
+	* @since	0.2
+	*/
+	private NetCodecContext		sendContext		= new NetCodecContext();
+	/**
+	* What has been received from the server
+	*
+	* @since	0.2
+	*/
+	private NetCodecContext		receiveContext	= new NetCodecContext();
+	/**
+	* The game connection packets ride inside, null if they
+	* have a socket of their own
+	*
+	* @since	0.2
+	*/
+	private NetTunnel			tunnel;
+	/**
+	* The thread for datagrams, null unless the server offered them
+	*
+	* @since	0.2
+	*/
+	private volatile NetDatagramThread	datagramThread;
 	
 	/**
 	* Called at creation of a new server
@@ -75,13 +190,12 @@ public class NetPacketThread extends Thread {
 	*
 	* @since	0.1
 	* @param	socket		The socket we are connecte to
-	* @param	oos			The sending data stream
-	* @param	mode		True if a sender thread, false if receiver
+	* @param	out			The sending data stream
 	*/
-	public NetPacketThread(Socket socket, ObjectOutputStream oos) {
+	public NetPacketThread(Socket socket, DataOutputStream out) {
 		sender 		= true;
 		this.socket = socket;
-		this.oos	= oos;	
+		this.out	= out;	
 	}
 	
 	/**
@@ -89,13 +203,25 @@ public class NetPacketThread extends Thread {
 	*
 	* @since	0.1
 	* @param	socket		The socket we are connecte to
-	* @param	ois			The receiving data stream
-	* @param	mode		True if a sender thread, false if receiver
+	* @param	in			The receiving data stream
 	*/
-	public NetPacketThread(Socket socket, ObjectInputStream ois) {
+	public NetPacketThread(Socket socket, DataInputStream in) {
 		sender 		= false;
 		this.socket = socket;
-		this.ois	= ois;
+		this.in		= in;
+	}
+	
+	/**
+	* Called at creation of a tunnel inside the game connection.
+	* Packets are sent and received by the game connection's own
+	* threads, so this thread is never started.
+	*
+	* @since	0.2
+	* @param	tunnel		The game connection
+	*/
+	public NetPacketThread(NetTunnel tunnel) {
+		sender		= true;
+		this.tunnel	= tunnel;
 	}
 	
 	//===============
@@ -110,7 +236,184 @@ public class NetPacketThread extends Thread {
 	* @param	packet	New packet to send
 	*/
 	public void send(NetPacket packet) {
-		sendQueue.add(packet);
+		send(packet, null);
+	}
+	
+	/**
+	* Send the given packet with a coalescing key. If a packet
+	* sent with the same key is still waiting in the queue, it is
+	* replaced in place by this one rather than both being sent.
+	* Tunnelled packets are never queued here, so are never
+	* replaced.
+	*
+	* @since	0.2
+	* @param	packet	New packet to send
+	* @param	key		Coalescing key, or null to always queue
+	*/
+	public void send(NetPacket packet, Object key) {
+		send(packet, key, null);
+	}
+	
+	/**
+	* Send the given packet with a coalescing key, in the lane of
+	* the given priority. Urgent packets are sent without waiting
+	* out the coalescing window. Tunnelled packets all share the
+	* game connection's one lane, as they must arrive in the order
+	* they were encoded.
+	*
+	* @since	0.2
+	* @param	packet		New packet to send
+	* @param	key			Coalescing key, or null to always queue
+	* @param	priority	Lane to queue the packet in, or null for
+	*						the priority of its type
+	*/
+	public void send(NetPacket packet, Object key, NetPriority priority) {
+		if(sendDatagram(packet)) {
+			return;
+		} else if(priority == null) {
+			priority = packet.getPriority();
+		}
+		
+		if(!((tunnel != null) ? sendTunnelled(packet) : queue(packet, key, priority))) {
+			// Log the first drop of each run of drops
+			if(droppedPackets++ == 0) {
+				System.err.println("(NetAPI) Send queue full, dropping packets");
+			}
+		} else {
+			droppedPackets = 0;
+			
+			if(priority == NetPriority.URGENT) {
+				flush();
+			}
+		}
+	}
+	
+	/**
+	* Send a packet only if the queue has room
+	*
+	* @since	0.2
+	* @param	packet	New packet to send
+	* @return	False if the queue is full and the packet was not sent
+	*/
+	public boolean trySend(NetPacket packet) {
+		if(sendDatagram(packet)) {
+			return true;
+		} else if(tunnel != null) {
+			return sendTunnelled(packet);
+		}
+		
+		return queue(packet, null, packet.getPriority());
+	}
+	
+	/**
+	* Send a packet as a datagram, if it may be lost and the
+	* server is answering datagrams
+	*
+	* @since	0.2
+	* @param	packet	New packet to send
+	* @return	True if sent, false to send it on the connection
+	*/
+	private boolean sendDatagram(NetPacket packet) {
+		NetDatagramThread thread = datagramThread;
+		
+		return !packet.isReliable() && (thread != null) && thread.send(packet);
+	}
+	
+	/**
+	* Set the thread to send packets that may be lost with
+	*
+	* @since	0.2
+	* @param	thread	Thread for datagrams, or null for none
+	*/
+	public void setDatagramThread(NetDatagramThread thread) {
+		datagramThread = thread;
+	}
+	
+	/**
+	* Queue a packet, or replace the queued packet with the
+	* same key
+	*
+	* @since	0.2
+	* @param	packet		New packet to send
+	* @param	key			Coalescing key, or null to always queue
+	* @param	priority	Lane to queue the packet in
+	* @return	False if the queue is full and the packet was not queued
+	*/
+	private boolean queue(NetPacket packet, Object key, NetPriority priority) {
+		if(key != null) {
+			QueuedPacket queued = keyedPackets.get(key);
+			if((queued != null) && queued.replace(packet)) {
+				return true;
+			}
+		}
+		
+		if(!queueRoom.tryAcquire()) {
+			return false;
+		}
+		
+		QueuedPacket added = new QueuedPacket(packet, key, priority);
+		sendLanes.add(added, priority);
+		if(key != null) {
+			keyedPackets.put(key, added);
+		}
+		
+		queuedPackets.release();
+		return true;
+	}
+	
+	/**
+	* Queue a packet on the game connection unless it is backed up
+	*
+	* @since	0.2
+	* @param	packet	New packet to send
+	* @return	False if the game connection is backed up and the packet was not sent
+	*/
+	private boolean sendTunnelled(NetPacket packet) {
+		if(isBackedUp()) {
+			return false;
+		}
+		
+		try {
+			// Frames must reach the game connection in the order
+			// they were encoded
+			synchronized(sendContext) {
+				ByteBuffer frame = NetProtocol.encodeFrame(packet, sendContext);
+				tunnel.sendFrame(frame.array(), NetProtocol.HEADER_LENGTH, frame.limit() - NetProtocol.HEADER_LENGTH);
+			}
+		} catch (IOException e) {
+			System.err.println("(NetAPI) Could not send packet: " + e.getMessage());
+		}
+		
+		return true;
+	}
+	
+	/**
+	* Check if more is queued than the connection is sending
+	*
+	* @since	0.2
+	* @return	True if the send queue is full
+	*/
+	public boolean isBackedUp() {
+		if(tunnel != null) {
+			return (tunnel.getQueuedBytes() >= MAX_TUNNEL_BYTES);
+		}
+		
+		return (queueRoom.availablePermits() == 0);
+	}
+	
+	/**
+	* Send everything queued as soon as possible, without
+	* waiting out the coalescing window
+	*
+	* @since	0.2
+	*/
+	public void flush() {
+		synchronized(flushLock) {
+			if(!sendLanes.isEmpty()) {
+				flushRequested = true;
+				flushLock.notifyAll();
+			}
+		}
 	}
 	
 	//===============
@@ -124,12 +427,12 @@ public class NetPacketThread extends Thread {
 	*/
 	public void run() {
 		try {
-			if(!sender && (ois == null)) {
+			if(!sender && (in == null)) {
 				System.out.println("(NetAPI) Starting Input Stream");
-				ois = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
-			} else if(sender && (oos == null)) {
+				in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			} else if(sender && (out == null)) {
 				System.out.println("(NetAPI) Starting Output Stream");
-				oos = new ObjectOutputStream(socket.getOutputStream());
+				out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
 			}
 			
 			while(alive) {
@@ -137,12 +440,12 @@ public class NetPacketThread extends Thread {
 					sendNewPackets();
 				} else {
 					receiveNewPackets();
-				}
-				
-				try {
-					Thread.sleep(100);
-				} catch (InterruptedException e) {
-					// Ignore
+					
+					try {
+						Thread.sleep(100);
+					} catch (InterruptedException e) {
+						// Ignore
+					}
 				}
 			}	
 		} catch (IOException e) {
@@ -153,36 +456,155 @@ public class NetPacketThread extends Thread {
 	}
 	
 	/**
-	* Send all new packets on the packet queue
+	* Wait for new packets on the packet queue and send them.
+	* With a coalescing window set, packets queued within the
+	* window of the first are sent together. Packets are
+	* gathered in the stream's buffer and flushed once per
+	* batch rather than once per packet. The lanes take turns,
+	* and packets are only taken from them once the window has
+	* passed, so urgent packets queued during it go first.
+	* Large packets are sent in fragments, with the other lanes
+	* taking their turns in between.
 	*
 	* @since	0.1
 	*/
 	private void sendNewPackets() {
-		while(alive && (sendQueue.size() != 0)) {
-			NetPacket send = sendQueue.peek();
-			try {
-				System.out.println("(NetAPI) Sending a " + send.getClass().getName() + " packet");
-				oos.writeObject(send);
-				oos.flush();
-				sendQueue.poll();
-			} catch (IOException e) {
-				System.err.println("(NetAPI) Could not send packet: " + e.getMessage());
+		try {
+			queuedPackets.acquire();
+			waitForBatch();
+		} catch (InterruptedException e) {
+			// Woken to stop
+			return;
+		}
+		
+		try {
+			int maxBatch	= NetConfig.getMaxBatchBytes();
+			int batchStart	= out.size();
+			QueuedPacket send = takeQueued();
+			
+			do {
+				int start = out.size();
+				write(send);
+				sendLanes.charge(out.size() - start);
+				
+				if((out.size() - batchStart) >= maxBatch) {
+					out.flush();
+					batchStart = out.size();
+				}
+			} while(alive && queuedPackets.tryAcquire() && ((send = takeQueued()) != null));
+			
+			out.flush();
+		} catch (IOException e) {
+			System.err.println("(NetAPI) Could not send packet: " + e.getMessage());
+		}
+	}
+	
+	/**
+	* Write a packet taken from the lanes, or its next fragment
+	* if it is being sent in fragments. A packet with fragments
+	* left is put back at the head of its lane.
+	*
+	* @since	0.2
+	* @throws	IOException	If the stream fails
+	* @param	queued	Packet taken from the lanes
+	*/
+	private void write(QueuedPacket queued) throws IOException {
+		if(queued.data == null) {
+			NetPacket packet = take(queued);
+			System.out.println("(NetAPI) Sending a " + packet.getClass().getName() + " packet");
+			
+			queued.data			= NetProtocol.encodeFrame(packet, sendContext);
+			queued.fragmentID	= sendContext.split(queued.data, packet.getModID(), packet.getSender(),
+				(packet instanceof NetDeltaPacket));
+			
+			if(queued.fragmentID < 0) {
+				out.write(queued.data.array(), queued.data.arrayOffset(), queued.data.limit());
+				return;
+			}
+		}
+		
+		ByteBuffer[] parts = sendContext.getFragments().write(queued.data, queued.fragmentID);
+		for(ByteBuffer part : parts) {
+			out.write(part.array(), part.arrayOffset() + part.position(), part.remaining());
+		}
+		
+		if(queued.data.hasRemaining()) {
+			sendLanes.resume(queued, queued.priority);
+			queuedPackets.release();
+		}
+	}
+	
+	/**
+	* Take the next packet from the lanes, once one of the
+	* queued packets has been counted off
+	*
+	* @since	0.2
+	* @return	Packet taken from the lanes
+	*/
+	private QueuedPacket takeQueued() {
+		sendLanes.peek();
+		QueuedPacket queued = sendLanes.remove();
+		
+		// Packets resumed part way through were already let out
+		if(queued.data == null) {
+			queueRoom.release();
+		}
+		
+		return queued;
+	}
+	
+	/**
+	* Take the packet out of a queued packet to send it, after
+	* which it can no longer be replaced
+	*
+	* @since	0.2
+	* @param	queued	Packet taken from the queue
+	* @return	The latest packet queued in its place
+	*/
+	private NetPacket take(QueuedPacket queued) {
+		NetPacket packet = queued.take();
+		
+		if(queued.key != null) {
+			keyedPackets.remove(queued.key, queued);
+		}
+		
+		return packet;
+	}
+	
+	/**
+	* Wait out the coalescing window, unless a flush is
+	* requested first
+	*
+	* @since	0.2
+	* @throws	InterruptedException	If woken to stop
+	*/
+	private void waitForBatch() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + NetConfig.getCoalesceWindow();
+		
+		synchronized(flushLock) {
+			long left;
+			while(!flushRequested && ((left = deadline - System.currentTimeMillis()) > 0)) {
+				flushLock.wait(left);
 			}
+			
+			flushRequested = false;
 		}
 	}
 	
 	private void receiveNewPackets() {
 		System.out.println("(NetAPI) Packet thread in receive mode");
-		Object	in = null;
+		receiveContext.getFiles().setDirectory(NetConfig.getFileDirectory());
 		
 		try {
 			while(alive) {	
 				try {
-					in = ois.readObject();
-					System.out.println("(NetAPI) Packet received");
-					if(in instanceof NetPacket) {
-						NetPacket packet = (NetPacket) in;
-						
+					NetPacket packet = readFrame();
+					
+					// Fragments and files only make a packet once the last part arrives
+					if(packet instanceof NetDatagramPacket) {
+						NetAPI.openDatagrams(socket, ((NetDatagramPacket) packet).getToken());
+					} else if(packet != null) {
+						System.out.println("(NetAPI) Packet received");
 						processPacket(packet);
 					}
 				} catch (SocketTimeoutException e) {
@@ -191,27 +613,87 @@ public class NetPacketThread extends Thread {
 			}
 		} catch (IOException e) {
 			System.err.println("(NetAPI) IOException in receiving: " + e.getMessage());
-		} catch (ClassNotFoundException e) {
-			System.err.println("(NetAPI) Could not find class: " + e.getMessage());
 		}
 		
+		// Files cut off part way are of no use
+		receiveContext.getFiles().close();
 		System.out.println("(NetAPI) Packet thread receving stopped");
 	}
 	
+	/**
+	* Decode and handle a frame read by the game connection
+	*
+	* @since	0.2
+	* @throws	IOException	If the frame is bad
+	* @param	data	Array holding the frame data
+	* @param	offset	Start of the frame data
+	* @param	length	Length of the frame data
+	*/
+	public void receiveFrame(byte[] data, int offset, int length) throws IOException {
+		processPacket(NetProtocol.decode(data, offset, length, receiveContext));
+	}
+	
+	/**
+	* Read a single frame, reusing the read buffer for anything
+	* that fits in it
+	*
+	* @since	0.2
+	* @throws	IOException	If the stream fails or the frame is bad
+	* @return	Decoded packet, or null if the frame was a fragment
+	*			or file chunk and more of its packet is still to come
+	*/
+	private NetPacket readFrame() throws IOException {
+		int header = in.readInt();
+		int length = NetProtocol.readHeader(header);
+		
+		if(readBuffer == null) {
+			readBuffer	= ByteBuffer.allocate(READ_BUFFER_SIZE);
+			readInput	= new NetInput(readBuffer);
+		}
+		
+		NetInput input = readInput;
+		if(length > readBuffer.capacity()) {
+			byte[] data = new byte[length];
+			in.readFully(data);
+			
+			input = new NetInput(ByteBuffer.wrap(data));
+		} else {
+			in.readFully(readBuffer.array(), 0, length);
+			readBuffer.clear();
+			readBuffer.limit(length);
+		}
+		
+		return NetProtocol.decodeFrame(header, input, receiveContext);
+	}
+	
 	/**
 	* Process a regular packet
 	*
 	* @param	packet	Packet to handle
 	*/
 	private void processPacket(NetPacket packet) {					
+		NetDispatcher dispatcher = NetAPI.getDispatcher();
+		
+		if(packet instanceof NetRequestPacket) {
+			// Answered where handlers run, or refused straight
+			// away if dropped so the server is not left waiting
+			int id = ((NetRequestPacket) packet).getID();
+			NetCodecRegistry.dispatched(packet, 1);
+			
+			if(!dispatcher.dispatch(answerer, packet)) {
+				NetAPI.sendPacket(new NetResponsePacket(id, "Too many requests waiting to be answered"));
+			}
+			return;
+		} else if(packet instanceof NetResponsePacket) {
+			NetAPI.getRequests().receive((NetResponsePacket) packet);
+			return;
+		}
+		
 		NetPacketHandler[] handlers = NetAPI.getHandlers(packet);
+		NetCodecRegistry.dispatched(packet, handlers.length);
 		
 		for(NetPacketHandler handler : handlers) {
-			// To avoid a handler locking up the receiver thread
-			// We will shove them into a temporary thread
-			HandlerThread p = new HandlerThread(handler, packet);
-			p.start();
-			handler.handle(packet);
+			dispatcher.dispatch(handler, packet);
 		}
 	}
 	
@@ -226,13 +708,14 @@ public class NetPacketThread extends Thread {
 	*/
 	public void stopThread() {
 		alive = false;
+		interrupt();
 		
 		try {
-			if(oos != null) {
-				oos.close();
+			if(out != null) {
+				out.close();
 			}
-			if(ois != null) {
-				ois.close();
+			if(in != null) {
+				in.close();
 			}
 		} catch (IOException e) {
 			// Why the hell is that being thrown here? Doesn't matter.
@@ -240,40 +723,93 @@ public class NetPacketThread extends Thread {
 	}
 	
 	/**
-	* A temporary packet handling thread to avoid locking the main
-	* net packet thread
+	* A packet waiting in the send queue, which a newer packet
+	* with the same coalescing key can replace until it is taken
+	* to be sent. Once taken the sender thread keeps its frame
+	* here while sending it in fragments.
 	*
 	* @author	Clinton Alexander
-	* @since	0.1
+	* @version	0.2
+	* @since	0.2
 	*/
-	private class HandlerThread extends Thread {
+	private static class QueuedPacket {
+		/**
+		* Coalescing key, or null if never replaced
+		*
+		* @since	0.2
+		*/
+		public final Object			key;
+		/**
+		* Lane the packet is queued in
+		*
+		* @since	0.2
+		*/
+		public final NetPriority	priority;
+		/**
+		* Frame being sent in fragments, positioned at the next
+		* fragment. Only used by the sender thread.
+		*
+		* @since	0.2
+		*/
+		public ByteBuffer			data;
 		/**
-		* The handler for this thread
+		* ID of the frame's fragments
 		*
-		* @since	0.1
+		* @since	0.2
 		*/
-		private NetPacketHandler	handler;
+		public int					fragmentID;
 		/**
-		* The packet for this thread
+		* Latest packet queued under the key
 		*
-		* @since	0.1
+		* @since	0.2
 		*/
 		private NetPacket			packet;
 		/**
-		* Create the handler thread
+		* True once taken to be sent
 		*
-		* @since	0.1
-		* @param	handler	Handler we are handling with
-		* @param	packet	Packet to handler
+		* @since	0.2
 		*/
-		public HandlerThread(NetPacketHandler handler, NetPacket packet) {
-			this.packet  = packet;
-			this.handler = handler;
+		private boolean				taken;
+		
+		/**
+		* Create a queued packet
+		*
+		* @since	0.2
+		* @param	packet		Packet to send
+		* @param	key			Coalescing key, or null
+		* @param	priority	Lane the packet is queued in
+		*/
+		public QueuedPacket(NetPacket packet, Object key, NetPriority priority) {
+			this.packet		= packet;
+			this.key		= key;
+			this.priority	= priority;
 		}
 		
+		/**
+		* Replace the packet, unless it has been taken
+		*
+		* @since	0.2
+		* @param	newer	Newer packet
+		* @return	True if replaced
+		*/
+		public synchronized boolean replace(NetPacket newer) {
+			if(taken) {
+				return false;
+			}
+			
+			packet = newer;
+			return true;
+		}
 		
-		public void run() {
-			handler.handle(packet);
+		/**
+		* Take the packet to send it
+		*
+		* @since	0.2
+		* @return	Latest packet
+		*/
+		public synchronized NetPacket take() {
+			taken = true;
+			return packet;
 		}
 	}
 }
\ No newline at end of file
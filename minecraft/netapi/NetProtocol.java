@@ -0,0 +1,377 @@
+package netapi;
+
+import netapi.packet.NetCodecContext;
+import netapi.packet.NetCodecRegistry;
+import netapi.packet.NetCompression;
+import netapi.packet.NetDeltaPacket;
+import netapi.packet.NetFilePacket;
+import netapi.packet.NetInput;
+import netapi.packet.NetOutput;
+import netapi.packet.NetPacket;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+* The framing used on the NetAPI socket. Every packet is sent
+* as a four byte length followed by that many bytes of packet
+* data, so that either end can read whole packets without
+* blocking on a half received object. The packet data is
+* written by the packet's codec, see NetCodecRegistry.
+*
+* Once connected each end remembers what it has sent, see
+* NetCodecContext, so the methods taking a context must be given
+* the context of the connection. The name sent when connecting
+* goes without one.
+*
+* A large frame may instead arrive as a run of fragments, each a
+* frame with FRAGMENT_FLAG set in its length, see NetFragmentTable.
+* A file arrives as a run of chunks with FILE_FLAG set, after the
+* packet announcing it, see NetFileTable.
+*
+* Packets that may be lost can also be sent as datagrams, each
+* holding one packet with its strings in full, as datagrams may
+* be lost or arrive out of order. Datagrams from the client start
+* with the token the server offered it, see NetDatagramPacket.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetProtocol {
+	/**
+	* Length of the frame header, the size of the packet data
+	*
+	* @since	0.2
+	*/
+	public static final int HEADER_LENGTH		= 4;
+	/**
+	* Largest frame that will be accepted from the other end
+	*
+	* @since	0.2
+	*/
+	public static final int MAX_FRAME_LENGTH	= 0x1000000;
+	/**
+	* Bit set in the frame header of a fragment of a larger frame
+	*
+	* @since	0.2
+	*/
+	public static final int FRAGMENT_FLAG		= 0x80000000;
+	/**
+	* Bit set in the frame header of a chunk of a file
+	*
+	* @since	0.2
+	*/
+	public static final int FILE_FLAG			= 0x40000000;
+	/**
+	* Length of the token at the start of each datagram from
+	* the client
+	*
+	* @since	0.2
+	*/
+	public static final int TOKEN_LENGTH		= 8;
+	
+	//===============
+	// Encoding
+	//===============
+	
+	/**
+	* Encode a packet into a complete frame ready to be written
+	* to a channel
+	*
+	* @since	0.2
+	* @throws	IOException	If the packet cannot be written
+	* @param	packet	Packet to encode
+	* @return	Frame, flipped and ready for writing
+	*/
+	public static ByteBuffer encodeFrame(NetPacket packet) throws IOException {
+		return encodeFrame(packet, null);
+	}
+	
+	/**
+	* Encode a packet into a complete frame ready to be written
+	* to a channel
+	*
+	* @since	0.2
+	* @throws	IOException	If the packet cannot be written
+	* @param	packet	Packet to encode
+	* @param	context	What has been sent on the connection
+	* @return	Frame, flipped and ready for writing
+	*/
+	public static ByteBuffer encodeFrame(NetPacket packet, NetCodecContext context) throws IOException {
+		NetOutput out = new NetOutput();
+		out.writeInt(0);
+		
+		if(context == null) {
+			NetCodecRegistry.encodeStrings(packet, out, null);
+			NetCompression.encode(packet, out);
+		} else {
+			NetCodecRegistry.encodeStrings(packet, out, context.getStrings());
+			int start = out.size();
+			NetCompression.encode(packet, out);
+			
+			if(packet instanceof NetDeltaPacket) {
+				ByteBuffer body = out.getBuffer().duplicate();
+				body.flip();
+				body.position(start);
+				
+				body = body.slice();
+				
+				ByteBuffer sent = context.getDeltas().encode(body, ((NetDeltaPacket) packet).getKey());
+				if(sent != body) {
+					out.getBuffer().position(start);
+					out.writeRaw(sent.array(), sent.arrayOffset() + sent.position(), sent.remaining());
+				}
+			}
+		}
+		
+		ByteBuffer frame = out.getBuffer();
+		frame.flip();
+		frame.putInt(0, frame.limit() - HEADER_LENGTH);
+		
+		return frame;
+	}
+	
+	/**
+	* Encode a packet into the data of a datagram, without any
+	* token. Nothing is sent in any other datagram, so the strings
+	* go in full.
+	*
+	* @since	0.2
+	* @throws	IOException	If the packet cannot be written
+	* @param	packet	Packet to encode
+	* @return	Datagram data, flipped and ready for sending, or null
+	*			if longer than NetConfig.getMaxDatagramBytes allows
+	*/
+	public static ByteBuffer encodeDatagram(NetPacket packet) throws IOException {
+		NetOutput out = new NetOutput();
+		NetCodecRegistry.encodeStrings(packet, out, null);
+		NetCompression.encode(packet, out);
+		
+		ByteBuffer datagram = out.getBuffer();
+		datagram.flip();
+		
+		return (datagram.remaining() > NetConfig.getMaxDatagramBytes()) ? null : datagram;
+	}
+	
+	/**
+	* Write a packet as a single frame to a stream
+	*
+	* @since	0.2
+	* @throws	IOException	If the stream fails
+	* @param	out		Stream to write to
+	* @param	packet	Packet to write
+	*/
+	public static void writeFrame(DataOutputStream out, NetPacket packet) throws IOException {
+		writeFrame(out, packet, null);
+	}
+	
+	/**
+	* Write a packet as a single frame to a stream
+	*
+	* @since	0.2
+	* @throws	IOException	If the stream fails
+	* @param	out		Stream to write to
+	* @param	packet	Packet to write
+	* @param	context	What has been sent on the stream
+	*/
+	public static void writeFrame(DataOutputStream out, NetPacket packet, NetCodecContext context) throws IOException {
+		ByteBuffer frame = encodeFrame(packet, context);
+		out.write(frame.array(), frame.arrayOffset(), frame.limit());
+	}
+	
+	//===============
+	// Decoding
+	//===============
+	
+	/**
+	* Decode the data of a single frame
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is not a packet
+	* @param	data	Buffer holding the frame data
+	* @param	offset	Start of the frame data
+	* @param	length	Length of the frame data
+	* @return	Decoded packet
+	*/
+	public static NetPacket decode(byte[] data, int offset, int length) throws IOException {
+		return decode(data, offset, length, null);
+	}
+	
+	/**
+	* Decode the data of a single frame
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is not a packet
+	* @param	data	Buffer holding the frame data
+	* @param	offset	Start of the frame data
+	* @param	length	Length of the frame data
+	* @param	context	What has been received on the connection
+	* @return	Decoded packet
+	*/
+	public static NetPacket decode(byte[] data, int offset, int length, NetCodecContext context) throws IOException {
+		return NetCodecRegistry.decode(new NetInput(ByteBuffer.wrap(data, offset, length)), context);
+	}
+	
+	/**
+	* Decode the data of a frame of any kind, after its header
+	*
+	* @since	0.2
+	* @throws	IOException	If the frame is bad
+	* @param	header	Frame header
+	* @param	in		Input holding only the frame data
+	* @param	context	What has been received on the connection
+	* @return	Decoded packet, or null if the frame was a fragment
+	*			or file chunk and more of its packet is still to come
+	*/
+	public static NetPacket decodeFrame(int header, NetInput in, NetCodecContext context) throws IOException {
+		if(isFileChunk(header)) {
+			return decodeChunk(in, context);
+		} else if(isFragment(header)) {
+			return decodeFragment(in, context);
+		}
+		
+		return NetCodecRegistry.decode(in, context);
+	}
+	
+	/**
+	* Decode the data of a fragment
+	*
+	* @since	0.2
+	* @throws	IOException	If the fragment or its frame is bad
+	* @param	in		Input holding only the fragment data
+	* @param	context	What has been received on the connection
+	* @return	Decoded packet once the last fragment of its frame
+	*			has arrived, otherwise null
+	*/
+	public static NetPacket decodeFragment(NetInput in, NetCodecContext context) throws IOException {
+		if(context == null) {
+			throw new IOException("Fragment sent without a connection");
+		}
+		
+		ByteBuffer frame = context.getFragments().read(in);
+		
+		return (frame == null) ? null : NetCodecRegistry.decode(new NetInput(frame), context);
+	}
+	
+	/**
+	* Decode the data of a file chunk, writing it to its file
+	*
+	* @since	0.2
+	* @throws	IOException	If the chunk is bad or cannot be written
+	* @param	in		Input holding only the chunk data
+	* @param	context	What has been received on the connection
+	* @return	Packet announcing the file once its last chunk has
+	*			arrived, otherwise null
+	*/
+	public static NetFilePacket decodeChunk(NetInput in, NetCodecContext context) throws IOException {
+		if(context == null) {
+			throw new IOException("File sent without a connection");
+		}
+		
+		return context.getFiles().read(in);
+	}
+	
+	/**
+	* Decode the data of a datagram, after any token
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is not a packet
+	* @param	data	Buffer holding only the datagram data
+	* @return	Decoded packet
+	*/
+	public static NetPacket decodeDatagram(ByteBuffer data) throws IOException {
+		return NetCodecRegistry.decode(new NetInput(data), null);
+	}
+	
+	/**
+	* Read a single frame from a stream, blocking until it
+	* has fully arrived
+	*
+	* @since	0.2
+	* @throws	IOException	If the stream fails or the frame is bad
+	* @param	in		Stream to read from
+	* @return	Decoded packet
+	*/
+	public static NetPacket readFrame(DataInputStream in) throws IOException {
+		return readFrame(in, null);
+	}
+	
+	/**
+	* Read a single frame from a stream, blocking until it
+	* has fully arrived
+	*
+	* @since	0.2
+	* @throws	IOException	If the stream fails or the frame is bad
+	* @param	in		Stream to read from
+	* @param	context	What has been received on the stream
+	* @return	Decoded packet, once every fragment of a fragmented
+	*			frame or chunk of a file has been read
+	*/
+	public static NetPacket readFrame(DataInputStream in, NetCodecContext context) throws IOException {
+		NetPacket packet;
+		
+		do {
+			int header	= in.readInt();
+			int length	= readHeader(header);
+			byte[] data	= new byte[length];
+			in.readFully(data);
+			
+			packet = decodeFrame(header, new NetInput(ByteBuffer.wrap(data)), context);
+		} while(packet == null);
+		
+		return packet;
+	}
+	
+	/**
+	* Check a frame length read from the other end
+	*
+	* @since	0.2
+	* @throws	IOException	If the length is out of range
+	* @param	length	Length from the frame header
+	* @return	The length
+	*/
+	public static int readLength(int length) throws IOException {
+		if((length < 0) || (length > MAX_FRAME_LENGTH)) {
+			throw new IOException("Bad frame length " + length);
+		}
+		
+		return length;
+	}
+	
+	/**
+	* Check a frame header read from the other end
+	*
+	* @since	0.2
+	* @throws	IOException	If the length is out of range
+	* @param	header	Frame header
+	* @return	Length of the frame data
+	*/
+	public static int readHeader(int header) throws IOException {
+		return readLength(header & ~(FRAGMENT_FLAG | FILE_FLAG));
+	}
+	
+	/**
+	* Check whether a frame header is that of a fragment
+	*
+	* @since	0.2
+	* @param	header	Frame header
+	* @return	True if the frame is a fragment of a larger frame
+	*/
+	public static boolean isFragment(int header) {
+		return ((header & FRAGMENT_FLAG) != 0);
+	}
+	
+	/**
+	* Check whether a frame header is that of a file chunk
+	*
+	* @since	0.2
+	* @param	header	Frame header
+	* @return	True if the frame is part of a file
+	*/
+	public static boolean isFileChunk(int header) {
+		return ((header & FILE_FLAG) != 0);
+	}
+}
\ No newline at end of file
@@ -1,12 +1,14 @@
 package netapi.client;
 
+import netapi.NetProtocol;
 import netapi.packet.UsernamePacket;
 
 import net.minecraft.src.NetworkManager;
 
 import java.net.Socket;
 import java.net.InetAddress;
-import java.io.ObjectOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 
 /**
@@ -52,11 +54,11 @@ public class NetConnectThread extends Thread {
 			System.out.println("(NetAPI) Connecting to " + addr + ":" + port);
 			Socket netAPISocket = new Socket(addr, port);
 			System.out.println("(NetAPI) Creating output stream");
-			ObjectOutputStream oos = new ObjectOutputStream(netAPISocket.getOutputStream());
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(netAPISocket.getOutputStream()));
 			System.out.println("(NetAPI) Authenticating with username packet");
-			sendUsernamePacket(netAPISocket, oos, user);	
+			sendUsernamePacket(netAPISocket, out, user);	
 			System.out.println("(NetAPI) Setting network management");
-			netManager.setNetAPISocket(netAPISocket, oos);
+			netManager.setNetAPISocket(netAPISocket, out);
 		} catch (IOException e) {
 			System.out.println("(NetAPI) Connection failed: " + e.getMessage());
 		}			
@@ -68,14 +70,15 @@ public class NetConnectThread extends Thread {
 	*
 	* @throws	IOException	If something fails
 	* @param	socket		Socket to use
+	* @param	out			Stream to send with
 	* @param	username	NAme of user to send
 	*/
-	private void sendUsernamePacket(Socket socket, ObjectOutputStream oos, String username)
+	private void sendUsernamePacket(Socket socket, DataOutputStream out, String username)
 		throws IOException {
 		// Login with username 
 		System.out.print("(NetAPI) Logging into server with username " + username + " ...");
-		oos.writeObject(new UsernamePacket(username));
+		NetProtocol.writeFrame(out, new UsernamePacket(username));
 		System.out.println(" connected");
-		oos.flush();
+		out.flush();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,270 @@
+package netapi.client;
+
+import netapi.NetAPI;
+import netapi.NetDispatcher;
+import netapi.NetPacketHandler;
+import netapi.NetProtocol;
+import netapi.packet.NetCodecRegistry;
+import netapi.packet.NetPacket;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+* The thread for datagrams to and from the server, for packets that
+* may be lost, once the server has offered them. It says hello with
+* the server's token until the server answers, and packets go on
+* the connection until then. If the server stops answering for long
+* enough, most likely as datagrams are blocked on the way, it gives
+* up and everything goes on the connection again.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetDatagramThread extends Thread {
+	/**
+	* Milliseconds to wait for an answer before saying hello again
+	*
+	* @since	0.2
+	*/
+	private static final int HELLO_INTERVAL		= 500;
+	/**
+	* Hellos left unanswered before giving up on datagrams
+	*
+	* @since	0.2
+	*/
+	private static final int HELLO_TRIES		= 10;
+	/**
+	* Milliseconds between hellos once the server has answered,
+	* sooner if no datagram arrives from it in that time. This
+	* tells the server datagrams still get through and keeps the
+	* way through any NAT open.
+	*
+	* @since	0.2
+	*/
+	private static final int KEEPALIVE_INTERVAL	= 15000;
+	/**
+	* Longest datagram that can arrive
+	*
+	* @since	0.2
+	*/
+	private static final int MAX_DATAGRAM_LENGTH	= 0x10000;
+	/**
+	* Socket connected to the server's datagram port
+	*
+	* @since	0.2
+	*/
+	private DatagramSocket	socket;
+	/**
+	* Token offered by the server
+	*
+	* @since	0.2
+	*/
+	private long			token;
+	/**
+	* Time in milliseconds of the last hello. Only used by this thread.
+	*
+	* @since	0.2
+	*/
+	private long			helloTime;
+	/**
+	* True once the server has answered, until given up on
+	*
+	* @since	0.2
+	*/
+	private volatile boolean	open	= false;
+	/**
+	* True while alive
+	*
+	* @since	0.2
+	*/
+	private volatile boolean	alive	= true;
+	
+	/**
+	* Open a socket for datagrams to the server
+	*
+	* @since	0.2
+	* @throws	IOException	If the socket cannot be opened
+	* @param	addr	Address of the server
+	* @param	port	Port of the server's NetAPI socket
+	* @param	token	Token offered by the server
+	*/
+	public NetDatagramThread(InetAddress addr, int port, long token) throws IOException {
+		super("NetAPI datagram thread");
+		this.socket	= new DatagramSocket();
+		this.token	= token;
+		
+		socket.connect(addr, port);
+	}
+	
+	//===============
+	// Sending
+	//===============
+	
+	/**
+	* Send a packet as a datagram, if the server is answering and
+	* the packet is short enough
+	*
+	* @since	0.2
+	* @param	packet	Packet to send
+	* @return	False if it must be sent on the connection instead
+	*/
+	public boolean send(NetPacket packet) {
+		if(!open) {
+			return false;
+		}
+		
+		try {
+			ByteBuffer data = NetProtocol.encodeDatagram(packet);
+			if(data == null) {
+				return false;
+			}
+			
+			byte[] datagram = new byte[NetProtocol.TOKEN_LENGTH + data.remaining()];
+			ByteBuffer.wrap(datagram).putLong(token).put(data);
+			
+			socket.send(new DatagramPacket(datagram, datagram.length));
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**
+	* Say hello to the server, which answers with an empty datagram
+	*
+	* @since	0.2
+	* @throws	IOException	If the datagram cannot be sent
+	*/
+	private void sendHello() throws IOException {
+		byte[] hello = new byte[NetProtocol.TOKEN_LENGTH];
+		ByteBuffer.wrap(hello).putLong(token);
+		
+		socket.send(new DatagramPacket(hello, hello.length));
+		helloTime = System.currentTimeMillis();
+	}
+	
+	/**
+	* Check whether packets are being sent as datagrams
+	*
+	* @since	0.2
+	* @return	True if the server is answering
+	*/
+	public boolean isOpen() {
+		return open;
+	}
+	
+	//===============
+	// Receiving
+	//===============
+	
+	/**
+	* Run the thread, saying hello then receiving datagrams
+	*
+	* @since	0.2
+	*/
+	public void run() {
+		DatagramPacket received	= new DatagramPacket(new byte[MAX_DATAGRAM_LENGTH], MAX_DATAGRAM_LENGTH);
+		int unanswered			= 0;
+		
+		try {
+			socket.setSoTimeout(HELLO_INTERVAL);
+			sendHello();
+			
+			while(alive) {
+				try {
+					received.setLength(MAX_DATAGRAM_LENGTH);
+					socket.receive(received);
+				} catch (SocketTimeoutException e) {
+					if(++unanswered >= HELLO_TRIES) {
+						System.out.println("(NetAPI) No answer to datagrams, sending packets on the connection");
+						break;
+					}
+					
+					socket.setSoTimeout(HELLO_INTERVAL);
+					sendHello();
+					continue;
+				}
+				
+				// Closing the socket can wake receive without a datagram
+				if(!alive) {
+					break;
+				} else if(!open) {
+					System.out.println("(NetAPI) Sending packets that may be lost as datagrams");
+					open = true;
+				}
+				
+				unanswered = 0;
+				socket.setSoTimeout(KEEPALIVE_INTERVAL);
+				
+				if(received.getLength() > 0) {
+					receive(received);
+				}
+				
+				// The server stops sending datagrams without hellos,
+				// even while its datagrams are arriving
+				if((System.currentTimeMillis() - helloTime) >= KEEPALIVE_INTERVAL) {
+					sendHello();
+				}
+			}
+		} catch (IOException e) {
+			if(alive) {
+				System.err.println("(NetAPI) IOException in datagrams: " + e.getMessage());
+			}
+		}
+		
+		open = false;
+		socket.close();
+	}
+	
+	/**
+	* Decode and handle a datagram from the server. A bad datagram
+	* is dropped like a lost one.
+	*
+	* @since	0.2
+	* @param	datagram	Datagram received
+	*/
+	private void receive(DatagramPacket datagram) {
+		try {
+			processPacket(NetProtocol.decodeDatagram(ByteBuffer.wrap(datagram.getData(), 0, datagram.getLength())));
+		} catch (IOException e) {
+			System.err.println("(NetAPI) Bad datagram: " + e.getMessage());
+		}
+	}
+	
+	/**
+	* Process a regular packet
+	*
+	* @param	packet	Packet to handle
+	*/
+	private void processPacket(NetPacket packet) {
+		NetPacketHandler[] handlers = NetAPI.getHandlers(packet);
+		
+		NetDispatcher dispatcher = NetAPI.getDispatcher();
+		NetCodecRegistry.dispatched(packet, handlers.length);
+		
+		for(NetPacketHandler handler : handlers) {
+			dispatcher.dispatch(handler, packet);
+		}
+	}
+	
+	//===============
+	// Thread control methods
+	//===============
+	
+	/**
+	* Stop the thread and close its socket
+	*
+	* @since	0.2
+	*/
+	public void stopThread() {
+		alive	= false;
+		open	= false;
+		socket.close();
+	}
+}
\ No newline at end of file
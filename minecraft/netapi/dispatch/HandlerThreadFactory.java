@@ -0,0 +1,33 @@
+package netapi.dispatch;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* Creates the daemon threads that dispatchers run handlers on
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+class HandlerThreadFactory implements ThreadFactory {
+	/**
+	* Number of threads created so far, for naming
+	*
+	* @since	0.2
+	*/
+	private AtomicInteger count = new AtomicInteger();
+	
+	/**
+	* Create a handler thread
+	*
+	* @since	0.2
+	* @param	task	Task for the thread
+	* @return	New thread
+	*/
+	public Thread newThread(Runnable task) {
+		Thread thread = new Thread(task, "NetAPI handler thread " + count.getAndIncrement());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+package netapi.dispatch;
+
+import netapi.NetAPI;
+import netapi.NetDispatcher;
+import netapi.NetPacketHandler;
+import netapi.packet.NetCodecRegistry;
+import netapi.packet.NetPacket;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* Runs handlers on a fixed pool of threads shared by every
+* connection. Handlers wait in a bounded queue, and once the
+* queue is full further packets are dropped rather than letting
+* a flood of packets use up all memory.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class PooledDispatcher implements NetDispatcher {
+	/**
+	* The pool handlers are run on
+	*
+	* @since	0.2
+	*/
+	private ThreadPoolExecutor	pool;
+	/**
+	* Number of handlers dropped because the queue was full
+	*
+	* @since	0.2
+	*/
+	private AtomicLong			dropped = new AtomicLong();
+	
+	/**
+	* Create a pooled dispatcher
+	*
+	* @since	0.2
+	* @param	threads		Number of threads to run handlers on
+	* @param	queueDepth	Most handlers waiting for a thread
+	*/
+	public PooledDispatcher(int threads, int queueDepth) {
+		pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(queueDepth), new HandlerThreadFactory());
+		pool.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	* Queue a handler to run on the pool
+	*
+	* @since	0.2
+	* @param	handler		Handler to run
+	* @param	packet		Packet to handle
+	* @return	False if the queue was full and the handler dropped
+	*/
+	public boolean dispatch(NetPacketHandler handler, NetPacket packet) {
+		try {
+			pool.execute(new HandlerTask(handler, packet));
+			return true;
+		} catch (RejectedExecutionException e) {
+			onDropped(dropped);
+			NetCodecRegistry.handled(packet);
+			return false;
+		}
+	}
+	
+	/**
+	* Stop the pool's threads
+	*
+	* @since	0.2
+	*/
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+	
+	/**
+	* Get the number of handlers dropped because the queue was full
+	*
+	* @since	0.2
+	* @return	Handlers dropped
+	*/
+	public long getDropped() {
+		return dropped.get();
+	}
+	
+	/**
+	* Count a dropped handler, logging now and again
+	*
+	* @since	0.2
+	* @param	counter		Counter of drops
+	*/
+	static void onDropped(AtomicLong counter) {
+		if((counter.incrementAndGet() % 1000) == 1) {
+			NetAPI.log.warning("(NetAPI) Handler queue full, " + counter.get() + " packets dropped so far");
+		}
+	}
+	
+	/**
+	* A single handler waiting to be run
+	*
+	* @author	Clinton Alexander
+	* @since	0.2
+	*/
+	private static class HandlerTask implements Runnable {
+		/**
+		* The handler to run
+		*
+		* @since	0.2
+		*/
+		private NetPacketHandler	handler;
+		/**
+		* The packet to handle
+		*
+		* @since	0.2
+		*/
+		private NetPacket			packet;
+		
+		/**
+		* Create the task
+		*
+		* @since	0.2
+		* @param	handler	Handler we are handling with
+		* @param	packet	Packet to handle
+		*/
+		public HandlerTask(NetPacketHandler handler, NetPacket packet) {
+			this.handler	= handler;
+			this.packet		= packet;
+		}
+		
+		public void run() {
+			InlineDispatcher.run(handler, packet);
+		}
+	}
+}
\ No newline at end of file
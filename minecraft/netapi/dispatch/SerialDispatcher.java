@@ -0,0 +1,255 @@
+package netapi.dispatch;
+
+import netapi.NetDispatcher;
+import netapi.NetPacketHandler;
+import netapi.packet.NetCodecRegistry;
+import netapi.packet.NetPacket;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* Runs each handler on a shared pool of threads, but never runs
+* the same handler on two threads at once, so handlers see their
+* packets one at a time and in the order they arrived. Each
+* handler has its own bounded queue, so one slow handler only
+* drops its own packets. A queue is dropped once it has drained,
+* so handlers that come and go leave nothing behind.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class SerialDispatcher implements NetDispatcher {
+	/**
+	* Most packets run by one handler before letting other
+	* handlers have the thread
+	*
+	* @since	0.2
+	*/
+	private static final int BATCH_SIZE = 64;
+	/**
+	* The pool handlers are run on
+	*
+	* @since	0.2
+	*/
+	private ExecutorService		pool;
+	/**
+	* The queue of each handler with packets waiting or running
+	*
+	* @since	0.2
+	*/
+	private ConcurrentHashMap<NetPacketHandler, HandlerQueue> queues
+		= new ConcurrentHashMap<NetPacketHandler, HandlerQueue>();
+	/**
+	* Most packets waiting for any one handler
+	*
+	* @since	0.2
+	*/
+	private int					queueDepth;
+	/**
+	* Number of packets dropped because a queue was full
+	*
+	* @since	0.2
+	*/
+	private AtomicLong			dropped = new AtomicLong();
+	
+	/**
+	* Create a serial dispatcher
+	*
+	* @since	0.2
+	* @param	threads		Number of threads to run handlers on
+	* @param	queueDepth	Most packets waiting for any one handler
+	*/
+	public SerialDispatcher(int threads, int queueDepth) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new HandlerThreadFactory());
+		executor.allowCoreThreadTimeOut(true);
+		
+		this.pool		= executor;
+		this.queueDepth	= queueDepth;
+	}
+	
+	/**
+	* Queue a packet for a handler, starting the handler if it
+	* is not already running
+	*
+	* @since	0.2
+	* @param	handler		Handler to run
+	* @param	packet		Packet to handle
+	* @return	False if the handler's queue was full and the
+	*			packet dropped
+	*/
+	public boolean dispatch(NetPacketHandler handler, NetPacket packet) {
+		HandlerQueue queue = queues.get(handler);
+		
+		if(queue == null) {
+			HandlerQueue created = new HandlerQueue(handler);
+			queue = queues.putIfAbsent(handler, created);
+			if(queue == null) {
+				queue = created;
+			}
+		}
+		
+		return queue.offer(packet);
+	}
+	
+	/**
+	* Stop the pool's threads
+	*
+	* @since	0.2
+	*/
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+	
+	/**
+	* Get the number of packets dropped because a queue was full
+	*
+	* @since	0.2
+	* @return	Packets dropped
+	*/
+	public long getDropped() {
+		return dropped.get();
+	}
+	
+	/**
+	* The packets waiting for one handler. At most one thread
+	* drains the queue at a time.
+	*
+	* @author	Clinton Alexander
+	* @since	0.2
+	*/
+	private class HandlerQueue implements Runnable {
+		/**
+		* The handler of this queue
+		*
+		* @since	0.2
+		*/
+		private NetPacketHandler					handler;
+		/**
+		* Packets waiting to be handled
+		*
+		* @since	0.2
+		*/
+		private ConcurrentLinkedQueue<NetPacket>	packets = new ConcurrentLinkedQueue<NetPacket>();
+		/**
+		* Number of packets waiting
+		*
+		* @since	0.2
+		*/
+		private AtomicInteger						size	= new AtomicInteger();
+		/**
+		* True while queued on or running on the pool
+		*
+		* @since	0.2
+		*/
+		private AtomicBoolean						running	= new AtomicBoolean(false);
+		/**
+		* True once drained and taken out of the map of queues,
+		* guarded by this
+		*
+		* @since	0.2
+		*/
+		private boolean								retired;
+		
+		/**
+		* Create the queue for a handler
+		*
+		* @since	0.2
+		* @param	handler		The handler
+		*/
+		public HandlerQueue(NetPacketHandler handler) {
+			this.handler = handler;
+		}
+		
+		/**
+		* Add a packet, dropping it if the queue is full. A queue
+		* that has just drained takes no more packets, so they go
+		* in a new queue instead.
+		*
+		* @since	0.2
+		* @param	packet		Packet to handle
+		* @return	False if the queue was full and the packet dropped
+		*/
+		public boolean offer(NetPacket packet) {
+			boolean added = false;
+			
+			synchronized(this) {
+				if(!retired) {
+					if(size.incrementAndGet() > queueDepth) {
+						size.decrementAndGet();
+						PooledDispatcher.onDropped(dropped);
+						NetCodecRegistry.handled(packet);
+						return false;
+					}
+					
+					packets.add(packet);
+					added = true;
+				}
+			}
+			
+			// Drained since it was looked up
+			if(!added) {
+				return dispatch(handler, packet);
+			}
+			
+			schedule();
+			return true;
+		}
+		
+		/**
+		* Put this queue on the pool unless it is already there
+		*
+		* @since	0.2
+		*/
+		private void schedule() {
+			if(running.compareAndSet(false, true)) {
+				pool.execute(this);
+			}
+		}
+		
+		/**
+		* Handle a batch of packets then give up the thread
+		*
+		* @since	0.2
+		*/
+		public void run() {
+			NetPacket packet;
+			
+			for(int x = 0; (x < BATCH_SIZE) && ((packet = packets.poll()) != null); x++) {
+				size.decrementAndGet();
+				InlineDispatcher.run(handler, packet);
+			}
+			
+			running.set(false);
+			// Anything added after the last poll
+			if(!packets.isEmpty()) {
+				schedule();
+			} else {
+				retire();
+			}
+		}
+		
+		/**
+		* Take this queue out of the map of queues if nothing has
+		* been added since it drained. Packets for the handler
+		* after that go in a new queue.
+		*
+		* @since	0.2
+		*/
+		private synchronized void retire() {
+			if(packets.isEmpty() && !running.get()) {
+				retired = true;
+				queues.remove(handler, this);
+			}
+		}
+	}
+}
\ No newline at end of file
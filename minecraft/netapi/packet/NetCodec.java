@@ -0,0 +1,35 @@
+package netapi.packet;
+
+import java.io.IOException;
+
+/**
+* Writes and reads the fields of one type of packet in a compact
+* binary form. Codecs are registered against a small numeric ID
+* with the NetCodecRegistry, which takes care of the mod ID,
+* sender and timestamp every packet carries.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public interface NetCodec<T extends NetPacket> {
+	/**
+	* Write the fields of a packet
+	*
+	* @since	0.2
+	* @throws	IOException	If the packet cannot be written
+	* @param	packet	Packet to write
+	* @param	out		Output to write to
+	*/
+	public void encode(T packet, NetOutput out) throws IOException;
+	
+	/**
+	* Read the fields of a packet and create it
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is not a valid packet
+	* @param	in		Input to read from
+	* @return	The packet read
+	*/
+	public T decode(NetInput in) throws IOException;
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+package netapi.packet;
+
+import java.nio.ByteBuffer;
+
+/**
+* What one direction of a connection remembers between packets so
+* later packets can be sent smaller: the strings sent so far, see
+* NetStringTable, and the last state of each delta packet, see
+* NetDeltaTable, along with the frames in fragments, see
+* NetFragmentTable, and the files being received, see NetFileTable.
+* Each end keeps one context for what it sends and one for what it
+* receives. Both must see every frame, in the order it was written,
+* so a frame encoded with a context must be sent.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetCodecContext {
+	/**
+	* Strings sent so far
+	*
+	* @since	0.2
+	*/
+	private NetStringTable		strings		= new NetStringTable();
+	/**
+	* Baselines of delta packets
+	*
+	* @since	0.2
+	*/
+	private NetDeltaTable		deltas		= new NetDeltaTable();
+	/**
+	* Frames in fragments
+	*
+	* @since	0.2
+	*/
+	private NetFragmentTable	fragments	= new NetFragmentTable(strings);
+	/**
+	* Files being received
+	*
+	* @since	0.2
+	*/
+	private NetFileTable		files		= new NetFileTable();
+	
+	/**
+	* Get the table of strings
+	*
+	* @since	0.2
+	* @return	String table
+	*/
+	public NetStringTable getStrings() {
+		return strings;
+	}
+	
+	/**
+	* Get the baselines of delta packets
+	*
+	* @since	0.2
+	* @return	Delta table
+	*/
+	public NetDeltaTable getDeltas() {
+		return deltas;
+	}
+	
+	/**
+	* Get the frames in fragments
+	*
+	* @since	0.2
+	* @return	Fragment table
+	*/
+	public NetFragmentTable getFragments() {
+		return fragments;
+	}
+	
+	/**
+	* Get the files being received
+	*
+	* @since	0.2
+	* @return	File table
+	*/
+	public NetFileTable getFiles() {
+		return files;
+	}
+	
+	/**
+	* Decide whether to send a frame just encoded with this
+	* context in fragments, see NetFragmentTable. A delta packet
+	* is always sent whole, as the other end must read it before
+	* the changes sent after it.
+	*
+	* @since	0.2
+	* @param	frame	Whole frame, header first. Moved past its
+	*					header if it is to be split.
+	* @param	modID	Mod ID of the packet
+	* @param	sender	Sender of the packet
+	* @param	delta	True if the packet is a delta packet
+	* @return	ID of the frame's fragments, or -1 to send it whole
+	*/
+	public int split(ByteBuffer frame, String modID, String sender, boolean delta) {
+		return delta ? -1 : fragments.start(frame, modID, sender);
+	}
+}
\ No newline at end of file
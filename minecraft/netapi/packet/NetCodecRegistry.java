@@ -0,0 +1,637 @@
+package netapi.packet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+* The registry of packet codecs. A packet type with a codec is
+* sent as its mod ID and sender, then its codec ID, timestamp and
+* whatever the codec writes. Packets without a codec still work, but are
+* sent with Java serialization, which is far larger and slower.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetCodecRegistry {
+	/**
+	* Codec ID of packets sent with Java serialization
+	*
+	* @since	0.2
+	*/
+	public static final int SERIALIZED_ID	= 0;
+	/**
+	* Codec ID of delta packets sent as changes, see NetDeltaTable
+	*
+	* @since	0.2
+	*/
+	public static final int DELTA_ID		= 30;
+	/**
+	* Codec ID of compressed packets, see NetCompression
+	*
+	* @since	0.2
+	*/
+	public static final int COMPRESSED_ID	= 31;
+	/**
+	* Lowest codec ID available to mods. Those below are
+	* reserved for NetAPI's own packets.
+	*
+	* @since	0.2
+	*/
+	public static final int FIRST_MOD_ID	= 32;
+	/**
+	* Registered codecs indexed by ID. Replaced rather than
+	* changed so it can be read without locking.
+	*
+	* @since	0.2
+	*/
+	private static volatile Entry[] byID = new Entry[FIRST_MOD_ID];
+	/**
+	* Registered codecs by packet class
+	*
+	* @since	0.2
+	*/
+	private static ConcurrentHashMap<Class, Entry> byClass = new ConcurrentHashMap<Class, Entry>();
+	
+	static {
+		add(1, StringPacket.class,			new StringCodec());
+		add(2, UsernamePacket.class,		new UsernameCodec());
+		add(3, NetP2PPacket.class,			new P2PCodec());
+		add(4, NetFilePacket.class,			new FileCodec());
+		add(5, NetDatagramPacket.class,		new DatagramCodec());
+		add(6, NetRequestPacket.class,		new RequestCodec());
+		add(7, NetResponsePacket.class,		new ResponseCodec());
+		add(8, NetSubscribePacket.class,	new SubscribeCodec());
+	}
+	
+	//===================
+	// Registration
+	//===================
+	
+	/**
+	* Register a codec for a packet type. Both the client
+	* and server must register the same codec with the same ID.
+	*
+	* @since	0.2
+	* @throws	IllegalArgumentException	If the ID is reserved or in use
+	* @param	id		ID of the codec, at least FIRST_MOD_ID
+	* @param	type	Packet class the codec is for
+	* @param	codec	The codec
+	*/
+	public static <T extends NetPacket> void register(int id, Class<T> type, NetCodec<T> codec) {
+		if(id < FIRST_MOD_ID) {
+			throw new IllegalArgumentException("Codec IDs below " + FIRST_MOD_ID + " are reserved");
+		}
+		
+		add(id, type, codec);
+	}
+	
+	/**
+	* Add a codec to the registry
+	*
+	* @since	0.2
+	* @throws	IllegalArgumentException	If the ID or class is in use
+	* @param	id		ID of the codec
+	* @param	type	Packet class the codec is for
+	* @param	codec	The codec
+	*/
+	static synchronized <T extends NetPacket> void add(int id, Class<T> type, NetCodec<T> codec) {
+		Entry[] table = byID;
+		
+		if((id < table.length) && (table[id] != null)) {
+			throw new IllegalArgumentException("Codec ID " + id + " is already used by " + table[id].type.getName());
+		} else if(byClass.containsKey(type)) {
+			throw new IllegalArgumentException(type.getName() + " already has a codec");
+		}
+		
+		Entry[] copy = new Entry[Math.max(table.length, id + 1)];
+		System.arraycopy(table, 0, copy, 0, table.length);
+		copy[id] = new Entry(id, type, codec);
+		
+		byClass.put(type, copy[id]);
+		byID = copy;
+	}
+	
+	/**
+	* Check if a packet type has a codec
+	*
+	* @since	0.2
+	* @param	type	Packet class
+	* @return	True if a codec is registered
+	*/
+	public static boolean hasCodec(Class type) {
+		return byClass.containsKey(type);
+	}
+	
+	//===================
+	// Encoding
+	//===================
+	
+	/**
+	* Write a packet with its strings in full, for packets
+	* nested inside another
+	*
+	* @since	0.2
+	* @throws	IOException	If the packet cannot be written
+	* @param	packet	Packet to write
+	* @param	out		Output to write to
+	*/
+	public static void encode(NetPacket packet, NetOutput out) throws IOException {
+		encodeStrings(packet, out, null);
+		encodeBody(packet, out);
+	}
+	
+	/**
+	* Write the mod ID and sender of a packet, which go ahead of
+	* its body
+	*
+	* @since	0.2
+	* @param	packet	Packet to write
+	* @param	out		Output to write to
+	* @param	strings	Table of strings sent so far, or null to
+	*					send them in full
+	*/
+	public static void encodeStrings(NetPacket packet, NetOutput out, NetStringTable strings) {
+		encodeStrings(packet.getModID(), packet.getSender(), out, strings);
+	}
+	
+	/**
+	* Write the mod ID and sender of a packet
+	*
+	* @since	0.2
+	* @param	modID	Mod ID of the packet
+	* @param	sender	Sender of the packet
+	* @param	out		Output to write to
+	* @param	strings	Table of strings sent so far, or null to
+	*					send them in full
+	*/
+	public static void encodeStrings(String modID, String sender, NetOutput out, NetStringTable strings) {
+		if(strings == null) {
+			out.writeString(modID);
+			out.writeString(sender);
+		} else {
+			strings.write(out, modID);
+			strings.write(out, sender);
+		}
+	}
+	
+	/**
+	* Write the body of a packet, its codec ID and whatever
+	* follows. The body holds nothing specific to a connection,
+	* so can be shared between many.
+	*
+	* @since	0.2
+	* @throws	IOException	If the packet cannot be written
+	* @param	packet	Packet to write
+	* @param	out		Output to write to
+	*/
+	@SuppressWarnings("unchecked")
+	public static void encodeBody(NetPacket packet, NetOutput out) throws IOException {
+		Entry entry = byClass.get(packet.getClass());
+		
+		if(entry == null) {
+			out.writeVarInt(SERIALIZED_ID);
+			out.writeBytes(serialize(packet));
+		} else {
+			out.writeVarInt(entry.id);
+			out.writeLong(packet.getTimestamp());
+			entry.codec.encode(packet, out);
+		}
+	}
+	
+	/**
+	* Read a packet written by encode
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is bad or the codec unknown
+	* @param	in		Input to read from
+	* @return	The packet
+	*/
+	public static NetPacket decode(NetInput in) throws IOException {
+		return decode(in, null);
+	}
+	
+	/**
+	* Read a packet written with encodeStrings then encodeBody,
+	* taking up the whole of the input. A file sent on a connection
+	* is held back until it has arrived, see NetFileTable.
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is bad or the codec unknown
+	* @param	in		Input to read from
+	* @param	context	What the connection has received so far, or
+	*					null if the packet was sent without one
+	* @return	The packet, or null if it announces a file still
+	*			to arrive
+	*/
+	public static NetPacket decode(NetInput in, NetCodecContext context) throws IOException {
+		String modID;
+		String sender;
+		
+		if(context == null) {
+			modID	= in.readString();
+			sender	= in.readString();
+		} else {
+			modID	= context.getStrings().read(in);
+			sender	= context.getStrings().read(in);
+		}
+		
+		if(context == null) {
+			return decodeBody(in, modID, sender, null);
+		}
+		
+		NetPacket packet = decodeBody(in, modID, sender, context.getDeltas());
+		if(packet instanceof NetFilePacket) {
+			// The chunks that follow must find the file open
+			return context.getFiles().start((NetFilePacket) packet);
+		}
+		
+		return packet;
+	}
+	
+	/**
+	* Read the body of a packet
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is bad or the codec unknown
+	* @param	in		Input to read from
+	* @param	modID	Mod ID read ahead of the body
+	* @param	sender	Sender read ahead of the body
+	* @param	deltas	Baselines of delta packets, or null if the
+	*					packet was sent without them
+	* @return	The packet
+	*/
+	static NetPacket decodeBody(NetInput in, String modID, String sender, NetDeltaTable deltas) throws IOException {
+		int id = in.readVarInt();
+		
+		// Serialized packets carry their own fields
+		if(id == SERIALIZED_ID) {
+			return deserialize(in.readBytes());
+		} else if(id == COMPRESSED_ID) {
+			return NetCompression.decode(in, modID, sender);
+		} else if(id == DELTA_ID) {
+			return decodeDelta(in, modID, sender, deltas);
+		}
+		
+		Entry entry		= getEntry(id);
+		byte[] baseline	= null;
+		
+		if((deltas != null) && NetDeltaPacket.class.isAssignableFrom(entry.type)) {
+			// The codec data runs to the end of the frame
+			baseline = new byte[in.remaining()];
+			in.getBuffer().duplicate().get(baseline);
+		}
+		
+		long timestamp		= in.readLong();
+		NetPacket packet	= entry.codec.decode(in);
+		packet.setHeader(modID, sender, timestamp);
+		
+		if(baseline != null) {
+			deltas.received(id, ((NetDeltaPacket) packet).getKey(), baseline);
+		}
+		
+		return packet;
+	}
+	
+	/**
+	* Read a delta packet sent as changes to its baseline
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is bad or there is no baseline
+	* @param	in		Input to read from
+	* @param	modID	Mod ID read ahead of the body
+	* @param	sender	Sender read ahead of the body
+	* @param	deltas	Baselines of delta packets
+	* @return	The packet
+	*/
+	private static NetPacket decodeDelta(NetInput in, String modID, String sender, NetDeltaTable deltas)
+			throws IOException {
+		if(deltas == null) {
+			throw new IOException("Delta packet sent without a connection");
+		}
+		
+		int id		= in.readVarInt();
+		Entry entry	= getEntry(id);
+		int key		= in.readVarInt();
+		
+		NetInput data		= new NetInput(ByteBuffer.wrap(deltas.apply(id, key, in)));
+		long timestamp		= data.readLong();
+		NetPacket packet	= entry.codec.decode(data);
+		packet.setHeader(modID, sender, timestamp);
+		
+		return packet;
+	}
+	
+	/**
+	* Get the codec registered with an ID
+	*
+	* @since	0.2
+	* @throws	IOException	If there is no such codec
+	* @param	id		Codec ID
+	* @return	The codec entry
+	*/
+	private static Entry getEntry(int id) throws IOException {
+		Entry[] table = byID;
+		
+		if((id < 0) || (id >= table.length) || (table[id] == null)) {
+			throw new IOException("No codec with ID " + id);
+		}
+		
+		return table[id];
+	}
+	
+	//===================
+	// Recycling
+	//===================
+	
+	/**
+	* Called when a received packet is about to be given to its
+	* handlers. Packets from a recycling codec are reused once
+	* every handler has finished with them.
+	*
+	* @since	0.2
+	* @param	packet		Received packet
+	* @param	handlers	Number of handlers it will be given to
+	*/
+	public static void dispatched(NetPacket packet, int handlers) {
+		if(packet.recycler == null) {
+			return;
+		} else if(handlers == 0) {
+			recycle(packet);
+		} else {
+			packet.setPendingHandlers(handlers);
+		}
+	}
+	
+	/**
+	* Called when a handler has finished with a packet, or the
+	* packet was dropped before the handler ran. Every dispatched
+	* handler must be counted once.
+	*
+	* @since	0.2
+	* @param	packet		Handled packet
+	*/
+	public static void handled(NetPacket packet) {
+		if((packet.recycler != null) && packet.handlerFinished()) {
+			recycle(packet);
+		}
+	}
+	
+	/**
+	* Give a packet back to its codec
+	*
+	* @since	0.2
+	* @param	packet	Packet every handler has finished with
+	*/
+	@SuppressWarnings("unchecked")
+	private static void recycle(NetPacket packet) {
+		NetRecyclingCodec codec = packet.recycler;
+		packet.recycler = null;
+		codec.recycle(packet);
+	}
+	
+	/**
+	* Serialize a packet that has no codec
+	*
+	* @since	0.2
+	* @throws	IOException	If the packet is not serializable
+	* @param	packet	Packet to serialize
+	* @return	Serialized packet
+	*/
+	private static byte[] serialize(NetPacket packet) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(packet);
+		oos.close();
+		
+		return bytes.toByteArray();
+	}
+	
+	/**
+	* Deserialize a packet that has no codec
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is not a packet
+	* @param	data	Serialized packet
+	* @return	The packet
+	*/
+	private static NetPacket deserialize(byte[] data) throws IOException {
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+		
+		try {
+			Object in = ois.readObject();
+			
+			if(in instanceof NetPacket) {
+				return (NetPacket) in;
+			} else {
+				throw new IOException("Data did not contain a packet");
+			}
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Could not find class: " + e.getMessage());
+		}
+	}
+	
+	/**
+	* A registered codec
+	* No encapsulation since it's just a convenience class
+	*
+	* @author	Clinton Alexander
+	* @version	0.2
+	* @since	0.2
+	*/
+	private static class Entry {
+		public final int		id;
+		public final Class		type;
+		public final NetCodec	codec;
+		
+		public Entry(int id, Class type, NetCodec codec) {
+			this.id		= id;
+			this.type	= type;
+			this.codec	= codec;
+		}
+	}
+	
+	//===================
+	// Built in codecs
+	//===================
+	
+	/**
+	* Codec for string packets
+	*
+	* @since	0.2
+	*/
+	private static class StringCodec implements NetCodec<StringPacket> {
+		public void encode(StringPacket packet, NetOutput out) {
+			out.writeString(packet.getData());
+		}
+		
+		public StringPacket decode(NetInput in) throws IOException {
+			return new StringPacket(in.readString());
+		}
+	}
+	
+	/**
+	* Codec for username packets
+	*
+	* @since	0.2
+	*/
+	private static class UsernameCodec implements NetCodec<UsernamePacket> {
+		public void encode(UsernamePacket packet, NetOutput out) {
+			out.writeString(packet.username);
+		}
+		
+		public UsernamePacket decode(NetInput in) throws IOException {
+			return new UsernamePacket(in.readString());
+		}
+	}
+	
+	/**
+	* Codec for P2P packets, with the payload nested inside
+	*
+	* @since	0.2
+	*/
+	private static class P2PCodec implements NetCodec<NetP2PPacket> {
+		public void encode(NetP2PPacket packet, NetOutput out) throws IOException {
+			String[] recipients = packet.getRecipients();
+			
+			out.writeVarInt(recipients.length);
+			for(String recipient : recipients) {
+				out.writeString(recipient);
+			}
+			out.writePacket(packet.getPayload());
+		}
+		
+		public NetP2PPacket decode(NetInput in) throws IOException {
+			int count = in.readVarInt();
+			if((count < 0) || (count > in.remaining())) {
+				throw new IOException("Bad recipient count " + count);
+			}
+			
+			String[] recipients = new String[count];
+			for(int x = 0; x < count; x++) {
+				recipients[x] = in.readString();
+			}
+			
+			return new NetP2PPacket(recipients, in.readPacket());
+		}
+	}
+	
+	/**
+	* Codec for file packets, without the file itself
+	*
+	* @since	0.2
+	*/
+	private static class FileCodec implements NetCodec<NetFilePacket> {
+		public void encode(NetFilePacket packet, NetOutput out) {
+			out.writeVarInt(packet.getID());
+			out.writeString(packet.getName());
+			out.writeVarLong(packet.getLength());
+		}
+		
+		public NetFilePacket decode(NetInput in) throws IOException {
+			return new NetFilePacket(in.readVarInt(), in.readString(), in.readVarLong(), null);
+		}
+	}
+	
+	/**
+	* Codec for the offer of datagrams
+	*
+	* @since	0.2
+	*/
+	private static class DatagramCodec implements NetCodec<NetDatagramPacket> {
+		public void encode(NetDatagramPacket packet, NetOutput out) {
+			out.writeLong(packet.getToken());
+		}
+		
+		public NetDatagramPacket decode(NetInput in) throws IOException {
+			return new NetDatagramPacket(in.readLong());
+		}
+	}
+	
+	/**
+	* Codec for the mods a client handles packets of. The count is
+	* sent plus one, so that zero can stand for every mod.
+	*
+	* @since	0.2
+	*/
+	private static class SubscribeCodec implements NetCodec<NetSubscribePacket> {
+		public void encode(NetSubscribePacket packet, NetOutput out) throws IOException {
+			String[] modIDs = packet.getModIDs();
+			if(modIDs == null) {
+				out.writeVarInt(0);
+				return;
+			}
+			
+			out.writeVarInt(modIDs.length + 1);
+			for(String modID : modIDs) {
+				out.writeString(modID);
+			}
+		}
+		
+		public NetSubscribePacket decode(NetInput in) throws IOException {
+			int count = in.readVarInt() - 1;
+			if(count == -1) {
+				return new NetSubscribePacket(null);
+			} else if((count < 0) || (count > in.remaining())) {
+				throw new IOException("Bad mod ID count " + count);
+			}
+			
+			String[] modIDs = new String[count];
+			for(int x = 0; x < count; x++) {
+				modIDs[x] = in.readString();
+			}
+			
+			return new NetSubscribePacket(modIDs);
+		}
+	}
+	
+	/**
+	* Codec for requests, with the request nested inside
+	*
+	* @since	0.2
+	*/
+	private static class RequestCodec implements NetCodec<NetRequestPacket> {
+		public void encode(NetRequestPacket packet, NetOutput out) throws IOException {
+			out.writeVarInt(packet.getID());
+			out.writePacket(packet.getPayload());
+		}
+		
+		public NetRequestPacket decode(NetInput in) throws IOException {
+			return new NetRequestPacket(in.readVarInt(), in.readPacket());
+		}
+	}
+	
+	/**
+	* Codec for answers, with the answer nested inside or the
+	* reason the request failed
+	*
+	* @since	0.2
+	*/
+	private static class ResponseCodec implements NetCodec<NetResponsePacket> {
+		public void encode(NetResponsePacket packet, NetOutput out) throws IOException {
+			out.writeVarInt(packet.getID());
+			out.writeBoolean(packet.getPayload() != null);
+			
+			if(packet.getPayload() != null) {
+				out.writePacket(packet.getPayload());
+			} else {
+				out.writeString(packet.getError());
+			}
+		}
+		
+		public NetResponsePacket decode(NetInput in) throws IOException {
+			int id = in.readVarInt();
+			
+			if(in.readBoolean()) {
+				return new NetResponsePacket(id, in.readPacket());
+			}
+			
+			return new NetResponsePacket(id, in.readString());
+		}
+	}
+}
\ No newline at end of file
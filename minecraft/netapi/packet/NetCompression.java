@@ -0,0 +1,314 @@
+package netapi.packet;
+
+import netapi.NetConfig;
+import netapi.NetProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+* Compression of packet bodies. A packet body encoding to at least
+* the compression threshold is deflated, and sent in place of the
+* original if smaller. The share each packet type shrinks to is
+* tracked, and types that do not shrink are only tried now and
+* again rather than paying to deflate every one of them.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetCompression {
+	/**
+	* Compressed size, as a share of the original, above which a
+	* packet type is no longer worth compressing
+	*
+	* @since	0.2
+	*/
+	private static final float MAX_RATIO		= 0.9f;
+	/**
+	* Packets of a type sent uncompressed between tries once the
+	* type is not worth compressing
+	*
+	* @since	0.2
+	*/
+	private static final int RETRY_INTERVAL		= 256;
+	/**
+	* Largest buffer kept for reuse between packets
+	*
+	* @since	0.2
+	*/
+	private static final int MAX_KEPT_BUFFER	= 0x10000;
+	/**
+	* Deflater reused by each thread
+	*
+	* @since	0.2
+	*/
+	private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.BEST_SPEED);
+		}
+	};
+	/**
+	* Inflater reused by each thread
+	*
+	* @since	0.2
+	*/
+	private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+	/**
+	* Buffer each thread deflates into
+	*
+	* @since	0.2
+	*/
+	private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>();
+	/**
+	* How well each packet type has compressed
+	*
+	* @since	0.2
+	*/
+	private static ConcurrentHashMap<Class, TypeStats> stats = new ConcurrentHashMap<Class, TypeStats>();
+	
+	//===================
+	// Encoding
+	//===================
+	
+	/**
+	* Write the body of a packet, compressed if it is large enough
+	* and its type is worth compressing
+	*
+	* @since	0.2
+	* @throws	IOException	If the packet cannot be written
+	* @param	packet	Packet to write
+	* @param	out		Output to write to
+	*/
+	public static void encode(NetPacket packet, NetOutput out) throws IOException {
+		int start = out.size();
+		NetCodecRegistry.encodeBody(packet, out);
+		
+		int length		= out.size() - start;
+		int threshold	= NetConfig.getCompressThreshold();
+		if((threshold <= 0) || (length < threshold)) {
+			return;
+		} else if(packet instanceof NetDeltaPacket) {
+			// Kept whole so the changes can be found, see NetDeltaTable
+			return;
+		}
+		
+		TypeStats type = getStats(packet.getClass());
+		if(!type.shouldTry()) {
+			return;
+		}
+		
+		byte[] packed = buffers.get();
+		if((packed == null) || (packed.length < length)) {
+			packed = new byte[length];
+		}
+		
+		int packedLength = deflate(out.getBuffer().array(), start, length, packed);
+		type.record(length, packedLength);
+		
+		// Room for the codec ID and original length
+		if((packedLength + 6) < length) {
+			out.getBuffer().position(start);
+			out.writeVarInt(NetCodecRegistry.COMPRESSED_ID);
+			out.writeVarInt(length);
+			out.writeRaw(packed, 0, packedLength);
+		}
+		
+		// Don't hold on to the memory of one huge packet
+		buffers.set((packed.length > MAX_KEPT_BUFFER) ? null : packed);
+	}
+	
+	/**
+	* Deflate data into a buffer no larger than the data
+	*
+	* @since	0.2
+	* @param	data	Array holding the data
+	* @param	offset	Start of the data
+	* @param	length	Length of the data
+	* @param	packed	Buffer to deflate into, at least length long
+	* @return	Length of the deflated data, or length if it did not shrink
+	*/
+	private static int deflate(byte[] data, int offset, int length, byte[] packed) {
+		Deflater deflater = deflaters.get();
+		deflater.reset();
+		deflater.setInput(data, offset, length);
+		deflater.finish();
+		
+		int packedLength = 0;
+		while(!deflater.finished() && (packedLength < length)) {
+			packedLength += deflater.deflate(packed, packedLength, length - packedLength);
+		}
+		
+		return deflater.finished() ? packedLength : length;
+	}
+	
+	//===================
+	// Decoding
+	//===================
+	
+	/**
+	* Read a compressed packet body, after its codec ID. The
+	* compressed data runs to the end of the input.
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is bad
+	* @param	in		Input to read from
+	* @param	modID	Mod ID read ahead of the body
+	* @param	sender	Sender read ahead of the body
+	* @return	The packet
+	*/
+	static NetPacket decode(NetInput in, String modID, String sender) throws IOException {
+		int length = in.readVarInt();
+		if((length <= 0) || (length > NetProtocol.MAX_FRAME_LENGTH)) {
+			throw new IOException("Bad compressed length " + length);
+		}
+		
+		ByteBuffer buffer	= in.getBuffer();
+		Inflater inflater	= inflaters.get();
+		inflater.reset();
+		
+		if(buffer.hasArray()) {
+			inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		} else {
+			byte[] packed = new byte[buffer.remaining()];
+			buffer.duplicate().get(packed);
+			inflater.setInput(packed);
+		}
+		buffer.position(buffer.limit());
+		
+		byte[] data = new byte[length];
+		try {
+			int read = 0;
+			int inflated;
+			while((read < length) && ((inflated = inflater.inflate(data, read, length - read)) > 0)) {
+				read += inflated;
+			}
+			
+			if(read != length) {
+				throw new IOException("Compressed data does not match its length");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Bad compressed data: " + e.getMessage());
+		}
+		
+		// Packets are only compressed once
+		if(data[0] == NetCodecRegistry.COMPRESSED_ID) {
+			throw new IOException("Compressed packet inside a compressed packet");
+		}
+		
+		return NetCodecRegistry.decodeBody(new NetInput(ByteBuffer.wrap(data)), modID, sender, null);
+	}
+	
+	//===================
+	// Statistics
+	//===================
+	
+	/**
+	* Get the share of their size packets of a type have
+	* compressed to lately
+	*
+	* @since	0.2
+	* @param	type	Packet class
+	* @return	Compressed size over original size, or 1 if never compressed
+	*/
+	public static float getRatio(Class type) {
+		TypeStats entry = stats.get(type);
+		
+		return (entry == null) ? 1 : entry.getRatio();
+	}
+	
+	/**
+	* Get the statistics of a packet type, creating them if needed
+	*
+	* @since	0.2
+	* @param	type	Packet class
+	* @return	Statistics of the type
+	*/
+	private static TypeStats getStats(Class type) {
+		TypeStats entry = stats.get(type);
+		
+		if(entry == null) {
+			TypeStats created = new TypeStats();
+			entry = stats.putIfAbsent(type, created);
+			if(entry == null) {
+				entry = created;
+			}
+		}
+		
+		return entry;
+	}
+	
+	/**
+	* How well one packet type has compressed
+	*
+	* @author	Clinton Alexander
+	* @since	0.2
+	*/
+	private static class TypeStats {
+		/**
+		* Moving average of compressed size over original size
+		*
+		* @since	0.2
+		*/
+		private float	ratio	= 1;
+		/**
+		* Number of packets tried so far
+		*
+		* @since	0.2
+		*/
+		private int		tried;
+		/**
+		* Packets sent uncompressed since the last try
+		*
+		* @since	0.2
+		*/
+		private int		skipped;
+		
+		/**
+		* Decide whether to try compressing the next packet
+		*
+		* @since	0.2
+		* @return	True to try
+		*/
+		public synchronized boolean shouldTry() {
+			if((tried == 0) || (ratio <= MAX_RATIO) || (++skipped >= RETRY_INTERVAL)) {
+				skipped = 0;
+				return true;
+			}
+			
+			return false;
+		}
+		
+		/**
+		* Record how well a packet compressed
+		*
+		* @since	0.2
+		* @param	length			Original length
+		* @param	packedLength	Compressed length
+		*/
+		public synchronized void record(int length, int packedLength) {
+			float sample = (float) packedLength / length;
+			
+			// The first packet stands alone, then later ones count for an eighth
+			ratio = (tried++ == 0) ? sample : (ratio + ((sample - ratio) / 8));
+		}
+		
+		/**
+		* Get the moving average ratio
+		*
+		* @since	0.2
+		* @return	Compressed size over original size
+		*/
+		public synchronized float getRatio() {
+			return ratio;
+		}
+	}
+}
\ No newline at end of file
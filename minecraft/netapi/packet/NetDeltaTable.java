@@ -0,0 +1,234 @@
+package netapi.packet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+* The last state sent of each delta packet in one direction of
+* one connection, see NetDeltaPacket. A packet with a baseline is
+* sent as the runs of bytes that differ from it, and otherwise in
+* full. Either way it becomes the new baseline at both ends.
+*
+* Both ends drop the least recently used baseline once full. They
+* see the same keys in the same order, so always drop the same
+* one, and a packet whose baseline was dropped is sent in full.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetDeltaTable {
+	/**
+	* Most baselines held by a table
+	*
+	* @since	0.2
+	*/
+	public static final int MAX_BASELINES	= 1024;
+	/**
+	* Fewest unchanged bytes that end a run. Shorter gaps are
+	* cheaper to send than to start a new run.
+	*
+	* @since	0.2
+	*/
+	private static final int MIN_GAP		= 3;
+	/**
+	* Timestamp and codec data of the last packet of each type
+	* and key, least recently used first
+	*
+	* @since	0.2
+	*/
+	private LinkedHashMap<Long, byte[]> baselines = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+			return (size() > MAX_BASELINES);
+		}
+	};
+	
+	//===================
+	// Encoding
+	//===================
+	
+	/**
+	* Encode the body of a delta packet against its baseline
+	*
+	* @since	0.2
+	* @throws	IOException	If the body is bad
+	* @param	body	Full body written by NetCodecRegistry, flipped
+	* @param	key		Key of the packet
+	* @return	The body to send, either the one given or the changes
+	*			to the baseline, whichever is smaller
+	*/
+	public ByteBuffer encode(ByteBuffer body, int key) throws IOException {
+		NetInput in	= new NetInput(body.duplicate());
+		int id		= in.readVarInt();
+		
+		// Only packets with a codec have a body to compare
+		if((id == NetCodecRegistry.SERIALIZED_ID) || (id == NetCodecRegistry.COMPRESSED_ID)) {
+			return body;
+		}
+		
+		// The timestamp is compared along with the codec data
+		byte[] data = new byte[in.remaining()];
+		in.getBuffer().get(data);
+		
+		Long slot		= slot(id, key);
+		byte[] baseline	= baselines.get(slot);
+		baselines.put(slot, data);
+		
+		if(baseline == null) {
+			return body;
+		}
+		
+		NetOutput out = new NetOutput(16 + (data.length / 2));
+		out.writeVarInt(NetCodecRegistry.DELTA_ID);
+		out.writeVarInt(id);
+		out.writeVarInt(key);
+		writeChanges(baseline, data, out);
+		
+		ByteBuffer delta = out.getBuffer();
+		delta.flip();
+		
+		return (delta.remaining() < body.remaining()) ? delta : body;
+	}
+	
+	/**
+	* Write the runs of bytes that differ from the baseline
+	*
+	* @since	0.2
+	* @param	baseline	Data last sent
+	* @param	data		Data to send
+	* @param	out			Output to write to
+	*/
+	private void writeChanges(byte[] baseline, byte[] data, NetOutput out) {
+		NetOutput runs	= new NetOutput(data.length);
+		int count		= 0;
+		int last		= 0;
+		int x			= 0;
+		
+		while(x < data.length) {
+			if(!changed(baseline, data, x)) {
+				x++;
+				continue;
+			}
+			
+			int start	= x;
+			int end		= x + 1;
+			for(x = end; x < data.length; x++) {
+				if(changed(baseline, data, x)) {
+					end = x + 1;
+				} else if((x - end + 1) >= MIN_GAP) {
+					break;
+				}
+			}
+			
+			runs.writeVarInt(start - last);
+			runs.writeVarInt(end - start);
+			runs.writeRaw(data, start, end - start);
+			
+			count++;
+			last	= end;
+			x		= end;
+		}
+		
+		out.writeVarInt(data.length);
+		out.writeVarInt(count);
+		out.writeRaw(runs.getBuffer().array(), 0, runs.size());
+	}
+	
+	/**
+	* Check whether a byte differs from the baseline
+	*
+	* @since	0.2
+	* @param	baseline	Data last sent
+	* @param	data		Data to send
+	* @param	index		Index of the byte
+	* @return	True if changed, or past the end of the baseline
+	*/
+	private boolean changed(byte[] baseline, byte[] data, int index) {
+		return (index >= baseline.length) || (baseline[index] != data[index]);
+	}
+	
+	//===================
+	// Decoding
+	//===================
+	
+	/**
+	* Apply changes read from the other end to a baseline
+	*
+	* @since	0.2
+	* @throws	IOException	If there is no baseline or the changes are bad
+	* @param	id		Codec ID of the packet
+	* @param	key		Key of the packet
+	* @param	in		Input to read the changes from
+	* @return	Timestamp and codec data of the packet, which is the
+	*			new baseline
+	*/
+	byte[] apply(int id, int key, NetInput in) throws IOException {
+		Long slot		= slot(id, key);
+		byte[] baseline	= baselines.get(slot);
+		
+		if(baseline == null) {
+			throw new IOException("No baseline for key " + key + " of codec " + id);
+		}
+		
+		int length = in.readVarInt();
+		if((length < 0) || (length > in.remaining() + baseline.length)) {
+			throw new IOException("Bad delta length " + length);
+		}
+		
+		byte[] data = new byte[length];
+		System.arraycopy(baseline, 0, data, 0, Math.min(length, baseline.length));
+		
+		int count		= in.readVarInt();
+		int position	= 0;
+		for(int x = 0; x < count; x++) {
+			position += in.readVarInt();
+			int run = in.readVarInt();
+			
+			if((position < 0) || (run < 0) || (run > (length - position)) || (run > in.remaining())) {
+				throw new IOException("Delta run out of range");
+			}
+			
+			in.getBuffer().get(data, position, run);
+			position += run;
+		}
+		
+		baselines.put(slot, data);
+		return data;
+	}
+	
+	/**
+	* Take a packet received in full as the new baseline
+	*
+	* @since	0.2
+	* @param	id		Codec ID of the packet
+	* @param	key		Key of the packet
+	* @param	data	Timestamp and codec data of the packet
+	*/
+	void received(int id, int key, byte[] data) {
+		baselines.put(slot(id, key), data);
+	}
+	
+	/**
+	* Get the slot of a packet type and key
+	*
+	* @since	0.2
+	* @param	id		Codec ID of the packet
+	* @param	key		Key of the packet
+	* @return	Slot in the baselines
+	*/
+	private static Long slot(int id, int key) {
+		return Long.valueOf(((long) id << 32) | (key & 0xFFFFFFFFL));
+	}
+	
+	/**
+	* Get the number of baselines held
+	*
+	* @since	0.2
+	* @return	Baselines held
+	*/
+	public int size() {
+		return baselines.size();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,255 @@
+package netapi.packet;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+* Reads the values written by a NetOutput back out of a buffer
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetInput {
+	/**
+	* The buffer being read from
+	*
+	* @since	0.2
+	*/
+	private ByteBuffer	buffer;
+	
+	/**
+	* Create an input reading the remaining bytes of a buffer
+	*
+	* @since	0.2
+	* @param	buffer	Buffer to read
+	*/
+	public NetInput(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+	
+	/**
+	* Get the underlying buffer
+	*
+	* @since	0.2
+	* @return	The buffer
+	*/
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+	
+	/**
+	* Get the number of bytes left to read
+	*
+	* @since	0.2
+	* @return	Bytes left
+	*/
+	public int remaining() {
+		return buffer.remaining();
+	}
+	
+	/**
+	* Make sure there are enough bytes left to read
+	*
+	* @since	0.2
+	* @throws	EOFException	If the buffer is too short
+	* @param	bytes	Bytes about to be read
+	*/
+	private void need(int bytes) throws EOFException {
+		if((bytes < 0) || (buffer.remaining() < bytes)) {
+			throw new EOFException("Packet data too short");
+		}
+	}
+	
+	//===============
+	// Readers
+	//===============
+	
+	/**
+	* Read a single byte
+	*
+	* @since	0.2
+	* @throws	IOException	If there is no data left
+	* @return	The byte
+	*/
+	public byte readByte() throws IOException {
+		need(1);
+		return buffer.get();
+	}
+	
+	/**
+	* Read a boolean
+	*
+	* @since	0.2
+	* @throws	IOException	If there is no data left
+	* @return	The boolean
+	*/
+	public boolean readBoolean() throws IOException {
+		return (readByte() != 0);
+	}
+	
+	/**
+	* Read a two byte short
+	*
+	* @since	0.2
+	* @throws	IOException	If there is no data left
+	* @return	The short
+	*/
+	public short readShort() throws IOException {
+		need(2);
+		return buffer.getShort();
+	}
+	
+	/**
+	* Read a four byte int
+	*
+	* @since	0.2
+	* @throws	IOException	If there is no data left
+	* @return	The int
+	*/
+	public int readInt() throws IOException {
+		need(4);
+		return buffer.getInt();
+	}
+	
+	/**
+	* Read an eight byte long
+	*
+	* @since	0.2
+	* @throws	IOException	If there is no data left
+	* @return	The long
+	*/
+	public long readLong() throws IOException {
+		need(8);
+		return buffer.getLong();
+	}
+	
+	/**
+	* Read a float
+	*
+	* @since	0.2
+	* @throws	IOException	If there is no data left
+	* @return	The float
+	*/
+	public float readFloat() throws IOException {
+		need(4);
+		return buffer.getFloat();
+	}
+	
+	/**
+	* Read a double
+	*
+	* @since	0.2
+	* @throws	IOException	If there is no data left
+	* @return	The double
+	*/
+	public double readDouble() throws IOException {
+		need(8);
+		return buffer.getDouble();
+	}
+	
+	/**
+	* Read an int written by writeVarInt
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is bad
+	* @return	The int
+	*/
+	public int readVarInt() throws IOException {
+		int value = 0;
+		
+		for(int shift = 0; shift < 35; shift += 7) {
+			byte b = readByte();
+			value |= (b & 0x7F) << shift;
+			
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		
+		throw new IOException("VarInt too long");
+	}
+	
+	/**
+	* Read a long written by writeVarLong
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is bad
+	* @return	The long
+	*/
+	public long readVarLong() throws IOException {
+		long value = 0;
+		
+		for(int shift = 0; shift < 70; shift += 7) {
+			byte b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		
+		throw new IOException("VarLong too long");
+	}
+	
+	/**
+	* Read an array of bytes written with its length
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is bad
+	* @return	The bytes
+	*/
+	public byte[] readBytes() throws IOException {
+		int length = readVarInt();
+		need(length);
+		
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+	
+	/**
+	* Read a string written by writeString
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is bad
+	* @return	The string
+	*/
+	public String readString() throws IOException {
+		int length = readVarInt();
+		need(length);
+		
+		if(length == 0) {
+			return "";
+		}
+		
+		try {
+			String value;
+			if(buffer.hasArray()) {
+				value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, "UTF-8");
+				buffer.position(buffer.position() + length);
+			} else {
+				byte[] bytes = new byte[length];
+				buffer.get(bytes);
+				value = new String(bytes, "UTF-8");
+			}
+			return value;
+		} catch (UnsupportedEncodingException e) {
+			// Every JVM has UTF-8
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	* Read a whole packet nested inside another
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is bad
+	* @return	The packet
+	*/
+	public NetPacket readPacket() throws IOException {
+		return NetCodecRegistry.decode(this);
+	}
+}
\ No newline at end of file
@@ -1,7 +1,10 @@
 package netapi.packet;
 
+import netapi.NetPriority;
+
 import java.io.Serializable;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
 * A single net packet for sending data to the MC server
@@ -31,6 +34,26 @@ public abstract class NetPacket implements Serializable {
 	* @since	0.1
 	*/
 	private String		sender		= "";
+	/**
+	* Codec to give this packet back to once handled, null
+	* unless it was decoded by a recycling codec
+	*
+	* @since	0.2
+	*/
+	transient NetRecyclingCodec	recycler;
+	/**
+	* Number of handlers yet to finish with this packet
+	*
+	* @since	0.2
+	*/
+	private transient volatile int	pendingHandlers;
+	/**
+	* Updater for the pending handler count
+	*
+	* @since	0.2
+	*/
+	private static final AtomicIntegerFieldUpdater<NetPacket> PENDING
+		= AtomicIntegerFieldUpdater.newUpdater(NetPacket.class, "pendingHandlers");
 	
 	/**
 	* Create a standard packet
@@ -74,6 +97,42 @@ public abstract class NetPacket implements Serializable {
 		this.sender = sender;
 	}
 	
+	/**
+	* Restore the fields common to all packets once a
+	* packet has been decoded
+	*
+	* @since	0.2
+	* @param	id			Mod ID
+	* @param	sender		Sender of this packet
+	* @param	timestamp	Timestamp this packet was created
+	*/
+	void setHeader(String id, String sender, long timestamp) {
+		// hasModID compares against the literal
+		this.modID		= (id.length() == 0) ? "" : id;
+		this.sender		= sender;
+		this.timestamp	= timestamp;
+	}
+	
+	/**
+	* Set the number of handlers the packet is being given to
+	*
+	* @since	0.2
+	* @param	handlers	Number of handlers
+	*/
+	void setPendingHandlers(int handlers) {
+		PENDING.set(this, handlers);
+	}
+	
+	/**
+	* Count one handler as finished with this packet
+	*
+	* @since	0.2
+	* @return	True if it was the last handler
+	*/
+	boolean handlerFinished() {
+		return (PENDING.decrementAndGet(this) == 0);
+	}
+	
 	/**
 	* Get the sender
 	*
@@ -93,6 +152,35 @@ public abstract class NetPacket implements Serializable {
 		return modID;
 	}	
 	
+	/**
+	* Get the priority packets of this type are sent with,
+	* unless sent with one of their own. Packet types that are
+	* large or can wait should return BULK, and small ones where
+	* latency matters URGENT.
+	*
+	* @since	0.2
+	* @return	Priority of this packet
+	*/
+	public NetPriority getPriority() {
+		return NetPriority.NORMAL;
+	}
+	
+	/**
+	* Check whether packets of this type must arrive. Packet types
+	* only worth having at once, such as positions sent many times a
+	* second, can return false to be sent as datagrams when the
+	* server offers them, so a lost one holds up nothing sent after
+	* it. They may then be lost or arrive out of order. They are
+	* sent on the connection as usual when too long for a datagram
+	* or when datagrams cannot get through.
+	*
+	* @since	0.2
+	* @return	True unless packets of this type may be lost
+	*/
+	public boolean isReliable() {
+		return true;
+	}
+	
 	/**
 	* Check whether this mod has an ID attached
 	*
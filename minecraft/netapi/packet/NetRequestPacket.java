@@ -0,0 +1,70 @@
+package netapi.packet;
+
+import netapi.NetPriority;
+
+/**
+* A packet sent as a request, with the ID its answer will carry,
+* see NetRequestTable. The other end hands the packet inside to
+* its responder rather than its handlers.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetRequestPacket extends NetPacket {
+	/**
+	* ID the answer carries
+	*
+	* @since	0.2
+	*/
+	private int			id;
+	/**
+	* The request itself
+	*
+	* @since	0.2
+	*/
+	private NetPacket	payload;
+	
+	/**
+	* Create a request
+	*
+	* @since	0.2
+	* @param	id		ID the answer carries
+	* @param	packet	The request itself
+	*/
+	public NetRequestPacket(int id, NetPacket packet) {
+		super(packet.getModID());
+		this.id			= id;
+		this.payload	= packet;
+	}
+	
+	/**
+	* Get the ID the answer carries
+	*
+	* @since	0.2
+	* @return	Request ID
+	*/
+	public int getID() {
+		return id;
+	}
+	
+	/**
+	* Get the request itself
+	*
+	* @since	0.2
+	* @return	Packet to hand to the responder
+	*/
+	public NetPacket getPayload() {
+		return payload;
+	}
+	
+	/**
+	* A request goes with the priority of the packet inside
+	*
+	* @since	0.2
+	* @return	Priority of the payload
+	*/
+	public NetPriority getPriority() {
+		return payload.getPriority();
+	}
+}
\ No newline at end of file
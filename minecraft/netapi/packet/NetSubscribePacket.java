@@ -0,0 +1,43 @@
+package netapi.packet;
+
+/**
+* Tells the server which mods the client handles packets of, so
+* that packets of other mods sent to everyone are not sent to it.
+* Each one replaces the mod IDs sent before. Packets without a mod
+* ID always go to every client, as do all packets until the client
+* has sent one of these, or once it sends one without a list as it
+* handles packets whose mod it cannot know.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetSubscribePacket extends NetPacket {
+	/**
+	* IDs of the mods handled, null for every mod
+	*
+	* @since	0.2
+	*/
+	private String[]	modIDs;
+	
+	/**
+	* Create a list of the mods handled
+	*
+	* @since	0.2
+	* @param	modIDs	IDs of the mods handled, null for every mod
+	*/
+	public NetSubscribePacket(String[] modIDs) {
+		super();
+		this.modIDs = modIDs;
+	}
+	
+	/**
+	* Get the IDs of the mods handled
+	*
+	* @since	0.2
+	* @return	Mod IDs, null for every mod
+	*/
+	public String[] getModIDs() {
+		return modIDs;
+	}
+}
\ No newline at end of file
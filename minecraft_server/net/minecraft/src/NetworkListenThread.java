@@ -6,7 +6,9 @@ package net.minecraft.src;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -17,6 +19,7 @@ import net.minecraft.server.MinecraftServer;
 //=========
 import netapi.NetAPI;
 import netapi.server.NetListenThread;
+import netapi.server.VanillaSession;
 //=========
 // -NetAPI
 //=========
@@ -52,7 +55,9 @@ public class NetworkListenThread
 		//=========
 		logger.fine("(NetAPI) Creating server socket");
 		NetAPI.setServer(minecraftserver);
-		netListenSocket = new ServerSocket(i - 1, 0, inetaddress);
+		// Opened from a channel so NetAPI can use non-blocking sockets
+		netListenSocket = ServerSocketChannel.open().socket();
+		netListenSocket.bind(new InetSocketAddress(inetaddress, i - 1));
 		netListenThread	= new NetListenThread(netListenSocket);
 		logger.fine("(NetAPI) Starting NetAPI listening thread");
 		netListenThread.start();
@@ -64,6 +69,15 @@ public class NetworkListenThread
     public void addPlayer(NetServerHandler netserverhandler)
     {
         playerList.add(netserverhandler);
+		//=========
+		// +NetAPI
+		//=========
+		// Report the player leaving even if their NetAPI handshake never arrives
+		netserverhandler.netManager.setUsername(netserverhandler.playerEntity.username);
+		NetAPI.playerLoggedIn(new VanillaSession(netserverhandler.playerEntity));
+		//=========
+		// -NetAPI
+		//=========
     }
 
     private void addPendingConnection(NetLoginHandler netloginhandler)
@@ -118,6 +132,13 @@ public class NetworkListenThread
             netserverhandler.netManager.func_28138_a();
         }
 
+		//=========
+		// +NetAPI
+		//=========
+		NetAPI.onTick();
+		//=========
+		// -NetAPI
+		//=========
     }
 
     static ServerSocket func_713_a(NetworkListenThread networklistenthread)
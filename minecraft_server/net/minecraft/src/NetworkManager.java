@@ -9,6 +9,8 @@ package net.minecraft.src;
 //=========
 import netapi.NetPacketThread;
 import netapi.NetAPI;
+import netapi.NetTunnel;
+import netapi.server.NetTunnelConnection;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.BufferedInputStream;
@@ -27,11 +29,24 @@ import java.util.*;
 //            NetworkMasterThread, ThreadMonitorConnection
 
 public class NetworkManager
+	//=========
+	// +NetAPI
+	//=========
+	implements NetTunnel
+	//=========
+	// -NetAPI
+	//=========
 {
 	//=========
 	// +NetAPI
 	//=========
 	private String			username 	= "NONAME";
+	private volatile NetTunnelConnection	netTunnel;
+	
+	static {
+		// NetAPI frames ride the game connection as a packet of their own
+		Packet.addIdClassMapping(Packet220NetAPI.ID, true, true, Packet220NetAPI.class);
+	}
 	//=========
 	// -NetAPI
 	//=========
@@ -83,6 +98,55 @@ public class NetworkManager
 	public void setUsername(String username) {
 		this.username = username;
 	}
+	
+	/**
+	* Queue a NetAPI frame to be written among the game's packets
+	*
+	* @since	0.2
+	* @param	data	Array holding the frame data
+	* @param	offset	Start of the frame data
+	* @param	length	Length of the frame data
+	*/
+	public void sendFrame(byte[] data, int offset, int length) {
+		addToSendQueue(new Packet220NetAPI(data, offset, length));
+	}
+	
+	/**
+	* Get the number of bytes queued but not yet written
+	*
+	* @since	0.2
+	* @return	Bytes queued
+	*/
+	public int getQueuedBytes() {
+		return sendQueueByteLength;
+	}
+	
+	/**
+	* Hand a NetAPI frame to NetAPI, opening the player's tunnel
+	* on their first frame. Frames sent before the player has
+	* logged in are ignored, and a bad frame closes the tunnel
+	* without touching the game.
+	*
+	* @since	0.2
+	* @param	packet	Packet carrying the frame
+	*/
+	private void receiveFrame(Packet220NetAPI packet) {
+		if(netTunnel == null) {
+			if(!(netHandler instanceof NetServerHandler)) {
+				NetAPI.log.info("(NetAPI) Ignoring NetAPI frame sent before login");
+				return;
+			}
+			
+			netTunnel = NetAPI.openTunnel(this, ((NetServerHandler) netHandler).playerEntity.username);
+		}
+		
+		try {
+			netTunnel.receiveFrame(packet.data, packet.offset, packet.length);
+		} catch (IOException e) {
+			NetAPI.log.info("(NetAPI) Bad frame from " + netTunnel.getSenderName() + ", closing tunnel; " + e.getMessage());
+			netTunnel.close();
+		}
+	}
 	//=========
 	// -NetAPI
 	//=========
@@ -113,6 +177,18 @@ public class NetworkManager
 
     private boolean sendPacket()
     {
+		//=========
+		// +NetAPI
+		//=========
+		// Top the queue up with NetAPI frames waiting their turn
+		NetTunnelConnection tunnel = netTunnel;
+		if(tunnel != null)
+		{
+			tunnel.pump();
+		}
+		//=========
+		// -NetAPI
+		//=========
         boolean flag = false;
         try
         {
@@ -168,6 +244,17 @@ public class NetworkManager
             if(packet != null)
             {
                 field_28141_d[packet.getPacketId()] += packet.getPacketSize() + 1;
+				//=========
+				// +NetAPI
+				//=========
+				if(packet instanceof Packet220NetAPI)
+				{
+					receiveFrame((Packet220NetAPI) packet);
+					return true;
+				}
+				//=========
+				// -NetAPI
+				//=========
                 readPackets.add(packet);
                 flag = true;
             } else
@@ -4,15 +4,23 @@ import netapi.packet.NetPacket;
 import netapi.packet.NetP2PPacket;
 
 import netapi.server.NetAssignThread;
+import netapi.server.NetConnection;
+import netapi.server.NetInterestGrid;
+import netapi.server.NetPlayerConnection;
+import netapi.server.NetTunnelConnection;
+import netapi.server.VanillaPlayerDirectory;
+
+import netapi.dispatch.PooledDispatcher;
 
-import java.net.Socket;
-import java.io.ObjectOutputStream;
-import java.io.ObjectInputStream;
 import java.io.IOException;
+import java.nio.channels.SocketChannel;
 import java.util.Hashtable;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import net.minecraft.src.EntityPlayer;
@@ -29,18 +37,38 @@ import net.minecraft.server.MinecraftServer;
 */
 public class NetAPI {
 	/**	
-	* The packet handler mappings
+	* The packet handler mappings. The map and its arrays are
+	* never changed once published, they are replaced with
+	* changed copies, so they can be read without locking.
 	*
 	* @since	0.1
 	*/
-	private static Hashtable<Class, HashSet<NetPacketHandler>> handlers 
-		= new Hashtable<Class, HashSet<NetPacketHandler>>();
+	private static volatile Map<Class, NetPacketHandler[]> handlers 
+		= new HashMap<Class, NetPacketHandler[]>();
 	/**
-	* The packet threads for sending packets
+	* Lock held while replacing the handler mappings
 	*
-	* @since	0.1
+	* @since	0.2
+	*/
+	private static final Object handlerLock = new Object();
+	/**
+	* Shared result for packets without handlers
+	*
+	* @since	0.2
+	*/
+	private static final NetPacketHandler[] NO_HANDLERS = new NetPacketHandler[0];
+	/**
+	* The responder of each packet type that can be requested
+	*
+	* @since	0.2
+	*/
+	private static ConcurrentHashMap<Class, NetResponder> responders = new ConcurrentHashMap<Class, NetResponder>();
+	/**
+	* The connections for sending packets
+	*
+	* @since	0.2
 	*/
-	private static Hashtable<String, NetPacketThread> netSendThreads = new Hashtable<String, NetPacketThread>();
+	private static Hashtable<String, NetPlayerConnection> netConnections = new Hashtable<String, NetPlayerConnection>();
 	/**
 	* The logger for netAPI 
 	*
@@ -48,12 +76,30 @@ public class NetAPI {
 	*/
 	public static final Logger log = Logger.getLogger("Minecraft");
 	/**
+	* The strategy for running packet handlers
+	*
+	* @since	0.2
+	*/
+	private static volatile NetDispatcher dispatcher;
+	/**
+	* Where connected players are, for sending near a point
+	*
+	* @since	0.2
+	*/
+	private static volatile NetInterestGrid interest;
+	/**
 	* The minecraft server instances for the vanilla netAPI
 	*
 	* @since	0.1
 	*/
 	private static MinecraftServer server;
 	/**
+	* The directory of players logged in to the game
+	*
+	* @since	0.2
+	*/
+	private static volatile NetPlayerDirectory directory;
+	/**
 	* The thread for managing and assigning players
 	*
 	* @since	0.1
@@ -70,8 +116,70 @@ public class NetAPI {
 	* @param	packet		The packet to send
 	*/
 	public static void sendPacket(NetPacket packet) {
-		for(Map.Entry<String, NetPacketThread> entry : netSendThreads.entrySet()) {
-			entry.getValue().send(packet);
+		sendPacket(packet, null, null);
+	}
+	
+	/**
+	* Send a given packet to all players with a coalescing key.
+	* A packet sent with the same key still queued for a player
+	* is replaced by this one, so players that fall behind only
+	* get the latest.
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	key			Coalescing key, such as "pos" and an
+	*						entity ID, or null to always queue
+	*/
+	public static void sendPacket(NetPacket packet, Object key) {
+		sendPacket(packet, key, null);
+	}
+	
+	/**
+	* Send a given packet to all players in the lane of the given
+	* priority rather than that of its type
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	priority	Priority to send with, or null for the
+	*						priority of the packet's type
+	*/
+	public static void sendPacket(NetPacket packet, NetPriority priority) {
+		sendPacket(packet, null, priority);
+	}
+	
+	/**
+	* Send a given packet to all players with a coalescing key and
+	* priority. Players whose client does not handle the packet's
+	* mod are skipped.
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	key			Coalescing key, or null to always queue
+	* @param	priority	Priority to send with, or null for the
+	*						priority of the packet's type
+	*/
+	public static void sendPacket(NetPacket packet, Object key, NetPriority priority) {
+		NetFrame frame = null;
+		
+		// Encoded once, the same bytes go to every player with the mod
+		for(Map.Entry<String, NetPlayerConnection> entry : netConnections.entrySet()) {
+			NetPlayerConnection t = entry.getValue();
+			if(!t.isSubscribed(packet)) {
+				continue;
+			}
+			
+			// Not encoded at all if nobody has the mod
+			if(frame == null) {
+				frame = encodeFrame(packet);
+				if(frame == null) {
+					return;
+				}
+			}
+			t.send(frame, key, priority);
+		}
+		
+		if(frame != null) {
+			frame.release();
 		}
 	}
 		
@@ -83,9 +191,9 @@ public class NetAPI {
 	*/
 	public static void sendPacketToPlayer(NetPacket packet, EntityPlayer player) {
 		String username = player.username;
-		NetPacketThread t; 
+		NetPlayerConnection t; 
 		// Check if the user exists
-		if((username != null) && ((t = netSendThreads.get(username)) != null)) {
+		if((username != null) && ((t = netConnections.get(username)) != null)) {
 			t.send(packet);
 		}
 	}
@@ -97,9 +205,15 @@ public class NetAPI {
 	* @param	players		The players to send the packet to
 	*/
 	public static void sendPacketToPlayers(NetPacket packet, EntityPlayer[] players) {
+		NetFrame frame = encodeFrame(packet);
+		if(frame == null) {
+			return;
+		}
+		
 		for(int x = 0; x < players.length; x++) {
-			sendPacketToPlayer(packet, players[x].username);
+			sendFrameToPlayer(frame, players[x].username);
 		}
+		frame.release();
 	}
 	
 	/**
@@ -118,10 +232,52 @@ public class NetAPI {
 	* @param	username	Player to send packet to
 	*/
 	public static void sendPacketToPlayer(NetPacket packet, String username) {
-		NetPacketThread t; 
+		sendPacketToPlayer(packet, username, null, null);
+	}
+	
+	/**
+	* Sends a packet to a specific player with a coalescing key,
+	* replacing any packet with the same key still queued for them
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	username	Player to send packet to
+	* @param	key			Coalescing key, or null to always queue
+	*/
+	public static void sendPacketToPlayer(NetPacket packet, String username, Object key) {
+		sendPacketToPlayer(packet, username, key, null);
+	}
+	
+	/**
+	* Sends a packet to a specific player in the lane of the given
+	* priority rather than that of its type
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	username	Player to send packet to
+	* @param	priority	Priority to send with, or null for the
+	*						priority of the packet's type
+	*/
+	public static void sendPacketToPlayer(NetPacket packet, String username, NetPriority priority) {
+		sendPacketToPlayer(packet, username, null, priority);
+	}
+	
+	/**
+	* Sends a packet to a specific player with a coalescing key
+	* and priority
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	username	Player to send packet to
+	* @param	key			Coalescing key, or null to always queue
+	* @param	priority	Priority to send with, or null for the
+	*						priority of the packet's type
+	*/
+	public static void sendPacketToPlayer(NetPacket packet, String username, Object key, NetPriority priority) {
+		NetPlayerConnection t; 
 		// Check if the user exists
-		if((username != null) && ((t = netSendThreads.get(username)) != null)) {
-			t.send(packet);
+		if((username != null) && ((t = netConnections.get(username)) != null)) {
+			t.send(packet, key, priority);
 		}
 	}
 	
@@ -132,9 +288,15 @@ public class NetAPI {
 	* @param	players		The players to send the packet to
 	*/
 	public static void sendPacketToPlayers(NetPacket packet, String[] players) {
+		NetFrame frame = encodeFrame(packet);
+		if(frame == null) {
+			return;
+		}
+		
 		for(int x = 0; x < players.length; x++) {
-			sendPacketToPlayer(packet, players[x]);
+			sendFrameToPlayer(frame, players[x]);
 		}
+		frame.release();
 	}
 	
 	/**
@@ -144,16 +306,400 @@ public class NetAPI {
 	*/
 	public static void sendPacketToPlayers(NetP2PPacket packet) {
 		String[] 	recipients = packet.getRecipients();
-		String		username;
-		NetPacketThread t; 
+		NetFrame	frame = encodeFrame(packet);
+		if(frame == null) {
+			return;
+		}
 		
 		for(int x = 0; x < recipients.length; x++) {
-			username = recipients[x];
-			// Check if the user exists
-			if((username != null) && ((t = netSendThreads.get(username)) != null)) {
-				t.send(packet);
+			NetPlayerConnection t = netConnections.get(recipients[x]);
+			// Peers without the payload's mod have no use for it
+			if((t != null) && t.isSubscribed(packet)) {
+				t.send(frame);
+			}
+		}
+		frame.release();
+	}
+	
+	/**
+	* Send a packet to all players without waiting out the
+	* coalescing window, for packets where latency matters
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	*/
+	public static void sendNow(NetPacket packet) {
+		sendPacket(packet);
+		flush();
+	}
+	
+	/**
+	* Send a packet to a specific player without waiting out
+	* the coalescing window
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	username	Player to send packet to
+	*/
+	public static void sendNowToPlayer(NetPacket packet, String username) {
+		NetPlayerConnection t; 
+		// Check if the user exists
+		if((username != null) && ((t = netConnections.get(username)) != null)) {
+			t.sendNow(packet);
+		}
+	}
+	
+	/**
+	* Send a packet to a specific player only if they are keeping
+	* up, so that a backed up player never has packets dropped
+	* or is disconnected because of it
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	username	Player to send packet to
+	* @return	False if the player is not connected or backed up
+	*/
+	public static boolean trySendToPlayer(NetPacket packet, String username) {
+		NetPlayerConnection t; 
+		// Check if the user exists
+		if((username != null) && ((t = netConnections.get(username)) != null)) {
+			return t.trySend(packet);
+		}
+		
+		return false;
+	}
+	
+	/**
+	* Check if a player has more queued than they are reading
+	*
+	* @since	0.2
+	* @param	username	Player to check
+	* @return	True if connected and backed up
+	*/
+	public static boolean isBackedUp(String username) {
+		NetPlayerConnection t = (username == null) ? null : netConnections.get(username);
+		
+		return ((t != null) && t.isBackedUp());
+	}
+	
+	/**
+	* Write every packet queued for any player as soon as
+	* possible, without waiting out the coalescing window
+	*
+	* @since	0.2
+	*/
+	public static void flush() {
+		for(Map.Entry<String, NetPlayerConnection> entry : netConnections.entrySet()) {
+			entry.getValue().flush();
+		}
+	}
+	
+	/**
+	* Send an encoded frame to a specific player
+	*
+	* @since	0.2
+	* @param	frame		The frame to send
+	* @param	username	Player to send frame to
+	*/
+	private static void sendFrameToPlayer(NetFrame frame, String username) {
+		NetPlayerConnection t; 
+		// Check if the user exists
+		if((username != null) && ((t = netConnections.get(username)) != null)) {
+			t.send(frame);
+		}
+	}
+	
+	/**
+	* Encode a packet once for sending to many players
+	*
+	* @since	0.2
+	* @param	packet		The packet to encode
+	* @return	Encoded frame, or null if it could not be encoded
+	*/
+	private static NetFrame encodeFrame(NetPacket packet) {
+		try {
+			return NetFrame.encode(packet);
+		} catch (IOException e) {
+			log.warning("(NetAPI) Could not encode " + packet.getClass().getName() + ": " + e.getMessage());
+			return null;
+		}
+	}
+	
+	//===================
+	// File methods
+	//===================
+	
+	/**
+	* Send a file to all players. The caller still holds its
+	* reference to the file and must release it when done.
+	* Players whose connection cannot carry files are skipped.
+	*
+	* @since	0.2
+	* @param	file		The file to send
+	*/
+	public static void sendFile(NetFile file) {
+		for(Map.Entry<String, NetPlayerConnection> entry : netConnections.entrySet()) {
+			sendFile(file, entry.getValue());
+		}
+	}
+	
+	/**
+	* Send a file to a specific player. The file is skipped if
+	* their connection cannot carry files.
+	*
+	* @since	0.2
+	* @param	file		The file to send
+	* @param	username	Player to send the file to
+	*/
+	public static void sendFileToPlayer(NetFile file, String username) {
+		NetPlayerConnection t; 
+		// Check if the user exists
+		if((username != null) && ((t = netConnections.get(username)) != null)) {
+			sendFile(file, t);
+		}
+	}
+	
+	/**
+	* Send a file to many players. Players whose connection
+	* cannot carry files are skipped.
+	*
+	* @since	0.2
+	* @param	file		The file to send
+	* @param	players		The players to send the file to
+	*/
+	public static void sendFileToPlayers(NetFile file, String[] players) {
+		NetPlayerConnection t;
+		for(int x = 0; x < players.length; x++) {
+			if((players[x] != null) && ((t = netConnections.get(players[x])) != null)) {
+				sendFile(file, t);
+			}
+		}
+	}
+	
+	/**
+	* Send a file on a connection, logging and skipping it if the
+	* connection cannot carry files
+	*
+	* @since	0.2
+	* @param	file		The file to send
+	* @param	t			Connection to send it on
+	*/
+	private static void sendFile(NetFile file, NetPlayerConnection t) {
+		if(t.canSendFiles()) {
+			t.sendFile(file);
+		} else {
+			log.info("(NetAPI) Skipped a file for " + t.getSenderName() + ", their connection cannot carry files");
+		}
+	}
+	
+	//===================
+	// Nearby methods
+	//===================
+	
+	/**
+	* Send a packet to the players within a distance of a point,
+	* such as those who can see an effect there
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	dimension	Dimension of the point
+	* @param	x			X position
+	* @param	y			Y position
+	* @param	z			Z position
+	* @param	radius		Distance from the point in blocks
+	*/
+	public static void sendPacketNear(NetPacket packet, int dimension, double x, double y, double z, double radius) {
+		sendPacketNear(packet, dimension, x, y, z, radius, null, null);
+	}
+	
+	/**
+	* Send a packet to the players within a distance of another
+	* player, that player included
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	player		Player at the centre
+	* @param	radius		Distance from the player in blocks
+	*/
+	public static void sendPacketNear(NetPacket packet, EntityPlayer player, double radius) {
+		sendPacketNear(packet, player.dimension, player.posX, player.posY, player.posZ, radius, null, null);
+	}
+	
+	/**
+	* Send a packet to the players within a distance of a point
+	* with a coalescing key and priority
+	*
+	* @since	0.2
+	* @param	packet		The packet to send
+	* @param	dimension	Dimension of the point
+	* @param	x			X position
+	* @param	y			Y position
+	* @param	z			Z position
+	* @param	radius		Distance from the point in blocks
+	* @param	key			Coalescing key, or null to always queue
+	* @param	priority	Priority to send with, or null for the
+	*						priority of the packet's type
+	*/
+	public static void sendPacketNear(NetPacket packet, int dimension, double x, double y, double z, double radius,
+		Object key, NetPriority priority) {
+		List<String> players = getPlayersNear(dimension, x, y, z, radius);
+		// Nobody to see it, so not even worth encoding
+		if(players.isEmpty()) {
+			return;
+		}
+		
+		NetFrame frame = encodeFrame(packet);
+		if(frame == null) {
+			return;
+		}
+		
+		for(String username : players) {
+			NetPlayerConnection t = netConnections.get(username);
+			if((t != null) && t.isSubscribed(packet)) {
+				t.send(frame, key, priority);
 			}
 		}
+		frame.release();
+	}
+	
+	/**
+	* Get the connected players within a distance of a point, as
+	* of their last position update
+	*
+	* @since	0.2
+	* @param	dimension	Dimension of the point
+	* @param	x			X position
+	* @param	y			Y position
+	* @param	z			Z position
+	* @param	radius		Distance from the point in blocks
+	* @return	Usernames of the players in range
+	*/
+	public static List<String> getPlayersNear(int dimension, double x, double y, double z, double radius) {
+		return getInterest().getPlayersNear(dimension, x, y, z, radius);
+	}
+	
+	/**
+	* Set where a connected player is. The vanilla server updates
+	* its players each tick through onTick, so this is only needed
+	* when running against another player directory.
+	*
+	* @since	0.2
+	* @param	username	Player's username
+	* @param	dimension	Dimension the player is in
+	* @param	x			X position
+	* @param	y			Y position
+	* @param	z			Z position
+	*/
+	public static void updatePosition(String username, int dimension, double x, double y, double z) {
+		if(netConnections.containsKey(username)) {
+			getInterest().move(username, dimension, x, y, z);
+		}
+	}
+	
+	/**
+	* Get where connected players are, creating the grid on
+	* first use
+	*
+	* @since	0.2
+	* @return	Grid of player positions
+	*/
+	private static NetInterestGrid getInterest() {
+		NetInterestGrid current = interest;
+		
+		if(current == null) {
+			synchronized(NetAPI.class) {
+				if(interest == null) {
+					interest = new NetInterestGrid(NetConfig.getInterestCellSize());
+				}
+				current = interest;
+			}
+		}
+		
+		return current;
+	}
+	
+	//===================
+	// Request methods
+	//===================
+	
+	/**
+	* Send a request to a specific player, to be answered by the
+	* responder for its type on their end
+	*
+	* @since	0.2
+	* @param	packet		The request to send
+	* @param	username	Player to send the request to
+	* @return	Future of the answer
+	*/
+	public static NetFuture request(NetPacket packet, String username) {
+		return request(packet, username, NetConfig.getRequestTimeout());
+	}
+	
+	/**
+	* Send a request to a specific player
+	*
+	* @since	0.2
+	* @param	packet		The request to send
+	* @param	player		Player to send the request to
+	* @return	Future of the answer
+	*/
+	public static NetFuture request(NetPacket packet, EntityPlayer player) {
+		return request(packet, player.username, NetConfig.getRequestTimeout());
+	}
+	
+	/**
+	* Send a request to a specific player, waiting the given
+	* time for the answer
+	*
+	* @since	0.2
+	* @param	packet		The request to send
+	* @param	username	Player to send the request to
+	* @param	timeout		Milliseconds before the request fails
+	* @return	Future of the answer, already failed if the player
+	*			is not connected
+	*/
+	public static NetFuture request(NetPacket packet, String username, long timeout) {
+		NetPlayerConnection t; 
+		// Check if the user exists
+		if((username != null) && ((t = netConnections.get(username)) != null)) {
+			return t.request(packet, timeout);
+		}
+		
+		return NetFuture.failed(new IOException(username + " is not connected"));
+	}
+	
+	/**
+	* Get the responder for a given packet
+	*
+	* @since	0.2
+	* @param	packet		Packet to find the responder of
+	* @return	The responder, or null if requests of its type
+	*			are not answered
+	*/
+	public static NetResponder getResponder(NetPacket packet) {
+		return responders.get(packet.getClass());
+	}
+	
+	/**
+	* Set the responder answering requests of a given packet's
+	* type, replacing any responder already set
+	*
+	* @since	0.2
+	* @param	packet		Packet we are answering requests of
+	* @param	responder	The responder
+	*/
+	public static void addResponder(NetPacket packet, NetResponder responder) {
+		responders.put(packet.getClass(), responder);
+	}
+	
+	/**
+	* Stop answering requests of a given packet's type
+	*
+	* @since	0.2
+	* @param	packet		Packet we are no longer answering
+	*/
+	public static void removeResponder(NetPacket packet) {
+		responders.remove(packet.getClass());
 	}
 	
 	//===================
@@ -161,19 +707,15 @@ public class NetAPI {
 	//===================
 	
 	/**
-	* Get a array of all handlers for a given packet
+	* Get a array of all handlers for a given packet. The array
+	* is shared and must not be changed.
 	*
 	* @return	Array of all handlers for a given object
 	*/
 	public static NetPacketHandler[] getHandlers(NetPacket packet) {
-		Class packetClass = packet.getClass();
-		if(!handlers.containsKey(packetClass)) {
-			return new NetPacketHandler[0];
-		} else {
-			HashSet<NetPacketHandler> s = handlers.get(packetClass);
-			
-			return s.toArray(new NetPacketHandler[s.size()]);
-		}
+		NetPacketHandler[] found = handlers.get(packet.getClass());
+		
+		return (found == null) ? NO_HANDLERS : found;
 	}
 	
 	/**
@@ -184,11 +726,18 @@ public class NetAPI {
 	*/
 	public static void addHandler(NetPacket packet, NetPacketHandler handler) {
 		Class packetClass = packet.getClass();
-		if(!handlers.containsKey(packetClass)) {
-			handlers.put(packetClass, new HashSet<NetPacketHandler>());
-		}
 		
-		handlers.get(packetClass).add(handler);
+		synchronized(handlerLock) {
+			NetPacketHandler[] old = getHandlers(packet);
+			if(indexOf(old, handler) >= 0) {
+				return;
+			}
+			
+			NetPacketHandler[] added = Arrays.copyOf(old, old.length + 1);
+			added[old.length] = handler;
+			
+			publishHandlers(packetClass, added);
+		}
 	}
 	
 	/**
@@ -199,16 +748,19 @@ public class NetAPI {
 	*/
 	public static void removeHandler(NetPacket packet, NetPacketHandler handler) {
 		Class packetClass = packet.getClass();
-		if(handlers.containsKey(packetClass)) {
-			HashSet<NetPacketHandler> set = handlers.get(packetClass);
-			
-			if(set.contains(handler)) {
-				set.remove(handler);
+		
+		synchronized(handlerLock) {
+			NetPacketHandler[] old = getHandlers(packet);
+			int index = indexOf(old, handler);
+			if(index < 0) {
+				return;
 			}
 			
-			if(set.size() == 0) {
-				removeAllHandlers(packet);
-			}
+			NetPacketHandler[] removed = new NetPacketHandler[old.length - 1];
+			System.arraycopy(old, 0, removed, 0, index);
+			System.arraycopy(old, index + 1, removed, index, removed.length - index);
+			
+			publishHandlers(packetClass, removed);
 		}
 	}
 	
@@ -218,9 +770,92 @@ public class NetAPI {
 	* @param	packet 		Packer we are deleting all handlers for
 	*/
 	public static void removeAllHandlers(NetPacket packet) {
-		Class packetClass = packet.getClass();
-		if(handlers.containsKey(packetClass)) {
-			handlers.remove(packetClass);
+		synchronized(handlerLock) {
+			publishHandlers(packet.getClass(), NO_HANDLERS);
+		}
+	}
+	
+	/**
+	* Replace the handlers of a packet class with a copy of the
+	* mappings. Must be called holding the handler lock.
+	*
+	* @since	0.2
+	* @param	packetClass		Class of packet
+	* @param	classHandlers	New handlers, empty for none
+	*/
+	private static void publishHandlers(Class packetClass, NetPacketHandler[] classHandlers) {
+		Map<Class, NetPacketHandler[]> copy = new HashMap<Class, NetPacketHandler[]>(handlers);
+		
+		if(classHandlers.length == 0) {
+			copy.remove(packetClass);
+		} else {
+			copy.put(packetClass, classHandlers);
+		}
+		
+		handlers = copy;
+	}
+	
+	/**
+	* Find a handler in an array of handlers
+	*
+	* @since	0.2
+	* @param	array		Handlers to search
+	* @param	handler		Handler to find
+	* @return	Index of the handler, or -1 if not found
+	*/
+	private static int indexOf(NetPacketHandler[] array, NetPacketHandler handler) {
+		for(int x = 0; x < array.length; x++) {
+			if(array[x].equals(handler)) {
+				return x;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	* Get the strategy handlers are run with. Unless another is
+	* set, handlers run on a shared pool of threads.
+	*
+	* @since	0.2
+	* @return	Handler dispatcher
+	*/
+	public static NetDispatcher getDispatcher() {
+		NetDispatcher current = dispatcher;
+		
+		if(current == null) {
+			synchronized(NetAPI.class) {
+				if(dispatcher == null) {
+					dispatcher = new PooledDispatcher(NetConfig.getHandlerThreads(),
+						NetConfig.getHandlerQueueDepth());
+				}
+				current = dispatcher;
+			}
+		}
+		
+		return current;
+	}
+	
+	/**
+	* Set the strategy handlers are run with, shutting down
+	* the old one
+	*
+	* @since	0.2
+	* @param	newDispatcher	Handler dispatcher
+	*/
+	public static void setDispatcher(NetDispatcher newDispatcher) {
+		if(newDispatcher == null) {
+			throw new IllegalArgumentException("Dispatcher cannot be null");
+		}
+		
+		NetDispatcher old;
+		synchronized(NetAPI.class) {
+			old			= dispatcher;
+			dispatcher	= newDispatcher;
+		}
+		
+		if(old != null) {
+			old.shutdown();
 		}
 	}
 	
@@ -236,64 +871,75 @@ public class NetAPI {
 	* @return	Player object
 	*/
 	public static EntityPlayerMP getPlayer(String username) {
-		return server.configManager.getPlayerEntity(username);
+		return (server == null) ? null : server.configManager.getPlayerEntity(username);
 	}
 	
-	//============
-	// Operation methods. Not for API
-	//============
+	/**
+	* Get the directory of players logged in to the game
+	*
+	* @since	0.2
+	* @return	Player directory, null if neither a server nor a directory is set
+	*/
+	public static NetPlayerDirectory getPlayerDirectory() {
+		return directory;
+	}
 	
 	/**
-	* Create and set a new net thread when connecting
-	* to a new server. Not a part of the API.
+	* Set the directory of players logged in to the game, to
+	* run NetAPI against something other than the vanilla server
 	*
-	* @since	0.1
-	* @throws	IOException	When the thread could not connect the data streams
-	* @param	socket		Socket we have connected to
-	* @param	username	Username that is requesting new packet threads
-	* @param	mode		True if the thread is a sender thread, false if receiver
-	*/
-	public static NetPacketThread getNewNetThread(Socket socket, String username, boolean mode) 
-		throws IOException {
-		if(mode) {
-			NetPacketThread netThread = new NetPacketThread(socket, mode);
-			netThread.setSenderName(username);
-			netSendThreads.put(username, netThread);
-			return netThread;
-		} else {
-			return new NetPacketThread(socket, mode);
+	* @since	0.2
+	* @param	playerDirectory		Player directory
+	*/
+	public static void setPlayerDirectory(NetPlayerDirectory playerDirectory) {
+		if(playerDirectory == null) {
+			throw new IllegalArgumentException("Directory cannot be null");
 		}
+		
+		directory = playerDirectory;
 	}
 	
+	//============
+	// Operation methods. Not for API
+	//============
+	
 	/**
-	* Create and set a new net thread when connecting
-	* to a new server. Not a part of the API.
+	* Create and set a new connection for a player who
+	* has connected. Not a part of the API.
 	*
-	* @since	0.1
-	* @param	socket		Socket connected to
-	* @param	oos			Data sending stream
-	* @param	username	Username that is sending new packet threads
+	* @since	0.2
+	* @param	channel		Channel connected to
+	* @param	username	Username that is requesting a new connection
+	* @return	The new connection
 	*/
-	public static NetPacketThread getNewNetThread(Socket socket, String username, ObjectOutputStream oos) {
-		NetPacketThread netThread = new NetPacketThread(socket, oos);
-		netThread.setSenderName(username);
-		netSendThreads.put(username, netThread);
-		return netThread;
+	public static NetConnection getNewConnection(SocketChannel channel, String username) {
+		NetConnection connection = new NetConnection(channel);
+		connection.setSenderName(username);
+		netConnections.put(username, connection);
+		return connection;
 	}
 	
 	/**
-	* Create and set a new net thread when connecting
-	* to a new server. Not a part of the API.
+	* Create and set a new connection for a player whose NetAPI
+	* frames ride inside their game connection. Not a part of
+	* the API.
 	*
-	* @since	0.1
-	* @param	socket		Socket connected to
-	* @param	ois			Data sending stream
-	* @param	username	Username that is receiving new packet threads
+	* @since	0.2
+	* @param	tunnel		Game connection of the player
+	* @param	username	Username of the player
+	* @return	The new connection
 	*/
-	public static NetPacketThread getNewNetThread(Socket socket, String username, ObjectInputStream ois) {
-		NetPacketThread netThread = new NetPacketThread(socket, ois);
-		netThread.setSenderName(username);
-		return netThread;
+	public static NetTunnelConnection openTunnel(NetTunnel tunnel, String username) {
+		NetTunnelConnection connection = new NetTunnelConnection(tunnel);
+		connection.setSenderName(username);
+		log.info("(NetAPI) Opened tunnel for " + username);
+		
+		NetPlayerConnection old = netConnections.put(username, connection);
+		if(old != null) {
+			old.close();
+		}
+		
+		return connection;
 	}
 	
 	/**
@@ -303,12 +949,57 @@ public class NetAPI {
 	* @param	username	Player who is disconnecting
 	*/
 	public static void playerDisconnected(String username) {
-		if(netSendThreads.containsKey(username)) {
-			netSendThreads.remove(username);
+		NetPlayerConnection connection = netConnections.remove(username);
+		if(interest != null) {
+			interest.remove(username);
+		}
+		// Tunnels are not known to the assign thread
+		if(connection instanceof NetTunnelConnection) {
+			connection.close();
+		}
+		
+		// Also clears a handshake still waiting for this player
+		if(assignThread != null) {
 			assignThread.playerDisconnected(username);
 		}
 	}
 	
+	/**
+	* On a player login, bind their NetAPI connection as soon
+	* as their handshake arrives
+	*
+	* @since	0.2
+	* @param	session		Session of the player who logged in
+	*/
+	public static void playerLoggedIn(NetSession session) {
+		if(assignThread != null) {
+			assignThread.playerLoggedIn(session);
+		}
+	}
+	
+	/**
+	* Called each server tick, on the server thread, to update
+	* where connected players are. A player only changes column in
+	* the grid when they cross into another one.
+	*
+	* @since	0.2
+	*/
+	public static void onTick() {
+		if(server == null) {
+			return;
+		}
+		
+		NetInterestGrid grid = getInterest();
+		List players = server.configManager.playerEntities;
+		for(int x = 0; x < players.size(); x++) {
+			EntityPlayerMP player = (EntityPlayerMP) players.get(x);
+			
+			if(netConnections.containsKey(player.username)) {
+				grid.move(player.username, player.dimension, player.posX, player.posY, player.posZ);
+			}
+		}
+	}
+	
 	/**
 	* Set the server instance
 	*
@@ -320,6 +1011,10 @@ public class NetAPI {
 			throw new RuntimeException("Don't re-set this value");
 		} else {
 			NetAPI.server = server;
+			
+			if(directory == null) {
+				directory = new VanillaPlayerDirectory(server);
+			}
 		}
 	}
 	
@@ -0,0 +1,142 @@
+package netapi;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* A pool of direct buffers for frames. Direct buffers can be
+* written to a socket without first being copied, but are slow
+* to allocate, so they are kept and reused. Buffers come in
+* power of two sizes, and frames too large for the biggest size
+* get an ordinary unpooled buffer.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetBufferPool {
+	/**
+	* Log2 of the smallest pooled buffer
+	*
+	* @since	0.2
+	*/
+	private static final int MIN_SHIFT			= 8;
+	/**
+	* Log2 of the largest pooled buffer
+	*
+	* @since	0.2
+	*/
+	private static final int MAX_SHIFT			= 20;
+	/**
+	* Most bytes kept idle in any one size of buffer
+	*
+	* @since	0.2
+	*/
+	private static final int MAX_IDLE_BYTES		= 0x400000;
+	/**
+	* Idle buffers of each size
+	*
+	* @since	0.2
+	*/
+	private static final ConcurrentLinkedQueue<ByteBuffer>[] pools;
+	/**
+	* Number of idle buffers of each size
+	*
+	* @since	0.2
+	*/
+	private static final AtomicInteger[] idle;
+	
+	static {
+		int sizes = MAX_SHIFT - MIN_SHIFT + 1;
+		pools	= createPools(sizes);
+		idle	= new AtomicInteger[sizes];
+		
+		for(int x = 0; x < sizes; x++) {
+			pools[x]	= new ConcurrentLinkedQueue<ByteBuffer>();
+			idle[x]		= new AtomicInteger();
+		}
+	}
+	
+	/**
+	* Create the array of pools. Generic arrays can't be
+	* created directly.
+	*
+	* @since	0.2
+	* @param	sizes	Number of sizes
+	* @return	Array of pools
+	*/
+	@SuppressWarnings("unchecked")
+	private static ConcurrentLinkedQueue<ByteBuffer>[] createPools(int sizes) {
+		return new ConcurrentLinkedQueue[sizes];
+	}
+	
+	/**
+	* Get the index of the smallest size holding the given bytes
+	*
+	* @since	0.2
+	* @param	size	Bytes needed
+	* @return	Index of the size, or -1 if too large to pool
+	*/
+	private static int sizeIndex(int size) {
+		int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+		shift = Math.max(shift, MIN_SHIFT);
+		
+		return (shift > MAX_SHIFT) ? -1 : (shift - MIN_SHIFT);
+	}
+	
+	//===============
+	// Pool methods
+	//===============
+	
+	/**
+	* Get a buffer with room for the given bytes, with its
+	* limit set to that size
+	*
+	* @since	0.2
+	* @param	size	Bytes needed
+	* @return	Cleared buffer
+	*/
+	public static ByteBuffer acquire(int size) {
+		int index = sizeIndex(size);
+		
+		if(index < 0) {
+			return ByteBuffer.allocate(size);
+		}
+		
+		ByteBuffer buffer = pools[index].poll();
+		if(buffer == null) {
+			buffer = ByteBuffer.allocateDirect(1 << (index + MIN_SHIFT));
+		} else {
+			idle[index].decrementAndGet();
+		}
+		
+		buffer.clear();
+		buffer.limit(size);
+		return buffer;
+	}
+	
+	/**
+	* Give a buffer back to the pool. It must not be used again.
+	*
+	* @since	0.2
+	* @param	buffer	Buffer from acquire
+	*/
+	public static void release(ByteBuffer buffer) {
+		if(!buffer.isDirect()) {
+			return;
+		}
+		
+		int index = sizeIndex(buffer.capacity());
+		if((index < 0) || ((1 << (index + MIN_SHIFT)) != buffer.capacity())) {
+			return;
+		}
+		
+		// Past the limit the buffer is left for the garbage collector
+		if(idle[index].incrementAndGet() <= Math.max(2, MAX_IDLE_BYTES >> (index + MIN_SHIFT))) {
+			pools[index].add(buffer);
+		} else {
+			idle[index].decrementAndGet();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,565 @@
+package netapi;
+
+/**
+* Tunable settings for NetAPI. Every setting can be given as
+* a system property on the command line (-Dnetapi.name=value)
+* or changed with its setter before the server starts.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetConfig {
+	/**
+	* Number of selector threads servicing NetAPI connections
+	*
+	* @since	0.2
+	*/
+	private static int selectorThreads = Integer.getInteger("netapi.selectorThreads", 1);
+	/**
+	* Milliseconds to wait for more packets before sending,
+	* zero to send every packet as soon as it is queued
+	*
+	* @since	0.2
+	*/
+	private static long coalesceWindow = Long.getLong("netapi.coalesceWindow", 0);
+	/**
+	* Most bytes sent in a single write. Once this much is
+	* queued it is sent without waiting out the coalescing window.
+	*
+	* @since	0.2
+	*/
+	private static int maxBatchBytes = Integer.getInteger("netapi.maxBatchBytes", 0x10000);
+	/**
+	* Queued bytes at which a player counts as backed up and
+	* the overflow policy applies. The vanilla server gives up
+	* on a connection at the same size.
+	*
+	* @since	0.2
+	*/
+	private static int highWaterBytes = Integer.getInteger("netapi.highWaterBytes", 0x100000);
+	/**
+	* Queued bytes a backed up player must drain to before
+	* no longer counting as backed up
+	*
+	* @since	0.2
+	*/
+	private static int lowWaterBytes = Integer.getInteger("netapi.lowWaterBytes", 0x80000);
+	/**
+	* What to do when a player's send queue is full
+	*
+	* @since	0.2
+	*/
+	private static NetOverflowPolicy overflowPolicy = readPolicy(System.getProperty("netapi.overflowPolicy"));
+	
+	/**
+	* Read an overflow policy from a system property
+	*
+	* @since	0.2
+	* @param	value	Property value, null if unset
+	* @return	Named policy, or DISCONNECT if unset or unknown
+	*/
+	private static NetOverflowPolicy readPolicy(String value) {
+		if(value != null) {
+			try {
+				return NetOverflowPolicy.valueOf(value.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				NetAPI.log.warning("(NetAPI) Unknown overflow policy " + value);
+			}
+		}
+		
+		return NetOverflowPolicy.DISCONNECT;
+	}
+	/**
+	* Number of threads running packet handlers
+	*
+	* @since	0.2
+	*/
+	private static int handlerThreads = Integer.getInteger("netapi.handlerThreads", 4);
+	/**
+	* Most packets waiting to be handled before more are dropped
+	*
+	* @since	0.2
+	*/
+	private static int handlerQueueDepth = Integer.getInteger("netapi.handlerQueueDepth", 1024);
+	/**
+	* Milliseconds a NetAPI handshake waits for its player to log in
+	*
+	* @since	0.2
+	*/
+	private static long handshakeTimeout = Long.getLong("netapi.handshakeTimeout", 30000);
+	/**
+	* Milliseconds a new socket has to send its name before it is
+	* closed
+	*
+	* @since	0.2
+	*/
+	private static long handshakeReadTimeout = Long.getLong("netapi.handshakeReadTimeout", 5000);
+	/**
+	* Most sockets that may be sending their name at once
+	*
+	* @since	0.2
+	*/
+	private static int maxHandshakes = Integer.getInteger("netapi.maxHandshakes", 256);
+	/**
+	* Packets encoding to at least this many bytes are compressed,
+	* zero to never compress
+	*
+	* @since	0.2
+	*/
+	private static int compressThreshold = Integer.getInteger("netapi.compressThreshold", 0);
+	/**
+	* Frames longer than this many bytes are sent in fragments
+	* of this size, zero to send every frame whole
+	*
+	* @since	0.2
+	*/
+	private static int fragmentBytes = Integer.getInteger("netapi.fragmentBytes", 0x10000);
+	/**
+	* Most bytes of fragmented frames a connection holds at once
+	* while they are put back together
+	*
+	* @since	0.2
+	*/
+	private static int maxReassemblyBytes = Integer.getInteger("netapi.maxReassemblyBytes", 0x400000);
+	/**
+	* True to offer players datagrams for packets that may be lost
+	*
+	* @since	0.2
+	*/
+	private static boolean datagrams = Boolean.getBoolean("netapi.datagrams");
+	/**
+	* Longest packet sent as a datagram, longer ones are sent
+	* on the connection
+	*
+	* @since	0.2
+	*/
+	private static int maxDatagramBytes = Integer.getInteger("netapi.maxDatagramBytes", 1200);
+	/**
+	* Milliseconds without a hello from a client before datagrams
+	* to it stop, three of the client's keepalives
+	*
+	* @since	0.2
+	*/
+	private static long datagramTimeout = Long.getLong("netapi.datagramTimeout", 45000);
+	/**
+	* Milliseconds to wait for the answer to a request unless
+	* given a timeout of its own
+	*
+	* @since	0.2
+	*/
+	private static long requestTimeout = Long.getLong("netapi.requestTimeout", 30000);
+	/**
+	* Blocks along each side of the columns players are grouped in
+	* for sending packets near a point, 16 for a chunk
+	*
+	* @since	0.2
+	*/
+	private static int interestCellSize = Integer.getInteger("netapi.interestCellSize", 16);
+	
+	/**
+	* Get the number of selector threads to service connections with
+	*
+	* @since	0.2
+	* @return	Number of selector threads
+	*/
+	public static int getSelectorThreads() {
+		return selectorThreads;
+	}
+	
+	/**
+	* Set the number of selector threads to service connections with.
+	* Only has an effect before the server starts.
+	*
+	* @since	0.2
+	* @param	threads		Number of selector threads, at least one
+	*/
+	public static void setSelectorThreads(int threads) {
+		selectorThreads = Math.max(1, threads);
+	}
+	
+	/**
+	* Get the coalescing window for sending packets
+	*
+	* @since	0.2
+	* @return	Milliseconds to wait for more packets before sending
+	*/
+	public static long getCoalesceWindow() {
+		return coalesceWindow;
+	}
+	
+	/**
+	* Set the coalescing window for sending packets. A longer
+	* window sends more packets at once at the cost of latency.
+	*
+	* @since	0.2
+	* @param	window	Milliseconds to wait, zero to send at once
+	*/
+	public static void setCoalesceWindow(long window) {
+		coalesceWindow = Math.max(0, window);
+	}
+	
+	/**
+	* Get the most bytes sent in a single write
+	*
+	* @since	0.2
+	* @return	Most bytes in a batch
+	*/
+	public static int getMaxBatchBytes() {
+		return maxBatchBytes;
+	}
+	
+	/**
+	* Set the most bytes sent in a single write. A packet
+	* larger than this is still sent, in a batch of its own.
+	*
+	* @since	0.2
+	* @param	bytes	Most bytes in a batch, at least one
+	*/
+	public static void setMaxBatchBytes(int bytes) {
+		maxBatchBytes = Math.max(1, bytes);
+	}
+	
+	/**
+	* Get the queued bytes at which a player is backed up
+	*
+	* @since	0.2
+	* @return	High watermark in bytes
+	*/
+	public static int getHighWaterBytes() {
+		return highWaterBytes;
+	}
+	
+	/**
+	* Get the queued bytes a backed up player must drain to
+	*
+	* @since	0.2
+	* @return	Low watermark in bytes
+	*/
+	public static int getLowWaterBytes() {
+		return lowWaterBytes;
+	}
+	
+	/**
+	* Set the send queue watermarks. The low watermark is
+	* kept below the high one.
+	*
+	* @since	0.2
+	* @param	high	Queued bytes at which a player is backed up
+	* @param	low		Queued bytes a backed up player must drain to
+	*/
+	public static void setWaterMarks(int high, int low) {
+		highWaterBytes	= Math.max(1, high);
+		lowWaterBytes	= Math.max(0, Math.min(low, highWaterBytes - 1));
+	}
+	
+	/**
+	* Get what is done when a player's send queue is full
+	*
+	* @since	0.2
+	* @return	Overflow policy
+	*/
+	public static NetOverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+	
+	/**
+	* Set what is done when a player's send queue is full
+	*
+	* @since	0.2
+	* @param	policy	Overflow policy
+	*/
+	public static void setOverflowPolicy(NetOverflowPolicy policy) {
+		if(policy == null) {
+			throw new IllegalArgumentException("Policy cannot be null");
+		}
+		
+		overflowPolicy = policy;
+	}
+	
+	/**
+	* Get the number of threads running packet handlers
+	*
+	* @since	0.2
+	* @return	Number of handler threads
+	*/
+	public static int getHandlerThreads() {
+		return handlerThreads;
+	}
+	
+	/**
+	* Set the number of threads running packet handlers. Only has
+	* an effect before the first packet is handled.
+	*
+	* @since	0.2
+	* @param	threads		Number of handler threads, at least one
+	*/
+	public static void setHandlerThreads(int threads) {
+		handlerThreads = Math.max(1, threads);
+	}
+	
+	/**
+	* Get the most packets waiting to be handled
+	*
+	* @since	0.2
+	* @return	Most packets waiting before more are dropped
+	*/
+	public static int getHandlerQueueDepth() {
+		return handlerQueueDepth;
+	}
+	
+	/**
+	* Set the most packets waiting to be handled. Only has an
+	* effect before the first packet is handled.
+	*
+	* @since	0.2
+	* @param	depth	Most packets waiting, at least one
+	*/
+	public static void setHandlerQueueDepth(int depth) {
+		handlerQueueDepth = Math.max(1, depth);
+	}
+	
+	/**
+	* Get how long a NetAPI handshake waits for its player to log in
+	*
+	* @since	0.2
+	* @return	Milliseconds to wait
+	*/
+	public static long getHandshakeTimeout() {
+		return handshakeTimeout;
+	}
+	
+	/**
+	* Set how long a NetAPI handshake waits for its player to log
+	* in before the channel is closed
+	*
+	* @since	0.2
+	* @param	timeout	Milliseconds to wait, at least one
+	*/
+	public static void setHandshakeTimeout(long timeout) {
+		handshakeTimeout = Math.max(1, timeout);
+	}
+	
+	/**
+	* Get how long a new socket has to send its name
+	*
+	* @since	0.2
+	* @return	Milliseconds to wait
+	*/
+	public static long getHandshakeReadTimeout() {
+		return handshakeReadTimeout;
+	}
+	
+	/**
+	* Set how long a new socket has to send its name before it
+	* is closed
+	*
+	* @since	0.2
+	* @param	timeout	Milliseconds to wait, at least one
+	*/
+	public static void setHandshakeReadTimeout(long timeout) {
+		handshakeReadTimeout = Math.max(1, timeout);
+	}
+	
+	/**
+	* Get the most sockets that may be sending their name at once
+	*
+	* @since	0.2
+	* @return	Most handshakes in flight
+	*/
+	public static int getMaxHandshakes() {
+		return maxHandshakes;
+	}
+	
+	/**
+	* Set the most sockets that may be sending their name at
+	* once. Further sockets wait in the listen backlog.
+	*
+	* @since	0.2
+	* @param	handshakes	Most handshakes in flight, at least one
+	*/
+	public static void setMaxHandshakes(int handshakes) {
+		maxHandshakes = Math.max(1, handshakes);
+	}
+	
+	/**
+	* Get the size from which packets are compressed
+	*
+	* @since	0.2
+	* @return	Bytes from which packets are compressed, zero if never
+	*/
+	public static int getCompressThreshold() {
+		return compressThreshold;
+	}
+	
+	/**
+	* Set the size from which packets are compressed. Only
+	* peers running this version of NetAPI can read compressed
+	* packets, so it is off unless set.
+	*
+	* @since	0.2
+	* @param	bytes	Bytes from which packets are compressed, zero to never compress
+	*/
+	public static void setCompressThreshold(int bytes) {
+		compressThreshold = Math.max(0, bytes);
+	}
+	
+	/**
+	* Get the size frames are cut into to be sent in fragments
+	*
+	* @since	0.2
+	* @return	Bytes in each fragment, zero if frames are sent whole
+	*/
+	public static int getFragmentBytes() {
+		return fragmentBytes;
+	}
+	
+	/**
+	* Set the size frames are cut into to be sent in fragments.
+	* A frame in fragments does not hold up the frames queued after
+	* it, but costs a few bytes more to send.
+	*
+	* @since	0.2
+	* @param	bytes	Bytes in each fragment, zero to send frames whole
+	*/
+	public static void setFragmentBytes(int bytes) {
+		fragmentBytes = Math.max(0, bytes);
+	}
+	
+	/**
+	* Get the most bytes of fragmented frames held at once
+	*
+	* @since	0.2
+	* @return	Bytes held at most for each connection
+	*/
+	public static int getMaxReassemblyBytes() {
+		return maxReassemblyBytes;
+	}
+	
+	/**
+	* Set the most bytes of fragmented frames held at once. The
+	* other end is disconnected if it sends more, and frames that
+	* would take more are sent whole, so both ends must use the
+	* same limit.
+	*
+	* @since	0.2
+	* @param	bytes	Bytes held at most for each connection
+	*/
+	public static void setMaxReassemblyBytes(int bytes) {
+		maxReassemblyBytes = Math.max(0, bytes);
+	}
+	
+	/**
+	* Check whether players are offered datagrams
+	*
+	* @since	0.2
+	* @return	True if datagrams are offered
+	*/
+	public static boolean isDatagrams() {
+		return datagrams;
+	}
+	
+	/**
+	* Set whether players are offered datagrams for packets that
+	* may be lost, on the same port as the NetAPI socket. Only
+	* clients running this version of NetAPI understand the offer,
+	* so it is off unless set, and it only has an effect when the
+	* server starts.
+	*
+	* @since	0.2
+	* @param	offer	True to offer datagrams
+	*/
+	public static void setDatagrams(boolean offer) {
+		datagrams = offer;
+	}
+	
+	/**
+	* Get the longest packet sent as a datagram
+	*
+	* @since	0.2
+	* @return	Bytes in the longest datagram, zero if none are sent
+	*/
+	public static int getMaxDatagramBytes() {
+		return maxDatagramBytes;
+	}
+	
+	/**
+	* Set the longest packet sent as a datagram. Datagrams longer
+	* than the path allows are split by IP and lost if any part is,
+	* so this is best kept under the MTU.
+	*
+	* @since	0.2
+	* @param	bytes	Bytes in the longest datagram, zero to send none
+	*/
+	public static void setMaxDatagramBytes(int bytes) {
+		maxDatagramBytes = Math.max(0, bytes);
+	}
+	
+	/**
+	* Get how long datagrams are sent without a hello
+	*
+	* @since	0.2
+	* @return	Milliseconds before datagrams to a client stop
+	*/
+	public static long getDatagramTimeout() {
+		return datagramTimeout;
+	}
+	
+	/**
+	* Set how long datagrams are sent without a hello. Clients say
+	* hello every fifteen seconds while datagrams get through, and
+	* packets go back on the connection once one has been quiet for
+	* this long, as it has most likely given up on datagrams.
+	*
+	* @since	0.2
+	* @param	timeout	Milliseconds before datagrams to a client stop
+	*/
+	public static void setDatagramTimeout(long timeout) {
+		datagramTimeout = Math.max(0, timeout);
+	}
+	
+	/**
+	* Get how long requests wait for their answer
+	*
+	* @since	0.2
+	* @return	Milliseconds before a request fails
+	*/
+	public static long getRequestTimeout() {
+		return requestTimeout;
+	}
+	
+	/**
+	* Set how long requests wait for their answer, unless given
+	* a timeout of their own
+	*
+	* @since	0.2
+	* @param	millis	Milliseconds before a request fails
+	*/
+	public static void setRequestTimeout(long millis) {
+		requestTimeout = Math.max(1, millis);
+	}
+	
+	/**
+	* Get the size of the columns players are grouped in for
+	* sending packets near a point
+	*
+	* @since	0.2
+	* @return	Blocks along each side of a column
+	*/
+	public static int getInterestCellSize() {
+		return interestCellSize;
+	}
+	
+	/**
+	* Set the size of the columns players are grouped in for
+	* sending packets near a point. Columns about as wide as the
+	* usual radius are looked up fastest. Only has an effect
+	* before the first player position is set.
+	*
+	* @since	0.2
+	* @param	blocks	Blocks along each side of a column
+	*/
+	public static void setInterestCellSize(int blocks) {
+		interestCellSize = Math.max(1, blocks);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,35 @@
+package netapi;
+
+import netapi.packet.NetPacket;
+
+/**
+* Decides which thread a packet handler is run on once a packet
+* has been received. Every handler of a packet is passed to the
+* dispatcher once and must be run at most once. Whether it runs
+* or is dropped, NetCodecRegistry.handled must then be called
+* once so that recycled packets can be reused.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public interface NetDispatcher {
+	/**
+	* Run a handler for a received packet
+	*
+	* @since	0.2
+	* @param	handler		Handler to run
+	* @param	packet		Packet to handle
+	* @return	False if the handler was dropped rather than run or
+	*			queued to run
+	*/
+	public boolean dispatch(NetPacketHandler handler, NetPacket packet);
+	
+	/**
+	* Stop any threads this dispatcher started. Handlers already
+	* queued may be dropped.
+	*
+	* @since	0.2
+	*/
+	public void shutdown();
+}
\ No newline at end of file
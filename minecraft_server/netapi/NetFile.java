@@ -0,0 +1,199 @@
+package netapi;
+
+import netapi.packet.NetFilePacket;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* A region of a file to send to players, along with the packet
+* announcing it encoded once into a frame. The file is never read
+* into memory, its chunks are handed from the file straight to each
+* player's channel, see NetFileTable. Like a frame it is reference
+* counted, so one file can be sent to many players, and the file is
+* closed once every one of them has been sent it.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetFile {
+	/**
+	* ID of the next file, unique to this server so the same
+	* announcement can go to every player
+	*
+	* @since	0.2
+	*/
+	private static final AtomicInteger nextID = new AtomicInteger();
+	/**
+	* The file the region is in
+	*
+	* @since	0.2
+	*/
+	private final FileChannel	channel;
+	/**
+	* Start of the region in the file
+	*
+	* @since	0.2
+	*/
+	private final long			position;
+	/**
+	* Length of the region
+	*
+	* @since	0.2
+	*/
+	private final long			length;
+	/**
+	* ID of the file's chunks
+	*
+	* @since	0.2
+	*/
+	private final int			id;
+	/**
+	* Packet announcing the file, encoded
+	*
+	* @since	0.2
+	*/
+	private final NetFrame		frame;
+	/**
+	* Number of holders of this file
+	*
+	* @since	0.2
+	*/
+	private final AtomicInteger	references = new AtomicInteger(1);
+	
+	/**
+	* Create a file from a region of an open channel. The caller
+	* holds the only reference and must release it when done, which
+	* in time closes the channel.
+	*
+	* @since	0.2
+	* @throws	IOException	If the announcement cannot be encoded
+	* @param	channel		Channel to send from
+	* @param	position	Start of the region
+	* @param	length		Length of the region
+	* @param	name		Name the file is given at the other end
+	* @param	modID		Mod ID of the announcement, or null for none
+	*/
+	public NetFile(FileChannel channel, long position, long length, String name, String modID) throws IOException {
+		if((position < 0) || (length < 0)) {
+			throw new IllegalArgumentException("Bad region " + position + "+" + length);
+		}
+		
+		this.channel	= channel;
+		this.position	= position;
+		this.length		= length;
+		this.id			= nextID.getAndIncrement();
+		this.frame		= NetFrame.encode(new NetFilePacket(id, name, length, modID));
+	}
+	
+	/**
+	* Open the whole of a file to send, under its own name
+	*
+	* @since	0.2
+	* @throws	IOException	If the file cannot be opened
+	* @param	file	File to send
+	* @param	modID	Mod ID of the announcement, or null for none
+	* @return	The file, which the caller must release when done
+	*/
+	public static NetFile open(File file, String modID) throws IOException {
+		FileChannel channel = new FileInputStream(file).getChannel();
+		
+		try {
+			return new NetFile(channel, 0, channel.size(), file.getName(), modID);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	//===============
+	// Access
+	//===============
+	
+	/**
+	* Send part of the region straight from the file to a channel,
+	* as much as the channel will take without blocking
+	*
+	* @since	0.2
+	* @throws	IOException	If the file or channel fails
+	* @param	offset	Start of the part within the region
+	* @param	count	Length of the part
+	* @param	target	Channel to send to
+	* @return	Bytes sent
+	*/
+	public long transferTo(long offset, long count, WritableByteChannel target) throws IOException {
+		return channel.transferTo(position + offset, count, target);
+	}
+	
+	/**
+	* Get the frame announcing the file
+	*
+	* @since	0.2
+	* @return	Frame, held by this file
+	*/
+	public NetFrame getFrame() {
+		return frame;
+	}
+	
+	/**
+	* Get the ID of the file's chunks
+	*
+	* @since	0.2
+	* @return	Chunk ID
+	*/
+	public int getID() {
+		return id;
+	}
+	
+	/**
+	* Get the length of the region
+	*
+	* @since	0.2
+	* @return	Length in bytes
+	*/
+	public long length() {
+		return length;
+	}
+	
+	//===============
+	// Reference counting
+	//===============
+	
+	/**
+	* Take another reference to this file
+	*
+	* @since	0.2
+	* @return	This file
+	*/
+	public NetFile retain() {
+		references.incrementAndGet();
+		return this;
+	}
+	
+	/**
+	* Give up a reference to this file. The last release closes
+	* the file.
+	*
+	* @since	0.2
+	*/
+	public void release() {
+		int left = references.decrementAndGet();
+		
+		if(left == 0) {
+			frame.release();
+			
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Nothing left to send from it
+			}
+		} else if(left < 0) {
+			throw new IllegalStateException("File released too many times");
+		}
+	}
+}
\ No newline at end of file
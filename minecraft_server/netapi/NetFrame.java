@@ -0,0 +1,369 @@
+package netapi;
+
+import netapi.packet.NetCodecContext;
+import netapi.packet.NetCodecRegistry;
+import netapi.packet.NetCompression;
+import netapi.packet.NetDeltaPacket;
+import netapi.packet.NetOutput;
+import netapi.packet.NetPacket;
+import netapi.packet.NetStringTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* A packet encoded once into a frame that can be queued on many
+* connections. The frame is never changed once encoded, and is
+* reference counted so its buffer can go back to the pool once
+* every connection has written it.
+*
+* The mod ID and sender are written for each connection with its
+* own string table, see NetStringTable, ahead of the shared body.
+* Connections that have sent both strings under the same indices
+* share one copy of the frame with them as indices, the others get
+* a copy of their own, as does a connection sending the changes to
+* a delta packet in place of its body. Once encoded
+* for a connection a large frame may be sent in fragments, see
+* NetFragmentTable. A packet that may be lost is also encoded once
+* as a datagram, for connections that have them.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetFrame {
+	/**
+	* Largest output kept for reuse between frames
+	*
+	* @since	0.2
+	*/
+	private static final int MAX_KEPT_OUTPUT = 0x10000;
+	/**
+	* Output reused by each thread encoding frames
+	*
+	* @since	0.2
+	*/
+	private static final ThreadLocal<NetOutput> encoders = new ThreadLocal<NetOutput>() {
+		protected NetOutput initialValue() {
+			return new NetOutput();
+		}
+	};
+	/**
+	* The frame header followed by the packet body, without the
+	* strings written for each connection
+	*
+	* @since	0.2
+	*/
+	private final ByteBuffer	data;
+	/**
+	* Start of the packet body, after the header
+	*
+	* @since	0.2
+	*/
+	private final int			bodyStart;
+	/**
+	* Class of the packet in this frame
+	*
+	* @since	0.2
+	*/
+	private final Class			type;
+	/**
+	* Priority of the packet's type
+	*
+	* @since	0.2
+	*/
+	private final NetPriority	priority;
+	/**
+	* Mod ID of the packet
+	*
+	* @since	0.2
+	*/
+	private final String		modID;
+	/**
+	* Sender of the packet when encoded
+	*
+	* @since	0.2
+	*/
+	private final String		sender;
+	/**
+	* True if the packet is a delta packet
+	*
+	* @since	0.2
+	*/
+	private final boolean		delta;
+	/**
+	* Key of the delta packet
+	*
+	* @since	0.2
+	*/
+	private final int			key;
+	/**
+	* The packet as a datagram, or null if it must go on the
+	* connection
+	*
+	* @since	0.2
+	*/
+	private final ByteBuffer	datagram;
+	/**
+	* Number of holders of this frame
+	*
+	* @since	0.2
+	*/
+	private final AtomicInteger	references = new AtomicInteger(1);
+	/**
+	* The frame with its strings as indices, for connections that
+	* have sent them under the indices it was first encoded with
+	*
+	* @since	0.2
+	*/
+	private volatile Indexed	indexed;
+	
+	/**
+	* Create a frame around an encoded buffer
+	*
+	* @since	0.2
+	* @param	data		Frame data, flipped
+	* @param	bodyStart	Start of the packet body
+	* @param	packet		The packet
+	* @param	datagram	The packet as a datagram, or null
+	*/
+	private NetFrame(ByteBuffer data, int bodyStart, NetPacket packet, ByteBuffer datagram) {
+		this.data			= data;
+		this.bodyStart		= bodyStart;
+		this.type			= packet.getClass();
+		this.priority		= packet.getPriority();
+		this.modID			= packet.getModID();
+		this.sender			= packet.getSender();
+		this.delta			= (packet instanceof NetDeltaPacket);
+		this.key			= delta ? ((NetDeltaPacket) packet).getKey() : 0;
+		this.datagram		= datagram;
+	}
+	
+	/**
+	* Encode a packet into a frame. The caller holds the
+	* only reference and must release it when done.
+	*
+	* @since	0.2
+	* @throws	IOException	If the packet cannot be encoded
+	* @param	packet	Packet to encode
+	* @return	The frame
+	*/
+	public static NetFrame encode(NetPacket packet) throws IOException {
+		NetOutput out = encoders.get();
+		out.reset();
+		out.writeInt(0);
+		
+		int bodyStart = out.size();
+		NetCompression.encode(packet, out);
+		
+		ByteBuffer encoded = out.getBuffer();
+		encoded.flip();
+		encoded.putInt(0, encoded.limit() - NetProtocol.HEADER_LENGTH);
+		
+		ByteBuffer frame = NetBufferPool.acquire(encoded.remaining());
+		frame.put(encoded);
+		frame.flip();
+		
+		// Don't hold on to the memory of one huge packet
+		if(encoded.capacity() > MAX_KEPT_OUTPUT) {
+			encoders.remove();
+		}
+		
+		ByteBuffer datagram = packet.isReliable() ? null : NetProtocol.encodeDatagram(packet);
+		
+		return new NetFrame(frame, bodyStart, packet, datagram);
+	}
+	
+	//===============
+	// Access
+	//===============
+	
+	/**
+	* Get the frame to write on one connection. This is a view of
+	* the copy with the strings as indices when the connection has
+	* sent them under the same indices, and its own copy otherwise.
+	*
+	* @since	0.2
+	* @throws	IOException	If the body is bad
+	* @param	context	What has been sent on the connection
+	* @return	Frame data, header first
+	*/
+	public ByteBuffer encode(NetCodecContext context) throws IOException {
+		NetStringTable strings	= context.getStrings();
+		ByteBuffer body			= view();
+		body.position(bodyStart);
+		
+		if(delta) {
+			ByteBuffer sent = context.getDeltas().encode(body, key);
+			if(sent != body) {
+				return encode(strings, sent);
+			}
+		}
+		
+		int modIndex	= strings.getSentIndex(modID);
+		int senderIndex	= strings.getSentIndex(sender);
+		if((modIndex < 0) || (senderIndex < 0)) {
+			return encode(strings, body);
+		}
+		
+		Indexed shared = indexed;
+		if((shared != null) && (shared.modIndex == modIndex) && (shared.senderIndex == senderIndex)) {
+			return shared.data.duplicate();
+		}
+		
+		ByteBuffer frame = encode(strings, body);
+		// Most connections send the same strings first, and so
+		// give them the same indices
+		if(shared == null) {
+			indexed = new Indexed(frame.duplicate(), modIndex, senderIndex);
+		}
+		
+		return frame;
+	}
+	
+	/**
+	* Decide whether to send this frame in fragments on one
+	* connection, see NetCodecContext.split
+	*
+	* @since	0.2
+	* @param	context	What has been sent on the connection
+	* @param	data	Frame just encoded for the connection. Moved
+	*					past its header if it is to be split.
+	* @return	ID of the frame's fragments, or -1 to send it whole
+	*/
+	public int split(NetCodecContext context, ByteBuffer data) {
+		return context.split(data, modID, sender, delta);
+	}
+	
+	/**
+	* Copy a body into a frame of its own, with the strings
+	* encoded for one connection
+	*
+	* @since	0.2
+	* @param	strings	Table of strings sent on the connection
+	* @param	body	Body to follow the strings
+	* @return	Frame data, header first
+	*/
+	private ByteBuffer encode(NetStringTable strings, ByteBuffer body) {
+		NetOutput out = new NetOutput(32);
+		out.writeInt(0);
+		NetCodecRegistry.encodeStrings(modID, sender, out, strings);
+		
+		ByteBuffer header = out.getBuffer();
+		header.flip();
+		
+		ByteBuffer frame = ByteBuffer.allocate(header.remaining() + body.remaining());
+		frame.put(header);
+		frame.put(body);
+		frame.flip();
+		frame.putInt(0, frame.limit() - NetProtocol.HEADER_LENGTH);
+		
+		return frame;
+	}
+	
+	/**
+	* Get a view of the frame with its own position, for one
+	* connection to write
+	*
+	* @since	0.2
+	* @return	View of the frame data
+	*/
+	public ByteBuffer view() {
+		return data.duplicate();
+	}
+	
+	/**
+	* Get the packet in this frame as a datagram
+	*
+	* @since	0.2
+	* @return	View of the datagram data, or null if the packet
+	*			must be sent on the connection
+	*/
+	public ByteBuffer getDatagram() {
+		return (datagram == null) ? null : datagram.duplicate();
+	}
+	
+	/**
+	* Get the class of the packet in this frame
+	*
+	* @since	0.2
+	* @return	Packet class
+	*/
+	public Class getType() {
+		return type;
+	}
+	
+	/**
+	* Get the priority of the packet in this frame
+	*
+	* @since	0.2
+	* @return	Lane the frame is queued in unless sent with
+	*			a priority of its own
+	*/
+	public NetPriority getPriority() {
+		return priority;
+	}
+	
+	/**
+	* Get the length of the frame, header included
+	*
+	* @since	0.2
+	* @return	Length in bytes
+	*/
+	public int length() {
+		return data.limit();
+	}
+	
+	//===============
+	// Reference counting
+	//===============
+	
+	/**
+	* Take another reference to this frame
+	*
+	* @since	0.2
+	* @return	This frame
+	*/
+	public NetFrame retain() {
+		references.incrementAndGet();
+		return this;
+	}
+	
+	/**
+	* Give up a reference to this frame. The last release
+	* returns the buffer to the pool.
+	*
+	* @since	0.2
+	*/
+	public void release() {
+		int left = references.decrementAndGet();
+		
+		if(left == 0) {
+			NetBufferPool.release(data);
+		} else if(left < 0) {
+			throw new IllegalStateException("Frame released too many times");
+		}
+	}
+	
+	/**
+	* A frame encoded with its strings as indices, and the indices
+	* they were given.
+	* No encapsulation since it's just a convenience class
+	*
+	* @author	Clinton Alexander
+	* @version	0.2
+	* @since	0.2
+	*/
+	private static class Indexed {
+		public final ByteBuffer	data;
+		public final int		modIndex;
+		public final int		senderIndex;
+		
+		public Indexed(ByteBuffer data, int modIndex, int senderIndex) {
+			this.data			= data;
+			this.modIndex		= modIndex;
+			this.senderIndex	= senderIndex;
+		}
+	}
+}
\ No newline at end of file
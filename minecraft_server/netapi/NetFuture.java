@@ -0,0 +1,330 @@
+package netapi;
+
+import netapi.packet.NetPacket;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+/**
+* The answer to a request, once it arrives. It can be waited on
+* like any other future, or given handlers to run once it is done.
+* A request fails if its connection closes, it runs out of time or
+* the other end could not answer it.
+*
+* Handlers run on the thread that finishes the request: the one
+* that received the answer, the shared timer for a timeout, or the
+* caller's if the future is already done. They should be quick,
+* or hand their work on, as they hold up everything received after.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetFuture implements Future<NetPacket> {
+	/**
+	* Table of requests this is waiting in, null if it failed
+	* before it was sent
+	*
+	* @since	0.2
+	*/
+	private final NetRequestTable	table;
+	/**
+	* ID the answer carries
+	*
+	* @since	0.2
+	*/
+	private final int				id;
+	/**
+	* The answer, guarded by this
+	*
+	* @since	0.2
+	*/
+	private NetPacket				response;
+	/**
+	* Why the request failed, guarded by this
+	*
+	* @since	0.2
+	*/
+	private Exception				failure;
+	/**
+	* True once answered or failed, guarded by this
+	*
+	* @since	0.2
+	*/
+	private boolean					done;
+	/**
+	* Handlers to run once done, null once done. Guarded by this.
+	*
+	* @since	0.2
+	*/
+	private ArrayList<NetResponseHandler> handlers = new ArrayList<NetResponseHandler>(1);
+	/**
+	* Timer task failing the request when it runs out of time
+	*
+	* @since	0.2
+	*/
+	private volatile ScheduledFuture<?>	timeout;
+	
+	/**
+	* Create the future of a request
+	*
+	* @since	0.2
+	* @param	table	Table the request waits in, or null
+	* @param	id		ID the answer carries
+	*/
+	NetFuture(NetRequestTable table, int id) {
+		this.table	= table;
+		this.id		= id;
+	}
+	
+	/**
+	* Create the future of a request that could not be sent
+	*
+	* @since	0.2
+	* @param	cause	Why it could not be sent
+	* @return	A future that has already failed
+	*/
+	public static NetFuture failed(Exception cause) {
+		NetFuture future = new NetFuture(null, -1);
+		future.fail(cause);
+		
+		return future;
+	}
+	
+	//===============
+	// Access
+	//===============
+	
+	/**
+	* Get the ID the answer carries
+	*
+	* @since	0.2
+	* @return	Request ID
+	*/
+	public int getID() {
+		return id;
+	}
+	
+	/**
+	* Add a handler to run once the request is done. If already
+	* done it is run straight away.
+	*
+	* @since	0.2
+	* @param	handler		Handler to run
+	*/
+	public void addHandler(NetResponseHandler handler) {
+		synchronized(this) {
+			if(!done) {
+				handlers.add(handler);
+				return;
+			}
+		}
+		
+		run(handler);
+	}
+	
+	/**
+	* Wait for the answer
+	*
+	* @since	0.2
+	* @throws	InterruptedException	If interrupted while waiting
+	* @throws	ExecutionException		If the request failed
+	* @return	The answer
+	*/
+	public synchronized NetPacket get() throws InterruptedException, ExecutionException {
+		while(!done) {
+			wait();
+		}
+		
+		return result();
+	}
+	
+	/**
+	* Wait a while for the answer
+	*
+	* @since	0.2
+	* @throws	InterruptedException	If interrupted while waiting
+	* @throws	ExecutionException		If the request failed
+	* @throws	TimeoutException		If not done in time. The
+	*									request itself still waits.
+	* @param	wait	Longest to wait
+	* @param	unit	Unit of the wait
+	* @return	The answer
+	*/
+	public synchronized NetPacket get(long wait, TimeUnit unit)
+		throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(wait);
+		
+		while(!done) {
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0) {
+				throw new TimeoutException("No answer to request " + id + " yet");
+			}
+			
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		
+		return result();
+	}
+	
+	/**
+	* Get the answer once done
+	*
+	* @since	0.2
+	* @throws	ExecutionException	If the request failed
+	* @return	The answer
+	*/
+	private NetPacket result() throws ExecutionException {
+		if(failure instanceof CancellationException) {
+			throw (CancellationException) failure;
+		} else if(failure != null) {
+			throw new ExecutionException(failure);
+		}
+		
+		return response;
+	}
+	
+	/**
+	* Check whether the request is answered or has failed
+	*
+	* @since	0.2
+	* @return	True if done
+	*/
+	public synchronized boolean isDone() {
+		return done;
+	}
+	
+	/**
+	* Check whether the request was cancelled
+	*
+	* @since	0.2
+	* @return	True if cancelled
+	*/
+	public synchronized boolean isCancelled() {
+		return (failure instanceof CancellationException);
+	}
+	
+	/**
+	* Stop waiting for the answer. The other end still answers,
+	* but the answer is ignored.
+	*
+	* @since	0.2
+	* @param	mayInterruptIfRunning	Ignored, nothing runs
+	* @return	False if already done
+	*/
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if(!fail(new CancellationException("Request " + id + " cancelled"))) {
+			return false;
+		}
+		
+		if(table != null) {
+			table.remove(this);
+		}
+		
+		return true;
+	}
+	
+	//===============
+	// Finishing
+	//===============
+	
+	/**
+	* Set the timer task failing the request when it runs out
+	* of time
+	*
+	* @since	0.2
+	* @param	task	Timer task
+	*/
+	void setTimeout(ScheduledFuture<?> task) {
+		timeout = task;
+		
+		// Finished before the task was set
+		if(isDone()) {
+			task.cancel(false);
+		}
+	}
+	
+	/**
+	* Answer the request
+	*
+	* @since	0.2
+	* @param	packet	The answer
+	* @return	False if already done
+	*/
+	boolean complete(NetPacket packet) {
+		return finish(packet, null);
+	}
+	
+	/**
+	* Fail the request
+	*
+	* @since	0.2
+	* @param	cause	Why it failed
+	* @return	False if already done
+	*/
+	boolean fail(Exception cause) {
+		return finish(null, cause);
+	}
+	
+	/**
+	* Finish the request, waking anything waiting and running
+	* the handlers
+	*
+	* @since	0.2
+	* @param	packet	The answer, or null if failed
+	* @param	cause	Why it failed, or null if answered
+	* @return	False if already done
+	*/
+	private boolean finish(NetPacket packet, Exception cause) {
+		ArrayList<NetResponseHandler> waiting;
+		
+		synchronized(this) {
+			if(done) {
+				return false;
+			}
+			
+			done		= true;
+			response	= packet;
+			failure		= cause;
+			waiting		= handlers;
+			handlers	= null;
+			notifyAll();
+		}
+		
+		ScheduledFuture<?> task = timeout;
+		if(task != null) {
+			task.cancel(false);
+		}
+		
+		for(NetResponseHandler handler : waiting) {
+			run(handler);
+		}
+		
+		return true;
+	}
+	
+	/**
+	* Run a handler of the finished request, logging anything it
+	* throws so one broken handler cannot stop the rest
+	*
+	* @since	0.2
+	* @param	handler		Handler to run
+	*/
+	private void run(NetResponseHandler handler) {
+		try {
+			if(failure == null) {
+				handler.handle(response);
+			} else {
+				handler.failed(failure);
+			}
+		} catch (RuntimeException e) {
+			NetAPI.log.log(Level.WARNING, "(NetAPI) Response handler " + handler.getClass().getName() + " failed", e);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,236 @@
+package netapi;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+* A send queue split into a lane for each priority, see
+* NetPriority. Lanes take turns, and each turn a lane may send
+* until it has used up its share, so over time each gets the
+* connection in proportion to its weight. A lane with nothing
+* queued does not save up its share for later.
+*
+* Items can be added from any thread, but only one thread may
+* take them. An item too large to send in one go can be put back
+* at the head of its lane once part of it has been sent, so the
+* rest waits for the lane's later turns.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetLanes<T> {
+	/**
+	* Bytes a lane of weight one may send each turn
+	*
+	* @since	0.2
+	*/
+	private static final int QUANTUM = 0x1000;
+	/**
+	* Priorities, in the order of the lanes
+	*
+	* @since	0.2
+	*/
+	private static final NetPriority[] PRIORITIES = NetPriority.values();
+	/**
+	* Queued items of each priority
+	*
+	* @since	0.2
+	*/
+	private final ConcurrentLinkedQueue<T>[] lanes;
+	/**
+	* Item put back at the head of each lane, taken before the
+	* rest of the lane. Only used by the taking thread.
+	*
+	* @since	0.2
+	*/
+	private final Object[] resumed;
+	/**
+	* Bytes each lane may still send this turn. Only used by
+	* the taking thread.
+	*
+	* @since	0.2
+	*/
+	private final int[] credits;
+	/**
+	* Lane whose turn it is. Only used by the taking thread.
+	*
+	* @since	0.2
+	*/
+	private int current;
+	
+	/**
+	* Create an empty queue
+	*
+	* @since	0.2
+	*/
+	@SuppressWarnings("unchecked")
+	public NetLanes() {
+		lanes	= new ConcurrentLinkedQueue[PRIORITIES.length];
+		resumed	= new Object[PRIORITIES.length];
+		credits	= new int[PRIORITIES.length];
+		
+		for(int x = 0; x < lanes.length; x++) {
+			lanes[x] = new ConcurrentLinkedQueue<T>();
+		}
+		credits[current] = QUANTUM * PRIORITIES[current].getWeight();
+	}
+	
+	//===============
+	// Adding
+	//===============
+	
+	/**
+	* Add an item to the end of its lane
+	*
+	* @since	0.2
+	* @param	item		Item to queue
+	* @param	priority	Lane to queue it in
+	*/
+	public void add(T item, NetPriority priority) {
+		lanes[priority.ordinal()].add(item);
+	}
+	
+	/**
+	* Put an item back at the head of its lane after part of it
+	* has been sent, so the rest is sent on the lane's later turns.
+	* Only the taking thread may resume items, and only one at a
+	* time in each lane.
+	*
+	* @since	0.2
+	* @param	item		Item taken from the lane
+	* @param	priority	Lane it was taken from
+	*/
+	public void resume(T item, NetPriority priority) {
+		resumed[priority.ordinal()] = item;
+	}
+	
+	//===============
+	// Taking
+	//===============
+	
+	/**
+	* Get the item to send next without removing it
+	*
+	* @since	0.2
+	* @return	Next item, or null if every lane is empty
+	*/
+	public T peek() {
+		for(int idle = 0; idle < lanes.length; nextLane()) {
+			T head = head(current);
+			
+			if(head == null) {
+				credits[current] = 0;
+				idle++;
+			} else if(credits[current] > 0) {
+				return head;
+			} else {
+				idle = 0;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	* Remove the item returned by the last call to peek. Its size
+	* must then be charged to its lane.
+	*
+	* @since	0.2
+	* @return	The item removed
+	*/
+	@SuppressWarnings("unchecked")
+	public T remove() {
+		T item = (T) resumed[current];
+		
+		if(item == null) {
+			return lanes[current].poll();
+		}
+		
+		resumed[current] = null;
+		return item;
+	}
+	
+	/**
+	* Remove the item put back at the head of a lane, if any. Only
+	* the taking thread may remove it.
+	*
+	* @since	0.2
+	* @param	priority	Priority of the lane
+	* @return	The resumed item, or null if there is none
+	*/
+	@SuppressWarnings("unchecked")
+	public T removeResumed(NetPriority priority) {
+		T item = (T) resumed[priority.ordinal()];
+		resumed[priority.ordinal()] = null;
+		
+		return item;
+	}
+	
+	/**
+	* Charge the bytes sent for the last item taken to its lane
+	*
+	* @since	0.2
+	* @param	bytes	Bytes sent
+	*/
+	public void charge(int bytes) {
+		credits[current] -= bytes;
+	}
+	
+	/**
+	* Get the item at the head of a lane
+	*
+	* @since	0.2
+	* @param	lane	Index of the lane
+	* @return	Resumed item if any, else the oldest queued item
+	*/
+	@SuppressWarnings("unchecked")
+	private T head(int lane) {
+		T item = (T) resumed[lane];
+		
+		return (item == null) ? lanes[lane].peek() : item;
+	}
+	
+	/**
+	* Give the turn to the next lane, along with its share
+	*
+	* @since	0.2
+	*/
+	private void nextLane() {
+		current = (current + 1) % lanes.length;
+		credits[current] += QUANTUM * PRIORITIES[current].getWeight();
+	}
+	
+	//===============
+	// Access
+	//===============
+	
+	/**
+	* Get the lane of one priority, to look through or remove
+	* items from. Only the taking thread may remove items. The
+	* resumed item is not part of the lane.
+	*
+	* @since	0.2
+	* @param	priority	Priority of the lane
+	* @return	The lane
+	*/
+	public ConcurrentLinkedQueue<T> getLane(NetPriority priority) {
+		return lanes[priority.ordinal()];
+	}
+	
+	/**
+	* Check if every lane is empty. Resumed items are only seen
+	* for certain by the taking thread.
+	*
+	* @since	0.2
+	* @return	True if nothing is queued
+	*/
+	public boolean isEmpty() {
+		for(int x = 0; x < lanes.length; x++) {
+			if((resumed[x] != null) || !lanes[x].isEmpty()) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+}
\ No newline at end of file
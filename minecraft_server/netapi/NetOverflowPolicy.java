@@ -0,0 +1,40 @@
+package netapi;
+
+/**
+* What a connection does when a player is sent more than its
+* send queue can hold, because the player is not reading fast
+* enough to keep up
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public enum NetOverflowPolicy {
+	/**
+	* Drop the oldest queued packets that have not started
+	* being written
+	*
+	* @since	0.2
+	*/
+	DROP_OLDEST,
+	/**
+	* Drop the packet being sent
+	*
+	* @since	0.2
+	*/
+	DROP_NEWEST,
+	/**
+	* Drop queued packets that a later packet of the same type
+	* replaces, then the oldest if that is not enough
+	*
+	* @since	0.2
+	*/
+	COALESCE,
+	/**
+	* Close the connection, as the vanilla server does when
+	* its own send queue overflows
+	*
+	* @since	0.2
+	*/
+	DISCONNECT
+}
\ No newline at end of file
@@ -0,0 +1,22 @@
+package netapi;
+
+/**
+* Tells NetAPI which players are logged in to the game, so that
+* a NetAPI connection is only accepted for a player who is. The
+* vanilla server is used unless another directory is set, such
+* as an in-memory one for running NetAPI without the game.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public interface NetPlayerDirectory {
+	/**
+	* Find the session of a player logged in to the game
+	*
+	* @since	0.2
+	* @param	username	Player's username
+	* @return	The player's session, or null if not logged in
+	*/
+	public NetSession getSession(String username);
+}
\ No newline at end of file
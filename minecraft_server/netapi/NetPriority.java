@@ -0,0 +1,64 @@
+package netapi;
+
+/**
+* Which lane of a connection's send queue a packet waits in. Each
+* lane gets a share of the connection in proportion to its weight,
+* so bulk data never holds up small urgent packets for long, while
+* still getting through when the connection is busy.
+*
+* A packet goes in the lane of its type unless sent with a
+* priority of its own, see NetPacket.getPriority.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public enum NetPriority {
+	/**
+	* Small packets where latency matters, such as control
+	* messages
+	*
+	* @since	0.2
+	*/
+	URGENT(16),
+	/**
+	* Everything else, the default
+	*
+	* @since	0.2
+	*/
+	NORMAL(4),
+	/**
+	* Large transfers that can wait, such as uploads
+	*
+	* @since	0.2
+	*/
+	BULK(1);
+	
+	/**
+	* Share of the connection given to this lane
+	*
+	* @since	0.2
+	*/
+	private final int weight;
+	
+	/**
+	* Create a priority
+	*
+	* @since	0.2
+	* @param	weight	Share of the connection given to the lane
+	*/
+	private NetPriority(int weight) {
+		this.weight = weight;
+	}
+	
+	/**
+	* Get the share of the connection given to this lane,
+	* relative to the other lanes
+	*
+	* @since	0.2
+	* @return	Weight of the lane
+	*/
+	public int getWeight() {
+		return weight;
+	}
+}
\ No newline at end of file
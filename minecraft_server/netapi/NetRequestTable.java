@@ -0,0 +1,183 @@
+package netapi;
+
+import netapi.packet.NetPacket;
+import netapi.packet.NetRequestPacket;
+import netapi.packet.NetResponsePacket;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* The requests waiting for an answer on one connection. Each
+* request is sent inside a NetRequestPacket carrying its ID, and
+* the other end's responder answers inside a NetResponsePacket
+* carrying the same ID, so any number of requests can wait at
+* once and be answered in any order.
+*
+* Timeouts are run by one timer thread shared by every table,
+* rather than a thread per request. Answers are not dispatched,
+* as finishing a request only takes it out of the table, so they
+* are never dropped while the dispatcher is full.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetRequestTable {
+	/**
+	* Timer failing requests that run out of time
+	*
+	* @since	0.2
+	*/
+	private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+		public Thread newThread(Runnable task) {
+			Thread thread = new Thread(task, "NetAPI request timer");
+			thread.setDaemon(true);
+			
+			return thread;
+		}
+	});
+	
+	static {
+		// Most requests are answered long before they time out
+		timer.setRemoveOnCancelPolicy(true);
+	}
+	
+	/**
+	* ID of the next request
+	*
+	* @since	0.2
+	*/
+	private AtomicInteger nextID = new AtomicInteger();
+	/**
+	* Requests waiting for an answer, by ID
+	*
+	* @since	0.2
+	*/
+	private ConcurrentHashMap<Integer, NetFuture> waiting = new ConcurrentHashMap<Integer, NetFuture>();
+	/**
+	* True once the connection has closed
+	*
+	* @since	0.2
+	*/
+	private volatile boolean closed;
+	
+	//===================
+	// Requests
+	//===================
+	
+	/**
+	* Start a request, which must then be sent inside a
+	* NetRequestPacket with the future's ID
+	*
+	* @since	0.2
+	* @param	timeout		Milliseconds to wait for the answer
+	* @return	Future of the answer
+	*/
+	public NetFuture start(long timeout) {
+		final NetFuture future = new NetFuture(this, nextID.getAndIncrement());
+		waiting.put(future.getID(), future);
+		
+		// Closed while being added
+		if(closed) {
+			remove(future);
+			future.fail(new IOException("Connection closed"));
+			return future;
+		}
+		
+		future.setTimeout(timer.schedule(new Runnable() {
+			public void run() {
+				if(waiting.remove(future.getID(), future)) {
+					future.fail(new TimeoutException("No answer to request " + future.getID()));
+				}
+			}
+		}, timeout, TimeUnit.MILLISECONDS));
+		
+		return future;
+	}
+	
+	/**
+	* Stop waiting for a request
+	*
+	* @since	0.2
+	* @param	future	Future of the request
+	*/
+	void remove(NetFuture future) {
+		waiting.remove(future.getID(), future);
+	}
+	
+	/**
+	* Finish the request an answer is for, on the thread that
+	* received it
+	*
+	* @since	0.2
+	* @param	response	Received answer
+	*/
+	public void receive(NetResponsePacket response) {
+		NetFuture future = waiting.remove(response.getID());
+		
+		// Timed out or cancelled already
+		if(future == null) {
+			return;
+		} else if(response.getPayload() == null) {
+			future.fail(new IOException(response.getError()));
+		} else {
+			response.getPayload().setSender(response.getSender());
+			future.complete(response.getPayload());
+		}
+	}
+	
+	/**
+	* Fail every request still waiting, once the connection
+	* has closed
+	*
+	* @since	0.2
+	*/
+	public void close() {
+		closed = true;
+		
+		for(NetFuture future : waiting.values()) {
+			remove(future);
+			future.fail(new IOException("Connection closed"));
+		}
+	}
+	
+	//===================
+	// Answering
+	//===================
+	
+	/**
+	* Answer a request with the responder for its type. Meant to
+	* be run by the dispatcher like a handler.
+	*
+	* @since	0.2
+	* @param	request		Received request, its sender already set
+	* @return	Answer to send back
+	*/
+	public static NetResponsePacket respond(NetRequestPacket request) {
+		NetPacket		payload		= request.getPayload();
+		NetResponder	responder	= NetAPI.getResponder(payload);
+		
+		payload.setSender(request.getSender());
+		if(responder == null) {
+			return new NetResponsePacket(request.getID(), "No responder for " + payload.getClass().getName());
+		}
+		
+		try {
+			NetPacket response = responder.respond(payload);
+			if(response == null) {
+				return new NetResponsePacket(request.getID(), "No answer to " + payload.getClass().getName());
+			}
+			
+			return new NetResponsePacket(request.getID(), response);
+		} catch (RuntimeException e) {
+			NetAPI.log.warning("(NetAPI) Responder " + responder.getClass().getName() + " failed: " + e);
+			return new NetResponsePacket(request.getID(), e.toString());
+		}
+	}
+}
\ No newline at end of file
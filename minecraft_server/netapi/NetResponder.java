@@ -0,0 +1,24 @@
+package netapi;
+
+import netapi.packet.NetPacket;
+
+/**
+* A responder answers requests of a certain type, sent with
+* NetAPI.request from the other end. It is run like a handler,
+* on the thread the dispatcher picks.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public interface NetResponder {
+	/**
+	* Answer a single request. Anything thrown is sent back as a
+	* failure of the request.
+	*
+	* @since	0.2
+	* @param	request		Received request
+	* @return	Packet to answer with, or null to fail the request
+	*/
+	public NetPacket respond(NetPacket request);
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package netapi;
+
+import netapi.packet.NetPacket;
+
+/**
+* A handler that is executed once the answer to a request
+* arrives, or once the request has failed, see NetFuture
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public interface NetResponseHandler {
+	/**
+	* Handle the answer to a request
+	*
+	* @since	0.2
+	* @param	response	Received answer
+	*/
+	public void handle(NetPacket response);
+	
+	/**
+	* Handle a request that will never be answered
+	*
+	* @since	0.2
+	* @param	cause	Why it failed, a TimeoutException if it ran
+	*					out of time
+	*/
+	public void failed(Exception cause);
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package netapi;
+
+/**
+* A player's session in the game, as seen by NetAPI
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public interface NetSession {
+	/**
+	* Get the username of the player
+	*
+	* @since	0.2
+	* @return	Username
+	*/
+	public String getUsername();
+	
+	/**
+	* Called once the player's NetAPI connection is open. From
+	* then on the session must call NetAPI.playerDisconnected
+	* when the player leaves the game.
+	*
+	* @since	0.2
+	*/
+	public void connected();
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+package netapi;
+
+/**
+* A game connection that NetAPI frames can ride inside, instead
+* of NetAPI opening a socket of its own. Frames are written by the
+* game connection's own writer thread, in among the game's packets.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public interface NetTunnel {
+	/**
+	* Queue the data of one frame to be written on the game
+	* connection. The data must not be changed afterwards.
+	*
+	* @since	0.2
+	* @param	data	Array holding the frame data
+	* @param	offset	Start of the frame data, after the header
+	* @param	length	Length of the frame data
+	*/
+	public void sendFrame(byte[] data, int offset, int length);
+	
+	/**
+	* Get the number of bytes the game connection has queued
+	* but not yet written, NetAPI's and the game's alike
+	*
+	* @since	0.2
+	* @return	Bytes queued
+	*/
+	public int getQueuedBytes();
+}
\ No newline at end of file
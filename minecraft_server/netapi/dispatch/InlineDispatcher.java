@@ -0,0 +1,61 @@
+package netapi.dispatch;
+
+import netapi.NetAPI;
+import netapi.NetDispatcher;
+import netapi.NetPacketHandler;
+import netapi.packet.NetCodecRegistry;
+import netapi.packet.NetPacket;
+
+import java.util.logging.Level;
+
+/**
+* Runs handlers straight away on the thread that received the
+* packet. This is the cheapest dispatcher, but a slow handler
+* holds up every packet behind it, so it should only be used
+* with handlers that return quickly.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class InlineDispatcher implements NetDispatcher {
+	/**
+	* Run a handler on this thread
+	*
+	* @since	0.2
+	* @param	handler		Handler to run
+	* @param	packet		Packet to handle
+	* @return	True, the handler is never dropped
+	*/
+	public boolean dispatch(NetPacketHandler handler, NetPacket packet) {
+		run(handler, packet);
+		return true;
+	}
+	
+	/**
+	* Nothing to stop
+	*
+	* @since	0.2
+	*/
+	public void shutdown() {
+	}
+	
+	/**
+	* Run a handler, logging anything it throws so a broken
+	* handler cannot kill the thread running it, then let the
+	* packet be recycled
+	*
+	* @since	0.2
+	* @param	handler		Handler to run
+	* @param	packet		Packet to handle
+	*/
+	static void run(NetPacketHandler handler, NetPacket packet) {
+		try {
+			handler.handle(packet);
+		} catch (RuntimeException e) {
+			NetAPI.log.log(Level.WARNING, "(NetAPI) Handler " + handler.getClass().getName() + " failed", e);
+		} finally {
+			NetCodecRegistry.handled(packet);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+package netapi.packet;
+
+import netapi.NetPriority;
+
+/**
+* Offers the client datagrams alongside its connection, for the
+* packets that may be lost. The client sends the token in every
+* datagram, which is how the server knows which player it is from,
+* so the token only ever goes over the connection itself.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetDatagramPacket extends NetPacket {
+	/**
+	* Token sent in each datagram from the client
+	*
+	* @since	0.2
+	*/
+	private long	token;
+	
+	/**
+	* Create an offer of datagrams
+	*
+	* @since	0.2
+	* @param	token	Token the client must send
+	*/
+	public NetDatagramPacket(long token) {
+		super();
+		this.token = token;
+	}
+	
+	/**
+	* Get the token the client must send
+	*
+	* @since	0.2
+	* @return	Token
+	*/
+	public long getToken() {
+		return token;
+	}
+	
+	/**
+	* The sooner the offer arrives the sooner datagrams are used
+	*
+	* @since	0.2
+	* @return	URGENT
+	*/
+	public NetPriority getPriority() {
+		return NetPriority.URGENT;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+package netapi.packet;
+
+/**
+* A packet describing the latest state of one thing, such as an
+* entity, sent again and again as the thing changes. Each
+* connection remembers the last packet of each key it sent, and
+* after the first only the bytes that changed since are sent. The
+* packet type must have a codec registered, see NetCodecRegistry.
+*
+* Codecs that write fields at fixed places, such as ints and
+* doubles rather than strings, get the most from this, as a
+* changed field then leaves the rest of the packet where it was.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public abstract class NetDeltaPacket extends NetPacket {
+	/**
+	* Create a delta packet with no mod ID
+	*
+	* @since	0.2
+	*/
+	protected NetDeltaPacket() {
+		super();
+	}
+	
+	/**
+	* Create a delta packet with a mod ID
+	*
+	* @since	0.2
+	* @param	id		Mod ID
+	*/
+	protected NetDeltaPacket(String id) {
+		super(id);
+	}
+	
+	/**
+	* Get the key of the thing this packet describes. Packets of
+	* the same type and key are sent as changes to one another.
+	*
+	* @since	0.2
+	* @return	Key, such as an entity ID
+	*/
+	public abstract int getKey();
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+package netapi.packet;
+
+import netapi.NetPriority;
+
+import java.io.File;
+
+/**
+* A file sent from the server. The packet goes ahead of the file
+* itself, which follows in chunks written straight to disk, see
+* NetFileTable. Handlers are given the packet once the whole file
+* has arrived, with the file it was written to.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetFilePacket extends NetPacket {
+	/**
+	* ID of the file's chunks
+	*
+	* @since	0.2
+	*/
+	private int		id;
+	/**
+	* Name of the file, without any directories
+	*
+	* @since	0.2
+	*/
+	private String	name;
+	/**
+	* Length of the file
+	*
+	* @since	0.2
+	*/
+	private long	length;
+	/**
+	* Where the file was written, once it has arrived
+	*
+	* @since	0.2
+	*/
+	private transient File	file;
+	
+	/**
+	* Create an empty packet, for adding handlers
+	*
+	* @since	0.2
+	*/
+	public NetFilePacket() {
+		this(0, "", 0, null);
+	}
+	
+	/**
+	* Create a packet announcing a file
+	*
+	* @since	0.2
+	* @param	id		ID of the file's chunks
+	* @param	name	Name of the file
+	* @param	length	Length of the file
+	* @param	modID	Mod ID, or null for none
+	*/
+	public NetFilePacket(int id, String name, long length, String modID) {
+		super(modID);
+		this.id		= id;
+		this.name	= name;
+		this.length	= length;
+	}
+	
+	/**
+	* Get the ID of the file's chunks
+	*
+	* @since	0.2
+	* @return	Chunk ID
+	*/
+	public int getID() {
+		return id;
+	}
+	
+	/**
+	* Get the name of the file
+	*
+	* @since	0.2
+	* @return	File name
+	*/
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	* Get the length of the file
+	*
+	* @since	0.2
+	* @return	Length in bytes
+	*/
+	public long getLength() {
+		return length;
+	}
+	
+	/**
+	* Get where the file was written
+	*
+	* @since	0.2
+	* @return	The received file, null until it has arrived
+	*/
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	* Set where the file was written
+	*
+	* @since	0.2
+	* @param	file	The received file
+	*/
+	void setFile(File file) {
+		this.file = file;
+	}
+	
+	/**
+	* Files are large and can wait
+	*
+	* @since	0.2
+	* @return	BULK
+	*/
+	public NetPriority getPriority() {
+		return NetPriority.BULK;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,214 @@
+package netapi.packet;
+
+import netapi.NetProtocol;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+* The files being received on one connection. A file is announced
+* by a NetFilePacket, then follows in chunks, each a frame marked
+* with NetProtocol.FILE_FLAG holding the file's ID and the next
+* part of it. Chunks are written to disk as they arrive, so a file
+* is never held whole, and the packet is handed over once the last
+* chunk is written.
+*
+* Files are only accepted once given a directory to write them
+* to. The name sent is stripped of any directories, and the file
+* is written under another name until complete.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetFileTable {
+	/**
+	* Directory files are written to, null to refuse files
+	*
+	* @since	0.2
+	*/
+	private File		directory;
+	/**
+	* Files being received, by ID
+	*
+	* @since	0.2
+	*/
+	private HashMap<Integer, Receiving> receiving = new HashMap<Integer, Receiving>();
+	
+	//===================
+	// Writing
+	//===================
+	
+	/**
+	* Encode the start of a chunk, its header and file ID. The
+	* chunk's part of the file follows straight after.
+	*
+	* @since	0.2
+	* @param	id		ID of the file
+	* @param	length	Length of the part of the file that follows
+	* @return	Start of the chunk, flipped and ready for writing
+	*/
+	public static ByteBuffer writeChunk(int id, int length) {
+		NetOutput out = new NetOutput(16);
+		out.writeInt(0);
+		out.writeVarInt(id);
+		
+		ByteBuffer chunk = out.getBuffer();
+		chunk.flip();
+		chunk.putInt(0, NetProtocol.FILE_FLAG | (chunk.limit() - NetProtocol.HEADER_LENGTH + length));
+		
+		return chunk;
+	}
+	
+	//===================
+	// Reading
+	//===================
+	
+	/**
+	* Set the directory received files are written to
+	*
+	* @since	0.2
+	* @param	directory	Directory to write to, null to refuse files
+	*/
+	public void setDirectory(File directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	* Start receiving a file
+	*
+	* @since	0.2
+	* @throws	IOException	If files are refused, or the file is bad
+	*						or cannot be created
+	* @param	packet	Packet announcing the file
+	* @return	The packet if the file is empty and so already
+	*			complete, otherwise null
+	*/
+	public NetFilePacket start(NetFilePacket packet) throws IOException {
+		if(directory == null) {
+			throw new IOException("Files are not accepted on this connection");
+		}
+		
+		// Never let the other end pick the directory
+		String name = new File(packet.getName()).getName();
+		if(name.equals("") || name.equals(".") || name.equals("..")) {
+			throw new IOException("Bad file name " + packet.getName());
+		} else if(packet.getLength() < 0) {
+			throw new IOException("Bad file length " + packet.getLength());
+		} else if(receiving.containsKey(packet.getID())) {
+			throw new IOException("File " + packet.getID() + " is already being received");
+		}
+		
+		directory.mkdirs();
+		Receiving file	= new Receiving();
+		file.packet		= packet;
+		file.target		= new File(directory, name);
+		file.part		= new File(directory, name + "." + packet.getID() + ".part");
+		file.channel	= new FileOutputStream(file.part).getChannel();
+		
+		if(packet.getLength() == 0) {
+			return finish(file);
+		}
+		
+		receiving.put(packet.getID(), file);
+		return null;
+	}
+	
+	/**
+	* Write a chunk to its file, after the chunk header
+	*
+	* @since	0.2
+	* @throws	IOException	If the chunk is bad or cannot be written
+	* @param	in		Input holding only the chunk
+	* @return	Packet announcing the file once its last chunk has
+	*			been written, otherwise null
+	*/
+	public NetFilePacket read(NetInput in) throws IOException {
+		int id			= in.readVarInt();
+		Receiving file	= receiving.get(id);
+		
+		if(file == null) {
+			throw new IOException("Chunk of a file never announced");
+		}
+		
+		ByteBuffer data = in.getBuffer();
+		if(data.remaining() > (file.packet.getLength() - file.written)) {
+			throw new IOException("Chunk runs past the end of its file");
+		}
+		
+		while(data.hasRemaining()) {
+			file.written += file.channel.write(data);
+		}
+		
+		if(file.written < file.packet.getLength()) {
+			return null;
+		}
+		
+		receiving.remove(id);
+		return finish(file);
+	}
+	
+	/**
+	* Close a file that has fully arrived and give it its name
+	*
+	* @since	0.2
+	* @throws	IOException	If the file cannot be renamed
+	* @param	file	File received
+	* @return	Packet announcing the file
+	*/
+	private NetFilePacket finish(Receiving file) throws IOException {
+		file.channel.close();
+		
+		// Renaming over an existing file fails on some systems
+		if(file.target.exists()) {
+			file.target.delete();
+		}
+		
+		if(!file.part.renameTo(file.target)) {
+			throw new IOException("Could not rename " + file.part + " to " + file.target);
+		}
+		
+		file.packet.setFile(file.target);
+		return file.packet;
+	}
+	
+	/**
+	* Give up on every file still being received, once the
+	* connection has closed
+	*
+	* @since	0.2
+	*/
+	public void close() {
+		for(Receiving file : receiving.values()) {
+			try {
+				file.channel.close();
+			} catch (IOException e) {
+				// Deleting anyway
+			}
+			
+			file.part.delete();
+		}
+		
+		receiving.clear();
+	}
+	
+	/**
+	* A file being received
+	* No encapsulation since it's just a convenience class
+	*
+	* @author	Clinton Alexander
+	* @version	0.2
+	* @since	0.2
+	*/
+	private static class Receiving {
+		public NetFilePacket	packet;
+		public File				target;
+		public File				part;
+		public FileChannel		channel;
+		public long				written;
+	}
+}
\ No newline at end of file
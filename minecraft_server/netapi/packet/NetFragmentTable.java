@@ -0,0 +1,216 @@
+package netapi.packet;
+
+import netapi.NetConfig;
+import netapi.NetProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+* The frames being sent or received in fragments on one direction
+* of one connection. A frame longer than the fragment size is cut
+* into fragments, each sent as a frame of its own marked with
+* NetProtocol.FRAGMENT_FLAG, so frames queued after it can be
+* written between its fragments rather than waiting for all of it.
+* Each fragment carries the ID and length of its frame, and the
+* other end holds them until the last one arrives.
+*
+* Frames written between the fragments of a frame are read first
+* at the other end, so must not use strings only it has sent. Its
+* strings count as not sent until its last fragment is cut off.
+*
+* The other end only holds so much at once. A frame is only split
+* while the frames already in fragments leave room for it, and is
+* otherwise sent whole, so both ends must use the same limit.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetFragmentTable {
+	/**
+	* Strings sent on the same connection
+	*
+	* @since	0.2
+	*/
+	private NetStringTable	strings;
+	/**
+	* ID of the next frame sent in fragments
+	*
+	* @since	0.2
+	*/
+	private int		nextID;
+	/**
+	* Bytes of the frames being sent in fragments, which the other
+	* end is holding or about to hold
+	*
+	* @since	0.2
+	*/
+	private int		sendingBytes;
+	/**
+	* Mod ID and sender of each frame being sent in fragments, by ID
+	*
+	* @since	0.2
+	*/
+	private HashMap<Integer, String[]> sending = new HashMap<Integer, String[]>();
+	/**
+	* Frames being received in fragments, by ID
+	*
+	* @since	0.2
+	*/
+	private HashMap<Integer, ByteBuffer> receiving = new HashMap<Integer, ByteBuffer>();
+	/**
+	* Bytes held for the frames being received
+	*
+	* @since	0.2
+	*/
+	private int		receivingBytes;
+	
+	/**
+	* Create a table for one direction of a connection
+	*
+	* @since	0.2
+	* @param	strings	Strings sent in the same direction
+	*/
+	public NetFragmentTable(NetStringTable strings) {
+		this.strings = strings;
+	}
+	
+	//===================
+	// Writing
+	//===================
+	
+	/**
+	* Start sending a frame in fragments, if it is longer than
+	* the fragment size and the other end has room for it
+	*
+	* @since	0.2
+	* @param	frame	Whole frame, header first. Moved past its
+	*					header if it is to be split.
+	* @param	modID	Mod ID of the packet in the frame
+	* @param	sender	Sender of the packet in the frame
+	* @return	ID of the frame's fragments, or -1 to send it whole
+	*/
+	public int start(ByteBuffer frame, String modID, String sender) {
+		int size	= NetConfig.getFragmentBytes();
+		int length	= frame.remaining() - NetProtocol.HEADER_LENGTH;
+		
+		if((size <= 0) || (length <= size)) {
+			return -1;
+		} else if((sendingBytes + length) > NetConfig.getMaxReassemblyBytes()) {
+			return -1;
+		}
+		
+		sendingBytes += length;
+		frame.position(frame.position() + NetProtocol.HEADER_LENGTH);
+		
+		strings.setSent(modID, false);
+		strings.setSent(sender, false);
+		sending.put(nextID, new String[] {modID, sender});
+		
+		return nextID++;
+	}
+	
+	/**
+	* Cut the next fragment off a frame being sent in fragments
+	*
+	* @since	0.2
+	* @param	frame	Frame being split, positioned at the first
+	*					byte not yet cut off and moved past the fragment
+	* @param	id		ID given to the frame by start
+	* @return	Header of the fragment and a view of its data, to
+	*			be written in that order
+	*/
+	public ByteBuffer[] write(ByteBuffer frame, int id) {
+		int total	= frame.limit() - NetProtocol.HEADER_LENGTH;
+		int size	= NetConfig.getFragmentBytes();
+		int length	= ((size <= 0) || (size > frame.remaining())) ? frame.remaining() : size;
+		
+		ByteBuffer data = frame.duplicate();
+		data.limit(data.position() + length);
+		frame.position(data.limit());
+		
+		NetOutput out = new NetOutput(16);
+		out.writeInt(0);
+		out.writeVarInt(id);
+		out.writeVarInt(total);
+		
+		ByteBuffer header = out.getBuffer();
+		header.flip();
+		header.putInt(0, NetProtocol.FRAGMENT_FLAG | (header.limit() - NetProtocol.HEADER_LENGTH + length));
+		
+		if(!frame.hasRemaining()) {
+			// Read by the other end before anything written after
+			String[] sent = sending.remove(id);
+			strings.setSent(sent[0], true);
+			strings.setSent(sent[1], true);
+			
+			sendingBytes -= total;
+		}
+		
+		return new ByteBuffer[] {header, data};
+	}
+	
+	//===================
+	// Reading
+	//===================
+	
+	/**
+	* Read a fragment, after its header
+	*
+	* @since	0.2
+	* @throws	IOException	If the fragment is bad or there is
+	*						no room to hold its frame
+	* @param	in		Input holding only the fragment
+	* @return	Data of the whole frame once its last fragment
+	*			has arrived, otherwise null
+	*/
+	public ByteBuffer read(NetInput in) throws IOException {
+		int id		= in.readVarInt();
+		int total	= in.readVarInt();
+		
+		if((total <= 0) || (total > NetProtocol.MAX_FRAME_LENGTH)) {
+			throw new IOException("Bad fragmented frame length " + total);
+		}
+		
+		ByteBuffer frame = receiving.get(id);
+		if(frame == null) {
+			if((receivingBytes + total) > NetConfig.getMaxReassemblyBytes()) {
+				throw new IOException("Fragmented frames over the reassembly limit");
+			}
+			
+			frame = ByteBuffer.allocate(total);
+			receiving.put(id, frame);
+			receivingBytes += total;
+		} else if(frame.capacity() != total) {
+			throw new IOException("Fragment does not match the length of its frame");
+		}
+		
+		ByteBuffer data = in.getBuffer();
+		if(data.remaining() > frame.remaining()) {
+			throw new IOException("Fragment runs past the end of its frame");
+		}
+		
+		frame.put(data);
+		if(frame.hasRemaining()) {
+			return null;
+		}
+		
+		receiving.remove(id);
+		receivingBytes -= total;
+		frame.flip();
+		
+		return frame;
+	}
+	
+	/**
+	* Get the bytes held for frames still being received
+	*
+	* @since	0.2
+	* @return	Bytes held
+	*/
+	public int getReceivingBytes() {
+		return receivingBytes;
+	}
+}
\ No newline at end of file
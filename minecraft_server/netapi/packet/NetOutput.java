@@ -0,0 +1,259 @@
+package netapi.packet;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+* A growable buffer that packet codecs write into
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetOutput {
+	/**
+	* The buffer being written to
+	*
+	* @since	0.2
+	*/
+	private ByteBuffer	buffer;
+	
+	/**
+	* Create an output with the given starting capacity
+	*
+	* @since	0.2
+	* @param	capacity	Starting capacity in bytes
+	*/
+	public NetOutput(int capacity) {
+		buffer = ByteBuffer.allocate(Math.max(16, capacity));
+	}
+	
+	/**
+	* Create an output with a small starting capacity
+	*
+	* @since	0.2
+	*/
+	public NetOutput() {
+		this(256);
+	}
+	
+	//===============
+	// Buffer access
+	//===============
+	
+	/**
+	* Get the underlying buffer, positioned after the last
+	* byte written
+	*
+	* @since	0.2
+	* @return	The buffer
+	*/
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+	
+	/**
+	* Get the number of bytes written
+	*
+	* @since	0.2
+	* @return	Bytes written
+	*/
+	public int size() {
+		return buffer.position();
+	}
+	
+	/**
+	* Discard everything written so the output can be reused
+	*
+	* @since	0.2
+	*/
+	public void reset() {
+		buffer.clear();
+	}
+	
+	/**
+	* Make sure there is room for a number of bytes
+	*
+	* @since	0.2
+	* @param	bytes	Bytes about to be written
+	*/
+	private void ensure(int bytes) {
+		if(buffer.remaining() < bytes) {
+			int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+			ByteBuffer grown = ByteBuffer.allocate(capacity);
+			buffer.flip();
+			grown.put(buffer);
+			buffer = grown;
+		}
+	}
+	
+	//===============
+	// Writers
+	//===============
+	
+	/**
+	* Write a single byte
+	*
+	* @since	0.2
+	* @param	value	Byte to write
+	*/
+	public void writeByte(int value) {
+		ensure(1);
+		buffer.put((byte) value);
+	}
+	
+	/**
+	* Write a boolean as a single byte
+	*
+	* @since	0.2
+	* @param	value	Boolean to write
+	*/
+	public void writeBoolean(boolean value) {
+		writeByte(value ? 1 : 0);
+	}
+	
+	/**
+	* Write a two byte short
+	*
+	* @since	0.2
+	* @param	value	Short to write
+	*/
+	public void writeShort(int value) {
+		ensure(2);
+		buffer.putShort((short) value);
+	}
+	
+	/**
+	* Write a four byte int
+	*
+	* @since	0.2
+	* @param	value	Int to write
+	*/
+	public void writeInt(int value) {
+		ensure(4);
+		buffer.putInt(value);
+	}
+	
+	/**
+	* Write an eight byte long
+	*
+	* @since	0.2
+	* @param	value	Long to write
+	*/
+	public void writeLong(long value) {
+		ensure(8);
+		buffer.putLong(value);
+	}
+	
+	/**
+	* Write a float
+	*
+	* @since	0.2
+	* @param	value	Float to write
+	*/
+	public void writeFloat(float value) {
+		ensure(4);
+		buffer.putFloat(value);
+	}
+	
+	/**
+	* Write a double
+	*
+	* @since	0.2
+	* @param	value	Double to write
+	*/
+	public void writeDouble(double value) {
+		ensure(8);
+		buffer.putDouble(value);
+	}
+	
+	/**
+	* Write an int in one to five bytes, smaller values
+	* taking fewer bytes. Negative values take five.
+	*
+	* @since	0.2
+	* @param	value	Int to write
+	*/
+	public void writeVarInt(int value) {
+		ensure(5);
+		while((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+	
+	/**
+	* Write a long in one to ten bytes, smaller values
+	* taking fewer bytes
+	*
+	* @since	0.2
+	* @param	value	Long to write
+	*/
+	public void writeVarLong(long value) {
+		ensure(10);
+		while((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+	
+	/**
+	* Write an array of bytes with its length
+	*
+	* @since	0.2
+	* @param	bytes	Bytes to write
+	*/
+	public void writeBytes(byte[] bytes) {
+		writeVarInt(bytes.length);
+		writeRaw(bytes, 0, bytes.length);
+	}
+	
+	/**
+	* Write bytes without their length
+	*
+	* @since	0.2
+	* @param	bytes	Bytes to write
+	* @param	offset	Start of the bytes to write
+	* @param	length	Number of bytes to write
+	*/
+	public void writeRaw(byte[] bytes, int offset, int length) {
+		ensure(length);
+		buffer.put(bytes, offset, length);
+	}
+	
+	/**
+	* Write a string as UTF-8 with its length. Null is
+	* written as an empty string.
+	*
+	* @since	0.2
+	* @param	value	String to write
+	*/
+	public void writeString(String value) {
+		if((value == null) || (value.length() == 0)) {
+			writeVarInt(0);
+			return;
+		}
+		
+		try {
+			writeBytes(value.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			// Every JVM has UTF-8
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	* Write a whole packet, including its codec ID, so it
+	* can be nested inside another packet
+	*
+	* @since	0.2
+	* @throws	IOException	If the packet cannot be written
+	* @param	packet	Packet to write
+	*/
+	public void writePacket(NetPacket packet) throws IOException {
+		NetCodecRegistry.encode(packet, this);
+	}
+}
\ No newline at end of file
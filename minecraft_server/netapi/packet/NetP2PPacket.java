@@ -70,4 +70,14 @@ public class NetP2PPacket extends NetPacket {
 	public NetPacket getPayload() {
 		return payload;
 	}
+	
+	/**
+	* A P2P packet may be lost if its payload may
+	*
+	* @since	0.2
+	* @return	True unless the payload may be lost
+	*/
+	public boolean isReliable() {
+		return payload.isReliable();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package netapi.packet;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* A codec that reuses packet instances instead of creating a new
+* packet for everything received. Worth using for packet types
+* sent many times a second, where the garbage from new packets
+* adds up.
+*
+* A received packet is given back to the codec once every handler
+* of it has returned, after which it is filled with the data of
+* another packet. Handlers of recycled packets must copy anything
+* they want to keep rather than holding on to the packet.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public abstract class NetRecyclingCodec<T extends NetPacket> implements NetCodec<T> {
+	/**
+	* Packets waiting to be reused
+	*
+	* @since	0.2
+	*/
+	private ConcurrentLinkedQueue<T>	idle		= new ConcurrentLinkedQueue<T>();
+	/**
+	* Number of packets waiting to be reused
+	*
+	* @since	0.2
+	*/
+	private AtomicInteger				idleCount	= new AtomicInteger();
+	/**
+	* Most packets kept waiting to be reused
+	*
+	* @since	0.2
+	*/
+	private int							maxIdle;
+	
+	/**
+	* Create a recycling codec
+	*
+	* @since	0.2
+	* @param	maxIdle		Most packets kept waiting to be reused
+	*/
+	protected NetRecyclingCodec(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+	
+	/**
+	* Create a new empty packet when none are waiting to be reused
+	*
+	* @since	0.2
+	* @return	New packet
+	*/
+	protected abstract T create();
+	
+	/**
+	* Fill a packet with the data read from the input, replacing
+	* everything it held before
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is bad
+	* @param	packet	Packet to fill
+	* @param	in		Input to read from
+	*/
+	protected abstract void decodeInto(T packet, NetInput in) throws IOException;
+	
+	/**
+	* Read a packet into a reused instance
+	*
+	* @since	0.2
+	* @throws	IOException	If the data is bad
+	* @param	in		Input to read from
+	* @return	The packet
+	*/
+	public final T decode(NetInput in) throws IOException {
+		T packet = idle.poll();
+		
+		if(packet == null) {
+			packet = create();
+		} else {
+			idleCount.decrementAndGet();
+		}
+		
+		decodeInto(packet, in);
+		packet.recycler = this;
+		
+		return packet;
+	}
+	
+	/**
+	* Take back a packet that every handler has finished with
+	*
+	* @since	0.2
+	* @param	packet	Packet to reuse
+	*/
+	void recycle(T packet) {
+		// Past the limit the packet is left for the garbage collector
+		if(idleCount.incrementAndGet() <= maxIdle) {
+			idle.add(packet);
+		} else {
+			idleCount.decrementAndGet();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,99 @@
+package netapi.packet;
+
+import netapi.NetPriority;
+
+/**
+* The answer to a request, carrying the ID of the request, see
+* NetRequestTable. It holds either the packet the responder
+* answered with or why the request failed.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetResponsePacket extends NetPacket {
+	/**
+	* ID of the request answered
+	*
+	* @since	0.2
+	*/
+	private int			id;
+	/**
+	* The answer, null if the request failed
+	*
+	* @since	0.2
+	*/
+	private NetPacket	payload;
+	/**
+	* Why the request failed, null if answered
+	*
+	* @since	0.2
+	*/
+	private String		error;
+	
+	/**
+	* Create an answer to a request
+	*
+	* @since	0.2
+	* @param	id		ID of the request
+	* @param	packet	The answer
+	*/
+	public NetResponsePacket(int id, NetPacket packet) {
+		super(packet.getModID());
+		this.id			= id;
+		this.payload	= packet;
+	}
+	
+	/**
+	* Create the failure of a request
+	*
+	* @since	0.2
+	* @param	id		ID of the request
+	* @param	error	Why it failed
+	*/
+	public NetResponsePacket(int id, String error) {
+		super();
+		this.id		= id;
+		this.error	= error;
+	}
+	
+	/**
+	* Get the ID of the request answered
+	*
+	* @since	0.2
+	* @return	Request ID
+	*/
+	public int getID() {
+		return id;
+	}
+	
+	/**
+	* Get the answer
+	*
+	* @since	0.2
+	* @return	The answer, null if the request failed
+	*/
+	public NetPacket getPayload() {
+		return payload;
+	}
+	
+	/**
+	* Get why the request failed
+	*
+	* @since	0.2
+	* @return	Reason for the failure, null if answered
+	*/
+	public String getError() {
+		return error;
+	}
+	
+	/**
+	* An answer goes with the priority of the packet inside
+	*
+	* @since	0.2
+	* @return	Priority of the payload, or NORMAL for a failure
+	*/
+	public NetPriority getPriority() {
+		return (payload == null) ? NetPriority.NORMAL : payload.getPriority();
+	}
+}
\ No newline at end of file
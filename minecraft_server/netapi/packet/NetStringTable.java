@@ -0,0 +1,198 @@
+package netapi.packet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+* The strings already sent in one direction of one connection.
+* The first time a short string is sent it goes in full along with
+* its index, and after that as its index alone. Mod IDs and sender
+* names are the same few strings over and over, so they shrink to
+* a byte each.
+*
+* Indices are handed out by each connection's table in the order
+* strings are first sent on it, so what one client sends only takes
+* up indices on the connections it is sent to, and they are gone
+* with the connection. Strings must be read in the order they were
+* written, so a frame written with a table must never be dropped.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetStringTable {
+	/**
+	* Most strings given an index on a connection. Strings first
+	* sent once they are all used are sent in full every time.
+	*
+	* @since	0.2
+	*/
+	public static final int MAX_STRINGS			= 4096;
+	/**
+	* Longest string given an index
+	*
+	* @since	0.2
+	*/
+	public static final int MAX_STRING_LENGTH	= 64;
+	/**
+	* Tag of a string sent in full without an index
+	*
+	* @since	0.2
+	*/
+	private static final int LITERAL			= 0;
+	/**
+	* Tag of a string sent in full after its index
+	*
+	* @since	0.2
+	*/
+	private static final int DEFINE				= 1;
+	/**
+	* Tag of the string at index zero, later indices follow
+	*
+	* @since	0.2
+	*/
+	private static final int FIRST_INDEX		= 2;
+	/**
+	* Index of every string given one on this connection
+	*
+	* @since	0.2
+	*/
+	private HashMap<String, Integer>	indices	= new HashMap<String, Integer>();
+	/**
+	* Indices sent on this connection
+	*
+	* @since	0.2
+	*/
+	private BitSet		sent	= new BitSet();
+	/**
+	* Strings received on this connection, by index
+	*
+	* @since	0.2
+	*/
+	private String[]	strings	= new String[16];
+	
+	//===================
+	// Indices
+	//===================
+	
+	/**
+	* Get the index of a string, giving it one if there are
+	* any left
+	*
+	* @since	0.2
+	* @param	value	String to look up
+	* @return	The index, or -1 if the string is too long or
+	*			every index is used
+	*/
+	private int indexOf(String value) {
+		Integer index = indices.get(value);
+		
+		if(index != null) {
+			return index;
+		} else if((value.length() > MAX_STRING_LENGTH) || (indices.size() >= MAX_STRINGS)) {
+			return -1;
+		}
+		
+		index = indices.size();
+		indices.put(value, index);
+		
+		return index;
+	}
+	
+	/**
+	* Get the index of a string if it has been sent on this
+	* connection, so can be sent as its index alone
+	*
+	* @since	0.2
+	* @param	value	String to look up, null for empty
+	* @return	The index, or -1 if it has not been sent
+	*/
+	public int getSentIndex(String value) {
+		Integer index = indices.get((value == null) ? "" : value);
+		
+		return ((index != null) && sent.get(index)) ? index : -1;
+	}
+	
+	/**
+	* Mark a string as sent or not on this connection. A string
+	* not sent goes in full the next time it is written.
+	*
+	* @since	0.2
+	* @param	value	String to mark, null for empty
+	* @param	isSent	True if the other end has been sent it
+	*/
+	public void setSent(String value, boolean isSent) {
+		Integer index = indices.get((value == null) ? "" : value);
+		
+		if(index != null) {
+			sent.set(index, isSent);
+		}
+	}
+	
+	//===================
+	// Writing/ Reading
+	//===================
+	
+	/**
+	* Write a string, as its index if it has been sent before
+	*
+	* @since	0.2
+	* @param	out		Output to write to
+	* @param	value	String to write, null is sent as empty
+	*/
+	public void write(NetOutput out, String value) {
+		if(value == null) {
+			value = "";
+		}
+		
+		int index = indexOf(value);
+		if(index < 0) {
+			out.writeVarInt(LITERAL);
+			out.writeString(value);
+		} else if(sent.get(index)) {
+			out.writeVarInt(FIRST_INDEX + index);
+		} else {
+			sent.set(index);
+			out.writeVarInt(DEFINE);
+			out.writeVarInt(index);
+			out.writeString(value);
+		}
+	}
+	
+	/**
+	* Read a string written by the other end's table
+	*
+	* @since	0.2
+	* @throws	IOException	If the tag or index is bad
+	* @param	in		Input to read from
+	* @return	The string
+	*/
+	public String read(NetInput in) throws IOException {
+		int tag = in.readVarInt();
+		
+		if(tag == LITERAL) {
+			return in.readString();
+		} else if(tag == DEFINE) {
+			int index = in.readVarInt();
+			if((index < 0) || (index >= MAX_STRINGS)) {
+				throw new IOException("Bad string index " + index);
+			}
+			
+			if(index >= strings.length) {
+				strings = Arrays.copyOf(strings, Math.min(MAX_STRINGS, Math.max(index + 1, strings.length * 2)));
+			}
+			
+			strings[index] = in.readString();
+			return strings[index];
+		}
+		
+		int index = tag - FIRST_INDEX;
+		if((index < 0) || (index >= strings.length) || (strings[index] == null)) {
+			throw new IOException("Bad string index " + index);
+		}
+		
+		return strings[index];
+	}
+}
\ No newline at end of file
@@ -0,0 +1,95 @@
+package netapi.server;
+
+import netapi.NetAPI;
+import netapi.NetPlayerDirectory;
+import netapi.NetSession;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+* A directory of players kept in memory, with players logged
+* in and out by hand. Lets NetAPI run without the game, for
+* load testing and the like.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class MemoryPlayerDirectory implements NetPlayerDirectory {
+	/**
+	* Sessions of players logged in
+	*
+	* @since	0.2
+	*/
+	private ConcurrentHashMap<String, MemorySession> sessions = new ConcurrentHashMap<String, MemorySession>();
+	
+	/**
+	* Log a player in, binding their NetAPI handshake if it has
+	* already arrived
+	*
+	* @since	0.2
+	* @param	username	Player's username
+	*/
+	public void login(String username) {
+		MemorySession session = new MemorySession(username);
+		
+		sessions.put(username, session);
+		NetAPI.playerLoggedIn(session);
+	}
+	
+	/**
+	* Log a player out, closing their NetAPI connection
+	*
+	* @since	0.2
+	* @param	username	Player's username
+	*/
+	public void logout(String username) {
+		if(sessions.remove(username) != null) {
+			NetAPI.playerDisconnected(username);
+		}
+	}
+	
+	/**
+	* Find a logged in player
+	*
+	* @since	0.2
+	* @param	username	Player's username
+	* @return	The player's session, or null if not logged in
+	*/
+	public NetSession getSession(String username) {
+		return sessions.get(username);
+	}
+	
+	/**
+	* A player logged in to the directory
+	*
+	* @author	Clinton Alexander
+	* @since	0.2
+	*/
+	private static class MemorySession implements NetSession {
+		/**
+		* Username of the player
+		*
+		* @since	0.2
+		*/
+		private String username;
+		
+		/**
+		* Create a session
+		*
+		* @since	0.2
+		* @param	username	Username of the player
+		*/
+		public MemorySession(String username) {
+			this.username = username;
+		}
+		
+		public String getUsername() {
+			return username;
+		}
+		
+		public void connected() {
+			// logout tells NetAPI when the player leaves
+		}
+	}
+}
\ No newline at end of file
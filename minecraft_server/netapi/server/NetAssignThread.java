@@ -1,124 +1,174 @@
 package netapi.server;
 
 import netapi.NetAPI;
-import netapi.NetPacketThread;
+import netapi.NetConfig;
+import netapi.NetPlayerDirectory;
+import netapi.NetSession;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.net.Socket;
-import java.util.Map;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.net.SocketException;
-
-import net.minecraft.src.EntityPlayerMP;
-import net.minecraft.src.NetworkManager;
 
 /**
 * NetAPI thread for assigning joining players
-* to their NetAPI socket
+* to their NetAPI socket. A player is bound as soon as both their
+* handshake and their login have arrived, whichever comes second,
+* and the thread itself only closes handshakes that have waited
+* too long for a login.
 *
 * @author	Clinton Alexander
-* @version	0.1
+* @version	0.2
 * @since	0.1
 */
 public class NetAssignThread extends Thread {
 	/**
-	* Hashmap of player objects
+	* Handshaken players by username, bound or still waiting for
+	* their login. Guarded by this.
 	*
 	* @since	0.1
 	*/
-	private ConcurrentHashMap<String, NetPlayer> playerTable = new ConcurrentHashMap<String, NetPlayer>();
+	private HashMap<String, NetPlayer> playerTable = new HashMap<String, NetPlayer>();
+	/**
+	* Sessions of logged in players by username. Guarded by this.
+	*
+	* @since	0.2
+	*/
+	private HashMap<String, NetSession> sessions = new HashMap<String, NetSession>();
+	/**
+	* Handshakes in order of when they expire
+	*
+	* @since	0.2
+	*/
+	private DelayQueue<NetPlayer> expiries = new DelayQueue<NetPlayer>();
 	/**
 	* True while alive
 	*
 	* @since	0.1
 	*/
-	private boolean alive = true;
+	private volatile boolean alive = true;
+	/**
+	* The selector threads connections are shared between
+	*
+	* @since	0.2
+	*/
+	private NetSelectorThread[] selectorThreads;
+	/**
+	* Index of the next selector thread to use
+	*
+	* @since	0.2
+	*/
+	private int nextSelector = 0;
+	/**
+	* The thread offering connections datagrams, null if
+	* they are not offered
+	*
+	* @since	0.2
+	*/
+	private NetDatagramThread datagramThread;
 	
 	/**
 	* Create a new net accept 
 	*
 	* @since	0.1
-	* @param	server	Server instance
+	* @param	selectorThreads	Threads to service connections with
+	* @param	datagramThread	Thread to offer connections datagrams,
+	*							or null to offer none
 	*/
-	public NetAssignThread() {
+	public NetAssignThread(NetSelectorThread[] selectorThreads, NetDatagramThread datagramThread) {
+		super("NetAPI assign thread");
+		this.selectorThreads	= selectorThreads;
+		this.datagramThread		= datagramThread;
 	}
 	
 	//=====================
-	// Updaters
+	// Player Management
 	//=====================
 	
 	/**
-	* Update and attempt to assign all users
+	* Assign a player with given username and channel, binding
+	* them straight away if they have already logged in
 	*
 	* @since	0.1
+	* @param	username	Username we are adding
+	* @param	channel		Channel for given username
 	*/
-	private void updateAllUsers() {
-		// Scan over each current attempted login 
-		// If the login matches a player, st them up
-		// to be able to send net commands.
-		for(Map.Entry<String, NetPlayer> entry : playerTable.entrySet()) {
-			EntityPlayerMP		player;
-			String				name 	= entry.getKey();
-			NetPlayer			store	= entry.getValue();
-			
-			if(store.player == null) {				
-				NetAPI.log.info("(NetAPI) Checking player " + name);
-				if((player = NetAPI.getPlayer(name)) != null) {
-					store.player = player;
-					addNewPlayer(store);
-				}
+	public synchronized void assign(String username, SocketChannel channel) {
+		if(!alive) {
+			try {
+				channel.close();
+			} catch (IOException e) { }
+			return;
+		}
+		
+		NetPlayer store = new NetPlayer(username, channel, System.nanoTime()
+			+ TimeUnit.MILLISECONDS.toNanos(NetConfig.getHandshakeTimeout()));
+		NetPlayer old	= playerTable.put(username, store);
+		
+		if(old != null) {
+			NetAPI.log.info("(NetAPI) Replacing earlier handshake of " + username);
+			closePlayer(old);
+		}
+		
+		NetSession session = sessions.get(username);
+		if(session == null) {
+			// Players who logged in before the callback was set up
+			NetPlayerDirectory directory = NetAPI.getPlayerDirectory();
+			if(directory != null) {
+				session = directory.getSession(username);
 			}
 		}
+		
+		if(session != null) {
+			store.session = session;
+			addNewPlayer(store);
+		} else {
+			expiries.add(store);
+		}
 	}
 	
-	//=====================
-	// Player Management
-	//=====================
-	
 	/**
-	* Assign a player with given username and socket
+	* Note a player who has logged in, binding their handshake
+	* if it has already arrived
 	*
-	* @since	0.1
-	* @param	username	Username we are adding
-	* @param	socket		Socket for given username
-	* @param	ois			Object input stream for the given
-	* 						user and socket
-	*/
-	public void assign(String username, Socket socket, ObjectInputStream ois) {
-		NetPlayer store = new NetPlayer();
-		store.socket 	= socket;
-		store.ois		= ois;
-		playerTable.put(username, store);
+	* @since	0.2
+	* @param	session		Session of the player
+	*/
+	public synchronized void playerLoggedIn(NetSession session) {
+		String		username	= session.getUsername();
+		NetPlayer	store		= playerTable.get(username);
+		
+		sessions.put(username, session);
+		
+		if((store != null) && (store.session == null)) {
+			store.session = session;
+			addNewPlayer(store);
+		}
 	}
 	
 	/**
 	* Add a new user to the player list if they are valid
 	*
 	* @since	0.1
-	* @param	name		Name of player
-	* @param	sock		Socket connecting to
-	* @param	ois			Input stream for player
+	* @param	player		Player details
 	*/
 	private void addNewPlayer(NetPlayer player) {
-		NetworkManager netMan = player.player.playerNetServerHandler.netManager;
-		
 		// Check if they are from same address, if not, remove the
 		// player in case of a mix up/ hack (n.b: this is integrity code)
-		if(player.socket.getInetAddress().equals(player.socket.getInetAddress())) {
-			String username = player.player.username;
+		if(player.channel.socket().getInetAddress().equals(player.channel.socket().getInetAddress())) {
+			String username = player.session.getUsername();
 			NetAPI.log.info("(NetAPI) Authenticated " + username);
-			try {
-				netMan.setUsername(username);
-				NetAPI.log.info("(NetAPI) Creating packet threads");
-				player.sendThread 		= NetAPI.getNewNetThread(player.socket, username, true);
-				player.receiveThread	= NetAPI.getNewNetThread(player.socket, username, player.ois);
-				
-				NetAPI.log.info("(NetAPI) Starting packet threads");
-				player.sendThread.start();
-				player.receiveThread.start();
-			} catch (IOException e) {
-				NetAPI.log.warning("(NetAPI) Could not connect player: " + username + ": " + e.getMessage());
+			player.session.connected();
+			NetAPI.log.info("(NetAPI) Creating connection");
+			player.connection = NetAPI.getNewConnection(player.channel, username);
+			
+			selectorThreads[nextSelector].register(player.connection);
+			nextSelector = (nextSelector + 1) % selectorThreads.length;
+			
+			if(datagramThread != null) {
+				datagramThread.offer(player.connection);
 			}
 		}
 	}
@@ -129,18 +179,47 @@ public class NetAssignThread extends Thread {
 	* @since	0.1
 	* @param	username	Name of player
 	*/
-	public void playerDisconnected(String username) {
-		if(playerTable.containsKey(username)) {
+	public synchronized void playerDisconnected(String username) {
+		sessions.remove(username);
+		
+		NetPlayer store = playerTable.remove(username);
+		if(store != null) {
 			NetAPI.log.info("(NetAPI) Disconnecting user " + username);
-			NetPlayer store = playerTable.get(username);
-			
+			closePlayer(store);
+		}
+	}
+	
+	/**
+	* Close a handshake that is still waiting for its login
+	*
+	* @since	0.2
+	* @param	store	Player details
+	*/
+	private synchronized void expire(NetPlayer store) {
+		// Anything bound or replaced since is left alone
+		if(store.session != null) {
+			return;
+		}
+		
+		if(playerTable.get(store.username) == store) {
+			NetAPI.log.info("(NetAPI) " + store.username + " never logged in, closing their handshake");
+			playerTable.remove(store.username);
+			closePlayer(store);
+		}
+	}
+	/**
+	* Close a player's channel and connection
+	*
+	* @since	0.2
+	* @param	store	Player details
+	*/
+	private void closePlayer(NetPlayer store) {
+		if(store.connection != null) {
+			store.connection.close();
+		} else {
 			try {
-				store.socket.close();
+				store.channel.close();
 			} catch (IOException e) { }
-			store.sendThread.stopThread();
-			store.receiveThread.stopThread();
-			
-			playerTable.remove(username);
 		}
 	}
 	
@@ -149,19 +228,17 @@ public class NetAssignThread extends Thread {
 	//=====================
 	
 	/**
-	* Run the thread and start accepting clients
+	* Run the thread, closing handshakes as they expire
 	*
 	* @since	0.1
 	*/
 	public void run() {
 		NetAPI.log.info("(NetAPI) User assignment starting");
 		while(alive) {
-			updateAllUsers();
-			
 			try {
-				Thread.sleep(150);
+				expire(expiries.take());
 			} catch (InterruptedException e) {
-				// Psh
+				// Woken by stopThread
 			}
 		}
 	}
@@ -171,36 +248,49 @@ public class NetAssignThread extends Thread {
 	*
 	* @since	0.1
 	*/
-	public void stopThread() {
+	public synchronized void stopThread() {
 		alive = false;
+		interrupt();
 		
-		for(Map.Entry<String, NetPlayer> entry : playerTable.entrySet()) {
-			NetPlayer store = entry.getValue();
-			
-			try {
-				store.socket.close();
-			} catch (IOException e) { }
-			store.sendThread.stopThread();
-			store.receiveThread.stopThread();
+		for(NetPlayer store : playerTable.values()) {
+			closePlayer(store);
 		}
 		
-		playerTable = null;
+		playerTable.clear();
+		sessions.clear();
+		expiries.clear();
 	}
 
 	/**
-	* NetAPI player details
+	* NetAPI player details, ordered by when their handshake
+	* expires
 	* No encapsulation since it's just a convenience class
 	*
 	* @author	Clinton Alexander
-	* @version	0.1
+	* @version	0.2
 	* @since	0.1
 	*/
-	private class NetPlayer {
-		public EntityPlayerMP		player;
-		public Socket 				socket;
-		public NetPacketThread		sendThread;
-		public NetPacketThread		receiveThread;
+	private static class NetPlayer implements Delayed {
+		public String				username;
+		public NetSession			session;
+		public SocketChannel		channel;
+		public NetConnection		connection;
+		public long					deadline;
+		
+		public NetPlayer(String username, SocketChannel channel, long deadline) {
+			this.username	= username;
+			this.channel	= channel;
+			this.deadline	= deadline;
+		}
 		
-		public ObjectInputStream 	ois;
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+		
+		public int compareTo(Delayed other) {
+			long diff = deadline - ((NetPlayer) other).deadline;
+			
+			return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+		}
 	}
 }
\ No newline at end of file
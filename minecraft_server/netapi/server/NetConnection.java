@@ -0,0 +1,1086 @@
+package netapi.server;
+
+import netapi.NetBufferPool;
+import netapi.NetConfig;
+import netapi.NetFile;
+import netapi.NetFrame;
+import netapi.NetLanes;
+import netapi.NetOverflowPolicy;
+import netapi.NetPriority;
+import netapi.NetProtocol;
+import netapi.packet.NetCodecContext;
+import netapi.packet.NetFileTable;
+import netapi.packet.NetInput;
+import netapi.packet.NetPacket;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* A single player's NetAPI connection. Reading and writing is
+* done by a shared selector thread rather than a pair of
+* threads per player, so the connection itself only holds the
+* queued frames and the frame currently being read.
+*
+* Frames wait in a lane for their priority, see NetLanes, until
+* the selector thread takes them to be written. A frame too large
+* to write in one go is written a fragment at a time, and waits at
+* the head of its lane between fragments so the other lanes still
+* get their turns. A file is sent the same way, its chunks handed
+* from the file straight to the channel rather than through a buffer.
+*
+* Frames may be shared with other connections, but which strings
+* and delta packets have been sent is this connection's own. Each
+* frame is checked against them by the selector thread just before
+* it is first written, so the send context only ever sees frames
+* that are certain to be sent.
+*
+* A frame holding a packet that may be lost skips the queue and
+* is sent as a datagram once the client has said hello over them,
+* see NetDatagramThread.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetConnection extends NetPlayerConnection {
+	/**
+	* Size of the buffer frames are read into. Larger frames
+	* get a larger buffer until they have been read.
+	*
+	* @since	0.2
+	*/
+	private static final int READ_BUFFER_SIZE = 0x2000;
+	/**
+	* Most frames sent in a single write
+	*
+	* @since	0.2
+	*/
+	private static final int MAX_GATHER = 64;
+	/**
+	* Frames waiting to be taken for writing, by priority
+	*
+	* @since	0.2
+	*/
+	private NetLanes<QueuedFrame> sendLanes = new NetLanes<QueuedFrame>();
+	/**
+	* Frames taken from the lanes and encoded for this connection,
+	* in the order they must be written. Only used by the selector
+	* thread.
+	*
+	* @since	0.2
+	*/
+	private ArrayDeque<QueuedFrame> writeQueue = new ArrayDeque<QueuedFrame>();
+	/**
+	* Queued frames sent with a coalescing key that a newer frame
+	* with the same key can still replace
+	*
+	* @since	0.2
+	*/
+	private ConcurrentHashMap<Object, QueuedFrame> keyedFrames = new ConcurrentHashMap<Object, QueuedFrame>();
+	/**
+	* True while this connection is waiting on the selector
+	* thread to write its queue
+	*
+	* @since	0.2
+	*/
+	private AtomicBoolean		writeRequested	= new AtomicBoolean(false);
+	/**
+	* True once the queue has been released after closing
+	*
+	* @since	0.2
+	*/
+	private AtomicBoolean		released		= new AtomicBoolean(false);
+	/**
+	* Time in nanoseconds the requested write is due, after
+	* the coalescing window has passed
+	*
+	* @since	0.2
+	*/
+	private volatile long		writeDeadline;
+	/**
+	* Bytes of the frames waiting to be written
+	*
+	* @since	0.2
+	*/
+	private AtomicInteger		queuedBytes	= new AtomicInteger();
+	/**
+	* True from when the queue passes the high watermark until
+	* it drains to the low watermark
+	*
+	* @since	0.2
+	*/
+	private volatile boolean	backedUp;
+	/**
+	* True when the selector thread should drop frames to bring
+	* the queue back under the high watermark
+	*
+	* @since	0.2
+	*/
+	private volatile boolean	trimRequested;
+	/**
+	* Frames gathered into a single write. Only used by the
+	* selector thread.
+	*
+	* @since	0.2
+	*/
+	private ByteBuffer[]		gather	= new ByteBuffer[MAX_GATHER];
+	/**
+	* What has been sent to the client. Only used by the selector thread.
+	*
+	* @since	0.2
+	*/
+	private NetCodecContext		sendContext		= new NetCodecContext();
+	/**
+	* What has been received from the client. Only used by the
+	* selector thread.
+	*
+	* @since	0.2
+	*/
+	private NetCodecContext		receiveContext	= new NetCodecContext();
+	/**
+	* Pooled buffer holding data read but not yet decoded, null
+	* until the first read. Only used by the selector thread.
+	*
+	* @since	0.2
+	*/
+	private ByteBuffer			readBuffer;
+	/**
+	* Input decoding frames straight out of the read buffer
+	*
+	* @since	0.2
+	*/
+	private NetInput			readInput;
+	/**
+	* The channel we are connected to
+	*
+	* @since	0.2
+	*/
+	private SocketChannel		channel;
+	/**
+	* The selector thread servicing this connection
+	*
+	* @since	0.2
+	*/
+	private volatile NetSelectorThread	selectorThread;
+	/**
+	* Key of this connection on its selector, null until registered
+	*
+	* @since	0.2
+	*/
+	private SelectionKey		key;
+	/**
+	* The thread sending datagrams, null unless offered them
+	*
+	* @since	0.2
+	*/
+	private volatile NetDatagramThread	datagramThread;
+	/**
+	* Token the client was offered for datagrams
+	*
+	* @since	0.2
+	*/
+	private long				datagramToken;
+	/**
+	* Address the client's datagrams come from, null until
+	* it has said hello
+	*
+	* @since	0.2
+	*/
+	private volatile SocketAddress	datagramAddress;
+	/**
+	* Time in nanoseconds of the client's last hello
+	*
+	* @since	0.2
+	*/
+	private volatile long		datagramHello;
+	
+	/**
+	* Create a connection on an accepted channel
+	*
+	* @since	0.2
+	* @param	channel		The channel we are connected to
+	*/
+	public NetConnection(SocketChannel channel) {
+		this.channel = channel;
+	}
+	
+	//===============
+	// Setters/ Adders
+	//===============
+	
+	/**
+	* Send a frame that has already been encoded with a coalescing
+	* key, in the lane of the given priority. A frame replacing a
+	* queued frame takes its place, and so its lane.
+	*
+	* @since	0.2
+	* @param	frame		Encoded frame
+	* @param	key			Coalescing key, or null to always queue
+	* @param	priority	Lane to queue the frame in, or null for
+	*						the priority of its packet type
+	*/
+	public void send(NetFrame frame, Object key, NetPriority priority) {
+		if(!isAlive()) {
+			return;
+		} else if(sendDatagram(frame)) {
+			return;
+		} else if(priority == null) {
+			priority = frame.getPriority();
+		}
+		
+		if(key != null) {
+			QueuedFrame queued = keyedFrames.get(key);
+			
+			// Already queued, so a write is already on its way
+			if((queued != null) && replace(queued, frame)) {
+				return;
+			}
+		}
+		
+		queue(frame, null, key, priority);
+	}
+	
+	/**
+	* Send a frame as a datagram, if it holds a packet that may
+	* be lost and the client has said hello recently. A client
+	* that gives up on datagrams stops saying hello, so once its
+	* last hello is too old packets go on the connection again.
+	*
+	* @since	0.2
+	* @param	frame	Encoded frame
+	* @return	True if sent, false to send it on the connection
+	*/
+	private boolean sendDatagram(NetFrame frame) {
+		SocketAddress address = datagramAddress;
+		if(address == null) {
+			return false;
+		} else if((System.nanoTime() - datagramHello) > (NetConfig.getDatagramTimeout() * 1000000L)) {
+			return false;
+		}
+		
+		ByteBuffer datagram = frame.getDatagram();
+		
+		return (datagram != null) && datagramThread.send(datagram, address);
+	}
+	
+	/**
+	* Send a file in the lane of the given priority. The file is
+	* retained until sent, so one file can be sent on many
+	* connections. Only its announcement counts towards the
+	* watermarks, as the file itself stays on disk until written.
+	*
+	* @since	0.2
+	* @param	file		File to send
+	* @param	priority	Lane to queue the file in, or null for
+	*						the priority of its announcement
+	*/
+	public void sendFile(NetFile file, NetPriority priority) {
+		if(!isAlive()) {
+			return;
+		} else if(priority == null) {
+			priority = file.getFrame().getPriority();
+		}
+		
+		queue(file.getFrame(), file, null, priority);
+	}
+	
+	/**
+	* Check whether files can be sent on this connection
+	*
+	* @since	0.2
+	* @return	True, files are sent straight from disk
+	*/
+	public boolean canSendFiles() {
+		return true;
+	}
+	
+	/**
+	* Queue a frame, or the announcement of a file, in a lane and
+	* ask the selector thread to write it
+	*
+	* @since	0.2
+	* @param	frame		Encoded frame
+	* @param	file		File the frame announces, or null
+	* @param	key			Coalescing key, or null to always queue
+	* @param	priority	Lane to queue the frame in
+	*/
+	private void queue(NetFrame frame, NetFile file, Object key, NetPriority priority) {
+		if((queuedBytes.get() + frame.length()) > NetConfig.getHighWaterBytes()) {
+			backedUp = true;
+			if(!overflow()) {
+				return;
+			}
+		}
+		
+		QueuedFrame added = new QueuedFrame(frame.retain(), key, priority);
+		added.file = (file == null) ? null : file.retain();
+		sendLanes.add(added, priority);
+		if(key != null) {
+			keyedFrames.put(key, added);
+		}
+		
+		int queued		= queuedBytes.addAndGet(frame.length());
+		int maxBatch	= NetConfig.getMaxBatchBytes();
+		
+		NetSelectorThread thread = selectorThread;
+		if(thread == null) {
+			return;
+		} else if(writeRequested.compareAndSet(false, true)) {
+			// Neither a full batch nor an urgent frame is worth waiting on
+			long window = ((queued >= maxBatch) || (priority == NetPriority.URGENT)) ? 0 : NetConfig.getCoalesceWindow();
+			writeDeadline = System.nanoTime() + (window * 1000000L);
+			thread.requestWrite(this);
+		} else if(trimRequested || (priority == NetPriority.URGENT)
+				|| ((queued >= maxBatch) && ((queued - frame.length()) < maxBatch))) {
+			flush();
+		}
+	}
+	
+	/**
+	* Send an encoded frame only if this player is keeping up
+	*
+	* @since	0.2
+	* @param	frame	Encoded frame
+	* @return	False if the player is backed up and the frame was not sent
+	*/
+	public boolean trySend(NetFrame frame) {
+		if(!isAlive() || backedUp) {
+			return false;
+		} else if((queuedBytes.get() + frame.length()) > NetConfig.getHighWaterBytes()) {
+			backedUp = true;
+			return false;
+		}
+		
+		send(frame);
+		return true;
+	}
+	
+	/**
+	* Replace the frame of a queued frame, unless it has started
+	* being written or been dropped
+	*
+	* @since	0.2
+	* @param	queued	Queued frame to replace
+	* @param	frame	Newer frame
+	* @return	True if replaced
+	*/
+	private boolean replace(QueuedFrame queued, NetFrame frame) {
+		NetFrame older;
+		
+		synchronized(queued) {
+			if((queued.data != null) || queued.removed) {
+				return false;
+			}
+			
+			older			= queued.frame;
+			queued.frame	= frame.retain();
+		}
+		
+		queuedBytes.addAndGet(frame.length() - older.length());
+		older.release();
+		
+		return true;
+	}
+	
+	/**
+	* Apply the overflow policy to a frame that does not fit
+	* under the high watermark
+	*
+	* @since	0.2
+	* @return	True if the frame should be queued anyway
+	*/
+	private boolean overflow() {
+		switch(NetConfig.getOverflowPolicy()) {
+			case DISCONNECT:
+				log.warning("(NetAPI) Send queue of " + getSenderName() + " overflowed, disconnecting");
+				close();
+				return false;
+			case DROP_NEWEST:
+				dropped();
+				return false;
+			default:
+				// The selector thread may be writing the oldest frame,
+				// so only it can drop queued frames
+				trimRequested = true;
+				return true;
+		}
+	}
+	
+	/**
+	* Write everything queued as soon as possible, without
+	* waiting out the coalescing window
+	*
+	* @since	0.2
+	*/
+	public void flush() {
+		NetSelectorThread thread = selectorThread;
+		
+		// Frames already taken from the lanes are being written
+		if(isAlive() && (thread != null) && !sendLanes.isEmpty()) {
+			writeRequested.set(true);
+			writeDeadline = System.nanoTime();
+			thread.requestWrite(this);
+		}
+	}
+	
+	/**
+	* Check if any frames are waiting to be written. Only used
+	* by the selector thread.
+	*
+	* @since	0.2
+	* @return	True if frames are queued
+	*/
+	private boolean hasQueued() {
+		return (!writeQueue.isEmpty() || !sendLanes.isEmpty());
+	}
+	
+	/**
+	* Check if this player has too much queued to keep up. Set
+	* at the high watermark and cleared at the low watermark.
+	*
+	* @since	0.2
+	* @return	True if backed up
+	*/
+	public boolean isBackedUp() {
+		return backedUp;
+	}
+	
+	/**
+	* Get the channel of this connection
+	*
+	* @since	0.2
+	* @return	Channel we are connected to
+	*/
+	public SocketChannel getChannel() {
+		return channel;
+	}
+	
+	//===============
+	// Selector callbacks
+	//===============
+	
+	/**
+	* Set the selector thread that will service this connection
+	*
+	* @since	0.2
+	* @param	thread	Selector thread
+	*/
+	void setSelectorThread(NetSelectorThread thread) {
+		selectorThread = thread;
+	}
+	
+	/**
+	* Set the key of this connection once registered
+	*
+	* @since	0.2
+	* @param	key		Selection key
+	*/
+	void setKey(SelectionKey key) {
+		this.key = key;
+	}
+	
+	/**
+	* Offer this connection datagrams
+	*
+	* @since	0.2
+	* @param	thread	Thread sending datagrams
+	* @param	token	Token the client was offered
+	*/
+	void setDatagrams(NetDatagramThread thread, long token) {
+		datagramToken	= token;
+		datagramThread	= thread;
+		
+		// Closed while being offered
+		if(!isAlive()) {
+			thread.remove(token);
+		}
+	}
+	
+	/**
+	* Set where the client's datagrams come from, each time it
+	* says hello. Only the port may differ from the connection's,
+	* so a hello sent by anyone else who has seen the token cannot
+	* take the player's datagrams.
+	*
+	* @since	0.2
+	* @param	address	Address of the client's datagrams
+	* @return	False if the hello came from another host and
+	*			was ignored
+	*/
+	boolean setDatagramAddress(SocketAddress address) {
+		InetAddress host = channel.socket().getInetAddress();
+		if((host == null) || !host.equals(((InetSocketAddress) address).getAddress())) {
+			return false;
+		}
+		
+		datagramHello	= System.nanoTime();
+		datagramAddress	= address;
+		
+		return true;
+	}
+	
+	/**
+	* Get where the client's datagrams come from
+	*
+	* @since	0.2
+	* @return	Address of the client's datagrams, null until
+	*			it has said hello
+	*/
+	SocketAddress getDatagramAddress() {
+		return datagramAddress;
+	}
+	
+	/**
+	* Get the time the requested write is due
+	*
+	* @since	0.2
+	* @return	Deadline from System.nanoTime()
+	*/
+	long getWriteDeadline() {
+		return writeDeadline;
+	}
+	
+	/**
+	* Check whether this connection has been registered yet
+	*
+	* @since	0.2
+	* @return	True if registered with a selector
+	*/
+	boolean isRegistered() {
+		return (key != null);
+	}
+	
+	/**
+	* Read every frame that has arrived without blocking
+	*
+	* @since	0.2
+	* @throws	IOException	If the channel fails or is closed
+	*/
+	void readPackets() throws IOException {
+		if(isAlive() && (readBuffer == null)) {
+			setReadBuffer(NetBufferPool.acquire(READ_BUFFER_SIZE));
+		}
+		
+		int read;
+		// decodeFrames always leaves room, so a read of nothing
+		// means the channel has been drained
+		while(isAlive() && ((read = channel.read(readBuffer)) != 0)) {
+			if(read < 0) {
+				throw new EOFException("End of stream");
+			}
+			
+			decodeFrames();
+		}
+	}
+	
+	/**
+	* Decode and handle every whole frame in the read buffer,
+	* then make room for the rest of the next one
+	*
+	* @since	0.2
+	* @throws	IOException	If a frame is bad
+	*/
+	private void decodeFrames() throws IOException {
+		readBuffer.flip();
+		int needed = NetProtocol.HEADER_LENGTH;
+		
+		while(isAlive() && (readBuffer.remaining() >= NetProtocol.HEADER_LENGTH)) {
+			int start	= readBuffer.position();
+			int filled	= readBuffer.limit();
+			int header	= readBuffer.getInt(start);
+			int length	= NetProtocol.readHeader(header);
+			int end		= start + NetProtocol.HEADER_LENGTH + length;
+			
+			if(end > filled) {
+				needed = NetProtocol.HEADER_LENGTH + length;
+				break;
+			}
+			
+			// Decoded in place, the input only sees this frame
+			readBuffer.position(start + NetProtocol.HEADER_LENGTH);
+			readBuffer.limit(end);
+			NetPacket packet = NetProtocol.decodeFrame(header, readInput, receiveContext);
+			readBuffer.limit(filled);
+			readBuffer.position(end);
+			
+			if(packet != null) {
+				receive(packet);
+			}
+		}
+		
+		if(needed > readBuffer.capacity()) {
+			// Too large for this buffer, move to one that fits
+			ByteBuffer larger = NetBufferPool.acquire(needed);
+			larger.put(readBuffer);
+			NetBufferPool.release(readBuffer);
+			setReadBuffer(larger);
+		} else if(!readBuffer.hasRemaining() && (readBuffer.capacity() > READ_BUFFER_SIZE)) {
+			// Done with a large frame, go back to the usual size
+			NetBufferPool.release(readBuffer);
+			setReadBuffer(NetBufferPool.acquire(READ_BUFFER_SIZE));
+		} else {
+			readBuffer.compact();
+		}
+	}
+	
+	/**
+	* Start reading into a new buffer
+	*
+	* @since	0.2
+	* @param	buffer	Buffer to read into, ready to be filled
+	*/
+	private void setReadBuffer(ByteBuffer buffer) {
+		buffer.limit(buffer.capacity());
+		
+		readBuffer	= buffer;
+		readInput	= new NetInput(buffer);
+	}
+	
+	/**
+	* Write as many queued frames as the channel will take
+	* without blocking, gathering up to a batch of frames into
+	* each write. Frames are taken from the lanes in turn, and
+	* once taken are written in the order they were taken.
+	* Fragments count as frames of their own. A file chunk ends
+	* a write, its part of the file following the gathered frames.
+	*
+	* @since	0.2
+	* @throws	IOException	If the channel fails
+	*/
+	void writePackets() throws IOException {
+		writeRequested.set(false);
+		int maxBatch	= NetConfig.getMaxBatchBytes();
+		int fragment	= NetConfig.getFragmentBytes();
+		
+		if(trimRequested) {
+			trimQueue();
+		}
+		
+		while(isAlive() && hasQueued()) {
+			int count = 0;
+			int batch = 0;
+			QueuedFrame chunk = null;
+			
+			// Only this thread removes frames, so the head stays put
+			for(QueuedFrame queued : writeQueue) {
+				if((count >= (gather.length - 1)) || (chunk != null)) {
+					break;
+				}
+				
+				count = gather(queued, count);
+				batch += remaining(queued);
+				chunk = (queued.file == null) ? null : queued;
+			}
+			
+			QueuedFrame queued;
+			while((count < (gather.length - 1)) && (chunk == null) && ((queued = sendLanes.peek()) != null)) {
+				int length = (queued.data == null) ? queued.frame.length()
+					: ((queued.file == null) ? queued.data.remaining() : getChunkBytes());
+				if((fragment > 0) && (length > fragment)) {
+					length = fragment;
+				}
+				
+				if((count > 0) && ((batch + length) > maxBatch)) {
+					break;
+				}
+				
+				queued = take(sendLanes.remove());
+				
+				sendLanes.charge(remaining(queued));
+				writeQueue.add(queued);
+				
+				count = gather(queued, count);
+				batch += remaining(queued);
+				chunk = (queued.file == null) ? null : queued;
+			}
+			
+			channel.write(gather, 0, count);
+			boolean full = gather[count - 1].hasRemaining();
+			Arrays.fill(gather, 0, count, null);
+			
+			if(!full && (chunk != null)) {
+				chunk.fileOffset += chunk.file.transferTo(chunk.fileOffset, chunk.fileEnd - chunk.fileOffset, channel);
+				full = (chunk.fileOffset < chunk.fileEnd);
+			}
+			
+			while(((queued = writeQueue.peek()) != null) && (remaining(queued) == 0)) {
+				writeQueue.poll();
+				
+				// The frame is done with once its last fragment is written
+				if(!queued.partial) {
+					queuedBytes.addAndGet(-queued.frame.length());
+					queued.frame.release();
+					
+					if(queued.file != null) {
+						queued.file.release();
+					}
+				}
+			}
+			
+			if(backedUp && (queuedBytes.get() <= NetConfig.getLowWaterBytes())) {
+				backedUp = false;
+			}
+			
+			if(full) {
+				// Socket buffer is full, wait until it drains
+				key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+				return;
+			}
+		}
+		
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+	}
+	
+	/**
+	* Add a frame or fragment to the buffers of the next write
+	*
+	* @since	0.2
+	* @param	queued	Frame or fragment to write
+	* @param	count	Buffers already gathered
+	* @return	Buffers gathered with it added
+	*/
+	private int gather(QueuedFrame queued, int count) {
+		if(queued.header != null) {
+			gather[count++] = queued.header;
+		}
+		
+		gather[count++] = queued.data;
+		return count;
+	}
+	
+	/**
+	* Get the bytes of a frame, fragment or file chunk still to
+	* be written
+	*
+	* @since	0.2
+	* @param	queued	Frame taken from the lanes
+	* @return	Bytes left
+	*/
+	private static int remaining(QueuedFrame queued) {
+		int left = queued.data.remaining();
+		
+		if(queued.header != null) {
+			left += queued.header.remaining();
+		}
+		
+		return left + (int) (queued.fileEnd - queued.fileOffset);
+	}
+	
+	/**
+	* Get the most bytes of a file sent in one chunk
+	*
+	* @since	0.2
+	* @return	Chunk size, the fragment size if set
+	*/
+	private static int getChunkBytes() {
+		int fragment = NetConfig.getFragmentBytes();
+		
+		return (fragment > 0) ? fragment : NetConfig.getMaxBatchBytes();
+	}
+	
+	/**
+	* Take the next frame or fragment to write from a frame just
+	* removed from the lanes. A frame longer than the fragment size
+	* is put back at the head of its lane until its last fragment
+	* has been taken, as is a file until its last chunk has.
+	*
+	* @since	0.2
+	* @throws	IOException	If the frame's body is bad
+	* @param	queued	Frame removed from the lanes
+	* @return	The frame itself or its next fragment or chunk,
+	*			with the data to write
+	*/
+	private QueuedFrame take(QueuedFrame queued) throws IOException {
+		if(queued.data == null) {
+			// From here on the frame must be sent, or the contexts
+			// at each end will disagree
+			synchronized(queued) {
+				queued.data = queued.frame.encode(sendContext);
+			}
+			
+			if(queued.key != null) {
+				keyedFrames.remove(queued.key, queued);
+			}
+			
+			if(queued.file != null) {
+				return announce(queued);
+			}
+			
+			queued.fragmentID = queued.frame.split(sendContext, queued.data);
+			if(queued.fragmentID < 0) {
+				return queued;
+			}
+		} else if(queued.file != null) {
+			return takeChunk(queued);
+		}
+		
+		ByteBuffer[] parts		= sendContext.getFragments().write(queued.data, queued.fragmentID);
+		QueuedFrame fragment	= new QueuedFrame(queued.frame, null, queued.priority);
+		fragment.header			= parts[0];
+		fragment.data			= parts[1];
+		fragment.partial		= queued.data.hasRemaining();
+		
+		if(fragment.partial) {
+			sendLanes.resume(queued, queued.priority);
+		}
+		
+		return fragment;
+	}
+	
+	/**
+	* Take the announcement of a file to write ahead of its chunks
+	*
+	* @since	0.2
+	* @param	queued	File just encoded
+	* @return	The announcement
+	*/
+	private QueuedFrame announce(QueuedFrame queued) {
+		// An empty file is done with once announced
+		if(queued.file.length() == 0) {
+			return queued;
+		}
+		
+		QueuedFrame announcement	= new QueuedFrame(queued.frame, null, queued.priority);
+		announcement.data			= queued.data;
+		announcement.partial		= true;
+		
+		sendLanes.resume(queued, queued.priority);
+		return announcement;
+	}
+	
+	/**
+	* Take the next chunk of a file being sent
+	*
+	* @since	0.2
+	* @param	queued	File removed from the lanes
+	* @return	The chunk, its start and the region of the file
+	*			to follow it
+	*/
+	private QueuedFrame takeChunk(QueuedFrame queued) {
+		int length = (int) Math.min(getChunkBytes(), queued.file.length() - queued.fileOffset);
+		
+		QueuedFrame chunk	= new QueuedFrame(queued.frame, null, queued.priority);
+		chunk.data			= NetFileTable.writeChunk(queued.file.getID(), length);
+		chunk.file			= queued.file;
+		chunk.fileOffset	= queued.fileOffset;
+		chunk.fileEnd		= queued.fileOffset + length;
+		
+		queued.fileOffset	= chunk.fileEnd;
+		chunk.partial		= (queued.fileOffset < queued.file.length());
+		
+		if(chunk.partial) {
+			sendLanes.resume(queued, queued.priority);
+		}
+		
+		return chunk;
+	}
+	
+	/**
+	* Drop frames still waiting in the lanes until the queue is
+	* back under the high watermark. Frames taken from the lanes
+	* must still be written, including the rest of a frame being
+	* sent in fragments. Bulk frames are dropped first and urgent
+	* frames last.
+	*
+	* @since	0.2
+	*/
+	private void trimQueue() {
+		trimRequested = false;
+		int high = NetConfig.getHighWaterBytes();
+		NetPriority[] priorities = NetPriority.values();
+		
+		if(NetConfig.getOverflowPolicy() == NetOverflowPolicy.COALESCE) {
+			// Find the newest frame of each type, the older ones
+			// are not needed once it arrives
+			HashMap<Class, QueuedFrame> newest = new HashMap<Class, QueuedFrame>();
+			for(int x = 0; x < priorities.length; x++) {
+				for(QueuedFrame queued : sendLanes.getLane(priorities[x])) {
+					newest.put(queued.frame.getType(), queued);
+				}
+			}
+			
+			for(int x = priorities.length - 1; x >= 0; x--) {
+				Iterator<QueuedFrame> it = sendLanes.getLane(priorities[x]).iterator();
+				while((queuedBytes.get() > high) && it.hasNext()) {
+					QueuedFrame queued = it.next();
+					
+					// Every file is different, so none stands in for another
+					if((queued.file == null) && (newest.get(queued.frame.getType()) != queued)) {
+						it.remove();
+						dropFrame(queued);
+					}
+				}
+			}
+		}
+		
+		for(int x = priorities.length - 1; x >= 0; x--) {
+			Iterator<QueuedFrame> it = sendLanes.getLane(priorities[x]).iterator();
+			while((queuedBytes.get() > high) && it.hasNext()) {
+				QueuedFrame queued = it.next();
+				
+				it.remove();
+				dropFrame(queued);
+			}
+		}
+	}
+	
+	/**
+	* Release a frame removed from the queue without being written
+	*
+	* @since	0.2
+	* @param	queued	Removed frame
+	*/
+	private void dropFrame(QueuedFrame queued) {
+		releaseFrame(queued);
+		dropped();
+	}
+	
+	/**
+	* Release a frame removed from the queue, so it can no
+	* longer be replaced
+	*
+	* @since	0.2
+	* @param	queued	Removed frame
+	*/
+	private void releaseFrame(QueuedFrame queued) {
+		synchronized(queued) {
+			queued.removed = true;
+		}
+		
+		if(queued.key != null) {
+			keyedFrames.remove(queued.key, queued);
+		}
+		
+		queuedBytes.addAndGet(-queued.frame.length());
+		queued.frame.release();
+		
+		if(queued.file != null) {
+			queued.file.release();
+		}
+	}
+	
+	//===============
+	// Connection control methods
+	//===============
+	
+	/**
+	* Close this connection
+	*
+	* @since	0.2
+	*/
+	public void close() {
+		super.close();
+		datagramAddress = null;
+		
+		NetDatagramThread datagrams = datagramThread;
+		if(datagrams != null) {
+			datagrams.remove(datagramToken);
+		}
+		
+		if(key != null) {
+			key.cancel();
+		}
+		
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Closing anyway
+		}
+		
+		// Only the selector thread takes frames from the lanes, so
+		// only it can release them
+		NetSelectorThread thread = selectorThread;
+		if((thread == null) || (Thread.currentThread() == thread)) {
+			releaseQueued();
+		} else {
+			thread.requestRelease(this);
+		}
+	}
+	
+	/**
+	* Release every frame still queued once closed, and the read
+	* buffer. Run by the selector thread, or by the thread closing
+	* the connection if it was never registered, and only once.
+	*
+	* @since	0.2
+	*/
+	void releaseQueued() {
+		if(!released.compareAndSet(false, true)) {
+			return;
+		}
+		
+		QueuedFrame queued;
+		NetPriority[] priorities = NetPriority.values();
+		for(int x = 0; x < priorities.length; x++) {
+			while((queued = sendLanes.getLane(priorities[x]).poll()) != null) {
+				releaseFrame(queued);
+			}
+			
+			if((queued = sendLanes.removeResumed(priorities[x])) != null) {
+				releaseFrame(queued);
+			}
+		}
+		
+		while((queued = writeQueue.poll()) != null) {
+			if(!queued.partial) {
+				releaseFrame(queued);
+			}
+		}
+		
+		if(readBuffer != null) {
+			NetBufferPool.release(readBuffer);
+			readBuffer = null;
+		}
+	}
+	
+	/**
+	* A frame waiting in the send queue, with this connection's
+	* own view of its data once about to be written. Until then
+	* a frame with a coalescing key can be replaced, so the frame
+	* is guarded by this while data is null. Each fragment of a
+	* frame sent in fragments is written as one of these too, its
+	* header followed by a view of its part of the frame, and all
+	* but the last of them partial. A file is queued as its
+	* announcement, and each chunk written as the start of the
+	* chunk followed by its region of the file.
+	* No encapsulation since it's just a convenience class
+	*
+	* @author	Clinton Alexander
+	* @version	0.2
+	* @since	0.2
+	*/
+	private static class QueuedFrame {
+		public NetFrame				frame;
+		public ByteBuffer			header;
+		public ByteBuffer			data;
+		public final Object			key;
+		public final NetPriority	priority;
+		public boolean				removed;
+		public int					fragmentID	= -1;
+		public boolean				partial;
+		public NetFile				file;
+		public long					fileOffset;
+		public long					fileEnd;
+		
+		public QueuedFrame(NetFrame frame, Object key, NetPriority priority) {
+			this.frame		= frame;
+			this.key		= key;
+			this.priority	= priority;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,217 @@
+package netapi.server;
+
+import netapi.NetConfig;
+import netapi.NetProtocol;
+import netapi.packet.NetDatagramPacket;
+import netapi.packet.NetPacket;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+* The thread for sending and receiving datagrams, for packets that
+* may be lost, on the same port as the NetAPI socket. Each player
+* is offered a token over their connection, see NetDatagramPacket,
+* and the client sends it at the start of every datagram. A
+* datagram holding only the token says hello, and is answered with
+* an empty datagram so the client knows datagrams get through. The
+* server only sends datagrams to where the last hello came from,
+* and until one arrives packets go on the connection. Clients keep
+* saying hello while datagrams get through, so a client that stops
+* goes back to the connection once its last hello is too old, see
+* NetConfig.getDatagramTimeout.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetDatagramThread extends Thread {
+	/**
+	* Longest datagram that can arrive
+	*
+	* @since	0.2
+	*/
+	private static final int MAX_DATAGRAM_LENGTH = 0x10000;
+	/**
+	* Channel datagrams are sent and received on
+	*
+	* @since	0.2
+	*/
+	private DatagramChannel channel;
+	/**
+	* Connections offered datagrams, by token
+	*
+	* @since	0.2
+	*/
+	private ConcurrentHashMap<Long, NetConnection> connections = new ConcurrentHashMap<Long, NetConnection>();
+	/**
+	* Source of the tokens, which must not be guessed
+	*
+	* @since	0.2
+	*/
+	private SecureRandom random = new SecureRandom();
+	/**
+	* The logger we are logging with
+	*
+	* @since	0.2
+	*/
+	private Logger log = Logger.getLogger("Minecraft");
+	/**
+	* True while alive
+	*
+	* @since	0.2
+	*/
+	private volatile boolean alive = true;
+	
+	/**
+	* Open the channel for datagrams
+	*
+	* @since	0.2
+	* @throws	IOException	If the address cannot be bound
+	* @param	address		Address to bind to, that of the NetAPI socket
+	*/
+	public NetDatagramThread(SocketAddress address) throws IOException {
+		super("NetAPI datagram thread");
+		channel = DatagramChannel.open();
+		channel.socket().bind(address);
+	}
+	
+	//===============
+	// Connections
+	//===============
+	
+	/**
+	* Offer a connection datagrams
+	*
+	* @since	0.2
+	* @param	connection	Connection to offer them to
+	*/
+	public void offer(NetConnection connection) {
+		long token;
+		do {
+			token = random.nextLong();
+		} while(connections.putIfAbsent(token, connection) != null);
+		
+		connection.setDatagrams(this, token);
+		connection.send(new NetDatagramPacket(token));
+	}
+	
+	/**
+	* Stop accepting datagrams for a connection that has closed
+	*
+	* @since	0.2
+	* @param	token	Token the connection was offered
+	*/
+	void remove(long token) {
+		connections.remove(token);
+	}
+	
+	/**
+	* Send a datagram
+	*
+	* @since	0.2
+	* @param	data	Datagram data
+	* @param	address	Address to send to
+	* @return	False if it could not be sent
+	*/
+	boolean send(ByteBuffer data, SocketAddress address) {
+		try {
+			channel.send(data, address);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	//===============
+	// Receiving
+	//===============
+	
+	/**
+	* Handle a datagram that has arrived
+	*
+	* @since	0.2
+	* @param	data	Datagram data, token first
+	* @param	from	Address it came from
+	*/
+	private void receive(ByteBuffer data, SocketAddress from) {
+		if(data.remaining() < NetProtocol.TOKEN_LENGTH) {
+			return;
+		}
+		
+		NetConnection connection = connections.get(data.getLong());
+		if((connection == null) || !connection.isAlive()) {
+			return;
+		}
+		
+		if(!data.hasRemaining()) {
+			if(connection.setDatagramAddress(from)) {
+				send(ByteBuffer.allocate(0), from);
+			} else {
+				log.fine("(NetAPI) Ignored a datagram hello for " + connection.getSenderName() + " from " + from);
+			}
+			return;
+		} else if(!from.equals(connection.getDatagramAddress())) {
+			return;
+		} else if(data.remaining() > NetConfig.getMaxDatagramBytes()) {
+			return;
+		}
+		
+		// A bad datagram is dropped like a lost one rather than
+		// ending the connection
+		try {
+			NetPacket packet = NetProtocol.decodeDatagram(data);
+			connection.receive(packet);
+		} catch (IOException e) {
+			log.fine("(NetAPI) Bad datagram from " + connection.getSenderName() + "; " + e.getMessage());
+		}
+	}
+	
+	//===============
+	// Thread Management
+	//===============
+	
+	/**
+	* Run the thread, receiving datagrams until stopped
+	*
+	* @since	0.2
+	*/
+	public void run() {
+		log.info("(NetAPI) Listening for NetAPI datagrams");
+		ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_LENGTH);
+		
+		while(alive) {
+			try {
+				buffer.clear();
+				SocketAddress from = channel.receive(buffer);
+				buffer.flip();
+				
+				receive(buffer, from);
+			} catch (IOException e) {
+				if(alive) {
+					log.info("(NetAPI) Receiving datagrams failed; " + e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	* Stop the thread
+	*
+	* @since	0.2
+	*/
+	public void stopThread() {
+		alive = false;
+		
+		try {
+			channel.close();
+		} catch (IOException e) { }
+		
+		connections.clear();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,269 @@
+package netapi.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+* Where each connected player is, grouped into square columns of
+* the world so that a packet sent near a point only looks at the
+* players in the columns around it rather than every player.
+*
+* Positions are set from the server tick, and a player only moves
+* between columns when they cross into another one. Lookups can
+* run on any thread while positions are being set.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetInterestGrid {
+	/**
+	* Blocks along each side of a column
+	*
+	* @since	0.2
+	*/
+	private final int cellSize;
+	/**
+	* Where each player is, guarded by this
+	*
+	* @since	0.2
+	*/
+	private HashMap<String, Entry> players = new HashMap<String, Entry>();
+	/**
+	* Columns holding players in each dimension, by column key
+	*
+	* @since	0.2
+	*/
+	private ConcurrentHashMap<Integer, ConcurrentHashMap<Long, Set<Entry>>> dimensions
+		= new ConcurrentHashMap<Integer, ConcurrentHashMap<Long, Set<Entry>>>();
+	
+	/**
+	* Create an empty grid
+	*
+	* @since	0.2
+	* @param	cellSize	Blocks along each side of a column
+	*/
+	public NetInterestGrid(int cellSize) {
+		this.cellSize = Math.max(1, cellSize);
+	}
+	
+	//===============
+	// Positions
+	//===============
+	
+	/**
+	* Set where a player is
+	*
+	* @since	0.2
+	* @param	username	Player's username
+	* @param	dimension	Dimension the player is in
+	* @param	x			X position
+	* @param	y			Y position
+	* @param	z			Z position
+	*/
+	public synchronized void move(String username, int dimension, double x, double y, double z) {
+		long	cell	= cell(x, z);
+		Entry	entry	= players.get(username);
+		
+		// Still in the same column, so nothing else changes
+		if((entry != null) && (entry.dimension == dimension) && (entry.cell == cell)) {
+			entry.x = x;
+			entry.y = y;
+			entry.z = z;
+			return;
+		}
+		
+		if(entry != null) {
+			removeEntry(entry);
+		}
+		
+		entry = new Entry(username, dimension, cell, x, y, z);
+		players.put(username, entry);
+		
+		ConcurrentHashMap<Long, Set<Entry>> cells = dimensions.get(dimension);
+		if(cells == null) {
+			cells = new ConcurrentHashMap<Long, Set<Entry>>();
+			dimensions.put(dimension, cells);
+		}
+		
+		Set<Entry> column = cells.get(cell);
+		if(column == null) {
+			column = Collections.newSetFromMap(new ConcurrentHashMap<Entry, Boolean>());
+			cells.put(cell, column);
+		}
+		column.add(entry);
+	}
+	
+	/**
+	* Forget where a player is, once they have disconnected
+	*
+	* @since	0.2
+	* @param	username	Player's username
+	*/
+	public synchronized void remove(String username) {
+		Entry entry = players.remove(username);
+		
+		if(entry != null) {
+			removeEntry(entry);
+		}
+	}
+	
+	/**
+	* Take a player out of their column, dropping the column
+	* once it is empty. Called holding the lock.
+	*
+	* @since	0.2
+	* @param	entry	Player's entry
+	*/
+	private void removeEntry(Entry entry) {
+		ConcurrentHashMap<Long, Set<Entry>> cells = dimensions.get(entry.dimension);
+		Set<Entry> column = cells.get(entry.cell);
+		
+		column.remove(entry);
+		if(column.isEmpty()) {
+			cells.remove(entry.cell);
+		}
+	}
+	
+	//===============
+	// Lookups
+	//===============
+	
+	/**
+	* Find the players within a distance of a point
+	*
+	* @since	0.2
+	* @param	dimension	Dimension of the point
+	* @param	x			X position
+	* @param	y			Y position
+	* @param	z			Z position
+	* @param	radius		Distance from the point in blocks
+	* @return	Usernames of the players in range
+	*/
+	public List<String> getPlayersNear(int dimension, double x, double y, double z, double radius) {
+		ArrayList<String> found = new ArrayList<String>();
+		
+		ConcurrentHashMap<Long, Set<Entry>> cells = dimensions.get(dimension);
+		if((cells == null) || !(radius >= 0)) {
+			return found;
+		}
+		
+		int		minX	= column(x - radius);
+		int		maxX	= column(x + radius);
+		int		minZ	= column(z - radius);
+		int		maxZ	= column(z + radius);
+		double	range	= radius * radius;
+		
+		// Fewer columns are occupied than are in range, so look
+		// at those rather than every column in range
+		if(((long) (maxX - minX + 1) * (maxZ - minZ + 1)) > cells.size()) {
+			for(Set<Entry> column : cells.values()) {
+				addNear(column, x, y, z, range, found);
+			}
+		} else {
+			for(int cx = minX; cx <= maxX; cx++) {
+				for(int cz = minZ; cz <= maxZ; cz++) {
+					Set<Entry> column = cells.get(key(cx, cz));
+					if(column != null) {
+						addNear(column, x, y, z, range, found);
+					}
+				}
+			}
+		}
+		
+		return found;
+	}
+	
+	/**
+	* Add the players of a column within range of a point
+	*
+	* @since	0.2
+	* @param	column	Players in the column
+	* @param	x		X position
+	* @param	y		Y position
+	* @param	z		Z position
+	* @param	range	Square of the distance from the point
+	* @param	found	List to add usernames to
+	*/
+	private static void addNear(Set<Entry> column, double x, double y, double z, double range, List<String> found) {
+		for(Entry entry : column) {
+			double dx = entry.x - x;
+			double dy = entry.y - y;
+			double dz = entry.z - z;
+			
+			if((dx * dx + dy * dy + dz * dz) <= range) {
+				found.add(entry.username);
+			}
+		}
+	}
+	
+	//===============
+	// Columns
+	//===============
+	
+	/**
+	* Get the column a coordinate is in along one axis
+	*
+	* @since	0.2
+	* @param	position	X or Z position
+	* @return	Column along that axis
+	*/
+	private int column(double position) {
+		return (int) Math.floor(position / cellSize);
+	}
+	
+	/**
+	* Get the key of the column a position is in
+	*
+	* @since	0.2
+	* @param	x	X position
+	* @param	z	Z position
+	* @return	Column key
+	*/
+	private long cell(double x, double z) {
+		return key(column(x), column(z));
+	}
+	
+	/**
+	* Get the key of a column
+	*
+	* @since	0.2
+	* @param	cx	Column along X
+	* @param	cz	Column along Z
+	* @return	Column key
+	*/
+	private static long key(int cx, int cz) {
+		return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+	}
+	
+	/**
+	* Where a player is. The column is fixed, a player moving to
+	* another column gets a new entry.
+	* No encapsulation since it's just a convenience class
+	*
+	* @author	Clinton Alexander
+	* @version	0.2
+	* @since	0.2
+	*/
+	private static class Entry {
+		public final String		username;
+		public final int		dimension;
+		public final long		cell;
+		public volatile double	x;
+		public volatile double	y;
+		public volatile double	z;
+		
+		public Entry(String username, int dimension, long cell, double x, double y, double z) {
+			this.username	= username;
+			this.dimension	= dimension;
+			this.cell		= cell;
+			this.x			= x;
+			this.y			= y;
+			this.z			= z;
+		}
+	}
+}
\ No newline at end of file
@@ -1,26 +1,44 @@
 package netapi.server;
 
 import netapi.NetAPI;
+import netapi.NetConfig;
+import netapi.NetProtocol;
 
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.net.Socket;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.BufferedInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.io.EOFException;
 import java.io.IOException;
-import java.net.SocketException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+import netapi.packet.NetPacket;
 import netapi.packet.UsernamePacket;
 
 /**
-* The thread for letting netapi servers listen to netapi connections
+* The thread for letting netapi servers listen to netapi connections.
+* Sockets are accepted and their name packets read without
+* blocking, so many players can be part way through joining at
+* once and a slow one holds up nobody else. Datagrams are received
+* on the same port when offered, see NetDatagramThread.
 *
 * @author	Clinton Alexander
-* @version	0.1
+* @version	0.2
 * @since	0.1
 */
 public class NetListenThread extends Thread {
+	/**
+	* Largest name frame accepted
+	*
+	* @since	0.2
+	*/
+	private static final int MAX_HANDSHAKE_LENGTH = 0x1000;
 	/**
 	* Current server socket
 	*
@@ -28,12 +46,42 @@ public class NetListenThread extends Thread {
 	*/
 	private ServerSocket netAPISocket;
 	/**
+	* Selector for accepting sockets and reading their names
+	*
+	* @since	0.2
+	*/
+	private Selector selector;
+	/**
+	* Key of the server socket on the selector
+	*
+	* @since	0.2
+	*/
+	private SelectionKey acceptKey;
+	/**
+	* Sockets yet to send their name, oldest first
+	*
+	* @since	0.2
+	*/
+	private LinkedHashSet<Handshake> handshakes = new LinkedHashSet<Handshake>();
+	/**
 	* The thread for sending accepted players for validation
 	*
 	* @since	0.1
 	*/
 	private NetAssignThread	assignThread;
 	/**
+	* The threads servicing accepted connections
+	*
+	* @since	0.2
+	*/
+	private NetSelectorThread[] selectorThreads;
+	/**
+	* The thread for datagrams, null if they are not offered
+	*
+	* @since	0.2
+	*/
+	private NetDatagramThread datagramThread;
+	/**
 	* The minecraft server instance
 	*
 	* @since	0.1
@@ -44,78 +92,192 @@ public class NetListenThread extends Thread {
 	*
 	* @since	0.1
 	*/
-	private boolean alive = true;
+	private volatile boolean alive = true;
 	
 	/**
-	* Start a new net listen thread
+	* Start a new net listen thread. The socket must have been
+	* opened from a server socket channel.
 	*
 	* @since	0.1
+	* @throws	IOException	If the selectors cannot be opened, or the
+	*						datagram port bound
+	* @param	sock	Socket to listen on
 	*/
-	public NetListenThread(ServerSocket sock) {
+	public NetListenThread(ServerSocket sock) throws IOException {
 		log.info("(NetAPI) NetAPI Server Started");
 		netAPISocket	= sock;
-		assignThread	= new NetAssignThread();
-		NetAPI.setPlayerThread(assignThread);
+		selectorThreads	= new NetSelectorThread[NetConfig.getSelectorThreads()];
 		
-		try {
-			netAPISocket.setSoTimeout(150);
-		} catch (SocketException e) {
-			// Ignore
+		for(int x = 0; x < selectorThreads.length; x++) {
+			selectorThreads[x] = new NetSelectorThread("NetAPI selector thread " + x);
+		}
+		
+		if(NetConfig.isDatagrams()) {
+			datagramThread = new NetDatagramThread(new InetSocketAddress(sock.getInetAddress(), sock.getLocalPort()));
 		}
+		
+		assignThread	= new NetAssignThread(selectorThreads, datagramThread);
+		NetAPI.setPlayerThread(assignThread);
+		
+		ServerSocketChannel channel = netAPISocket.getChannel();
+		channel.configureBlocking(false);
+		selector	= Selector.open();
+		acceptKey	= channel.register(selector, SelectionKey.OP_ACCEPT);
 	}
 	
 	/**
-	* Process a given user
+	* Accept every waiting socket, up to the most handshakes
+	* allowed at once
 	*
-	* @since	0.1
-	* @param	socket		Socket being accepted
+	* @since	0.2
+	* @throws	IOException	If the server socket fails
 	*/
-	private void processUser(Socket socket) {	
-		log.info("(NetAPI) Finding the name of the connected user");
-		log.info("(NetAPI) Creating input stream");
+	private void acceptUsers() throws IOException {
+		int max = NetConfig.getMaxHandshakes();
 		
-		try {
-			ObjectInputStream  ois = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
-			log.info("(NetAPI) Attempting to read name packet");
-			String username = getUsername(ois);
+		while(handshakes.size() < max) {
+			SocketChannel channel = netAPISocket.getChannel().accept();
+			if(channel == null) {
+				return;
+			}
 			
-			if(username instanceof String) {
-				assignThread.assign(username, socket, ois);
-			} else {
-				log.info("(NetAPI) No username, disconnecting user");
+			try {
+				channel.configureBlocking(false);
+				Handshake handshake	= new Handshake(channel);
+				handshake.key		= channel.register(selector, SelectionKey.OP_READ, handshake);
+				handshakes.add(handshake);
+			} catch (IOException e) {
+				log.info("(NetAPI) Could not accept user; " + e.getMessage());
+				channel.close();
 			}
-		} catch (IOException e) {
-			log.info("(NetAPI) Input stream failed; " + e.getMessage());
 		}
+		
+		// The rest wait in the backlog until a handshake finishes
+		acceptKey.interestOps(0);
 	}
 	
 	/**
-	* Get the username packet from a player and return
-	* the username
+	* Read what has arrived of a user's name packet, handing them
+	* on for validation once it is all here
 	*
 	* @since	0.1
-	* @return	A found username
+	* @param	handshake	Handshake of the user
 	*/
-	private String getUsername(ObjectInputStream  ois) {
+	private void processUser(Handshake handshake) {
 		try {
-			Object in = ois.readObject();
+			String username = readUsername(handshake);
 			
-			if(in instanceof UsernamePacket) {
-				UsernamePacket u = (UsernamePacket) in;
-				log.info("(NetAPI) Username: " + u.username + " found");
-				return u.username;
-			} else if(in instanceof Object) {
-				log.info("(NetAPI) Received: " + in.getClass().getName());
-			} else {
-				log.info("(NetAPI) Received null");
+			if(username != null) {
+				finish(handshake);
+				log.info("(NetAPI) Username: " + username + " found");
+				assignThread.assign(username, handshake.channel);
 			}
 		} catch (IOException e) {
-			log.info("(NetAPI) IOException: " + e.getMessage());
-		} catch (ClassNotFoundException e) {
-			log.info("(NetAPI) Could not find class: " + e.getMessage());
+			log.info("(NetAPI) Handshake failed; " + e.getMessage());
+			close(handshake);
+		}
+	}
+	
+	/**
+	* Read the name packet of a user without blocking. Only the
+	* name frame is read, so anything sent after it is left for
+	* the selector thread the channel is handed to.
+	*
+	* @since	0.2
+	* @throws	IOException	If the socket fails or sends something else
+	* @param	handshake	Handshake of the user
+	* @return	The username, or null if it has not all arrived
+	*/
+	private String readUsername(Handshake handshake) throws IOException {
+		if(handshake.channel.read(handshake.buffer) < 0) {
+			throw new EOFException("Closed before sending a name");
+		}
+		
+		if(handshake.header && !handshake.buffer.hasRemaining()) {
+			int length = handshake.buffer.getInt(0);
+			if((length < 0) || (length > MAX_HANDSHAKE_LENGTH)) {
+				throw new IOException("Bad name frame length " + length);
+			}
+			
+			handshake.header	= false;
+			handshake.buffer	= ByteBuffer.allocate(length);
+			
+			if(handshake.channel.read(handshake.buffer) < 0) {
+				throw new EOFException("Closed before sending a name");
+			}
+		}
+		
+		if(handshake.header || handshake.buffer.hasRemaining()) {
+			return null;
+		}
+		
+		NetPacket in = NetProtocol.decode(handshake.buffer.array(), 0, handshake.buffer.limit());
+		if(!(in instanceof UsernamePacket)) {
+			throw new IOException("Received " + in.getClass().getName() + " instead of a name");
 		}
 		
-		return null;
+		return ((UsernamePacket) in).username;
+	}
+	
+	/**
+	* Close handshakes that have run out of time
+	*
+	* @since	0.2
+	* @return	Milliseconds until the next handshake runs out, or
+	*			zero if none are waiting
+	*/
+	private long expireHandshakes() {
+		long now = System.nanoTime();
+		
+		for(Iterator<Handshake> it = handshakes.iterator(); it.hasNext();) {
+			Handshake handshake	= it.next();
+			long remaining		= handshake.deadline - now;
+			
+			// Oldest first, so the rest have longer left
+			if(remaining > 0) {
+				return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+			}
+			
+			log.info("(NetAPI) No name sent in time, disconnecting user");
+			it.remove();
+			closeChannel(handshake);
+		}
+		
+		return 0;
+	}
+	
+	/**
+	* Stop reading a handshake, making room for another
+	*
+	* @since	0.2
+	* @param	handshake	Handshake that has finished
+	*/
+	private void finish(Handshake handshake) {
+		handshake.key.cancel();
+		handshakes.remove(handshake);
+	}
+	
+	/**
+	* Give up on a handshake and close its socket
+	*
+	* @since	0.2
+	* @param	handshake	Handshake to close
+	*/
+	private void close(Handshake handshake) {
+		finish(handshake);
+		closeChannel(handshake);
+	}
+	
+	/**
+	* Close the socket of a handshake
+	*
+	* @since	0.2
+	* @param	handshake	Handshake to close
+	*/
+	private void closeChannel(Handshake handshake) {
+		try {
+			handshake.channel.close();
+		} catch (IOException e) { }
 	}
 	
 	/**
@@ -125,18 +287,51 @@ public class NetListenThread extends Thread {
 	*/
 	public void run() {
 		log.info("(NetAPI) Listening for NetAPI connections");
+		for(NetSelectorThread selectorThread : selectorThreads) {
+			selectorThread.start();
+		}
 		assignThread.start();
+		
+		if(datagramThread != null) {
+			datagramThread.start();
+		}
+		
+		long wait = 0;
 		while(alive) {
 			try {
-				Socket socket = netAPISocket.accept();
-				processUser(socket);
-				Thread.sleep(150);
+				selector.select(wait);
+				
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					
+					if(!key.isValid()) {
+						continue;
+					} else if(key == acceptKey) {
+						acceptUsers();
+					} else {
+						processUser((Handshake) key.attachment());
+					}
+				}
 			} catch (IOException e) {
-				// Intended. I dislike using exceptions as control flow though.
-			} catch (InterruptedException e) {
-				// Psh
+				log.info("(NetAPI) Listening failed; " + e.getMessage());
+			}
+			
+			wait = expireHandshakes();
+			if(acceptKey.isValid() && (handshakes.size() < NetConfig.getMaxHandshakes())) {
+				acceptKey.interestOps(SelectionKey.OP_ACCEPT);
 			}
 		}
+		
+		for(Handshake handshake : handshakes) {
+			closeChannel(handshake);
+		}
+		handshakes.clear();
+		
+		try {
+			selector.close();
+		} catch (IOException e) { }
 	}
 	
 	/** 
@@ -146,6 +341,37 @@ public class NetListenThread extends Thread {
 	*/
 	public void stopThread() {
 		alive = false;
+		selector.wakeup();
 		assignThread.stopThread();
+		
+		if(datagramThread != null) {
+			datagramThread.stopThread();
+		}
+		
+		for(NetSelectorThread selectorThread : selectorThreads) {
+			selectorThread.stopThread();
+		}
+	}
+	
+	/**
+	* A socket part way through sending its name
+	* No encapsulation since it's just a convenience class
+	*
+	* @author	Clinton Alexander
+	* @version	0.2
+	* @since	0.2
+	*/
+	private static class Handshake {
+		public SocketChannel		channel;
+		public SelectionKey			key;
+		public ByteBuffer			buffer	= ByteBuffer.allocate(NetProtocol.HEADER_LENGTH);
+		public boolean				header	= true;
+		public long					deadline;
+		
+		public Handshake(SocketChannel channel) {
+			this.channel	= channel;
+			this.deadline	= System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(NetConfig.getHandshakeReadTimeout());
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,465 @@
+package netapi.server;
+
+import netapi.NetAPI;
+import netapi.NetDispatcher;
+import netapi.NetFile;
+import netapi.NetFrame;
+import netapi.NetFuture;
+import netapi.NetPacketHandler;
+import netapi.NetPriority;
+import netapi.NetRequestTable;
+import netapi.packet.NetCodecRegistry;
+import netapi.packet.NetPacket;
+import netapi.packet.NetP2PPacket;
+import netapi.packet.NetRequestPacket;
+import netapi.packet.NetResponsePacket;
+import netapi.packet.NetSubscribePacket;
+
+import net.minecraft.src.EntityPlayerMP;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+* What every player's NetAPI connection does, however its frames
+* reach the client. Sending is all done through the encoded frame
+* forms, and packets received are handled here once decoded, so a
+* connection only has to queue, write and read frames.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public abstract class NetPlayerConnection {
+	/**
+	* Answers requests from every client, sending each answer
+	* back to the player who asked. One handler for all of them,
+	* so a serial dispatcher answers them one at a time.
+	*
+	* @since	0.2
+	*/
+	private static final NetPacketHandler answerer = new NetPacketHandler() {
+		public void handle(NetPacket packet) {
+			NetAPI.sendPacketToPlayer(NetRequestTable.respond((NetRequestPacket) packet), packet.getSender());
+		}
+	};
+	/**
+	* The logger we are logging with
+	*
+	* @since	0.2
+	*/
+	Logger						log		= Logger.getLogger("Minecraft");
+	/**
+	* Whether this connection is still open
+	*
+	* @since	0.2
+	*/
+	private volatile boolean	alive	= true;
+	/**
+	* Name of user sending data from this connection
+	*
+	* @since	0.2
+	*/
+	private String				senderName;
+	/**
+	* Number of frames dropped because the queue was full
+	*
+	* @since	0.2
+	*/
+	private AtomicInteger		droppedFrames	= new AtomicInteger();
+	/**
+	* Requests sent to the client waiting for an answer
+	*
+	* @since	0.2
+	*/
+	private NetRequestTable		requests	= new NetRequestTable();
+	/**
+	* Mods the client handles packets of, null until it has said
+	* or while it wants every mod
+	*
+	* @since	0.2
+	*/
+	private volatile HashSet<String>	subscriptions;
+	
+	//===============
+	// Setters/ Adders
+	//===============
+	
+	/**
+	* Send the given packet
+	*
+	* @since	0.2
+	* @param	packet	New packet to send
+	*/
+	public void send(NetPacket packet) {
+		send(packet, null);
+	}
+	
+	/**
+	* Send the given packet with a coalescing key. If a packet
+	* sent with the same key is still waiting in the queue, it is
+	* replaced in place by this one rather than both being sent,
+	* so a player that falls behind only catches up on the latest
+	* value of each key.
+	*
+	* @since	0.2
+	* @param	packet	New packet to send
+	* @param	key		Coalescing key, or null to always queue
+	*/
+	public void send(NetPacket packet, Object key) {
+		send(packet, key, null);
+	}
+	
+	/**
+	* Send the given packet with a coalescing key, in the lane of
+	* the given priority
+	*
+	* @since	0.2
+	* @param	packet		New packet to send
+	* @param	key			Coalescing key, or null to always queue
+	* @param	priority	Lane to queue the packet in, or null for
+	*						the priority of its type
+	*/
+	public void send(NetPacket packet, Object key, NetPriority priority) {
+		if(!alive) {
+			return;
+		}
+		
+		try {
+			NetFrame frame = NetFrame.encode(packet);
+			send(frame, key, priority);
+			frame.release();
+		} catch (IOException e) {
+			log.info("(NetAPI) Could not encode packet: " + e.getMessage());
+		}
+	}
+	
+	/**
+	* Send a frame that has already been encoded. The frame is
+	* retained until written, so one frame can be sent on many
+	* connections.
+	*
+	* @since	0.2
+	* @param	frame	Encoded frame
+	*/
+	public void send(NetFrame frame) {
+		send(frame, null, null);
+	}
+	
+	/**
+	* Send a frame that has already been encoded with a coalescing
+	* key, replacing any queued frame with the same key
+	*
+	* @since	0.2
+	* @param	frame	Encoded frame
+	* @param	key		Coalescing key, or null to always queue
+	*/
+	public void send(NetFrame frame, Object key) {
+		send(frame, key, null);
+	}
+	
+	/**
+	* Send a frame that has already been encoded with a coalescing
+	* key, in the lane of the given priority. A frame replacing a
+	* queued frame takes its place, and so its lane.
+	*
+	* @since	0.2
+	* @param	frame		Encoded frame
+	* @param	key			Coalescing key, or null to always queue
+	* @param	priority	Lane to queue the frame in, or null for
+	*						the priority of its packet type
+	*/
+	public abstract void send(NetFrame frame, Object key, NetPriority priority);
+	
+	/**
+	* Send a request to the client, to be answered by the
+	* responder for its type
+	*
+	* @since	0.2
+	* @param	packet	The request to send
+	* @param	timeout	Milliseconds before the request fails
+	* @return	Future of the answer
+	*/
+	public NetFuture request(NetPacket packet, long timeout) {
+		NetFuture future = requests.start(timeout);
+		send(new NetRequestPacket(future.getID(), packet));
+		
+		return future;
+	}
+	
+	/**
+	* Send a file, in the lane of its announcement's priority
+	*
+	* @since	0.2
+	* @throws	UnsupportedOperationException	If files cannot be sent
+	*			on this connection, see canSendFiles
+	* @param	file	File to send
+	*/
+	public void sendFile(NetFile file) {
+		sendFile(file, null);
+	}
+	
+	/**
+	* Send a file in the lane of the given priority. The file is
+	* retained until sent, so one file can be sent on many
+	* connections.
+	*
+	* @since	0.2
+	* @throws	UnsupportedOperationException	If files cannot be sent
+	*			on this connection, see canSendFiles
+	* @param	file		File to send
+	* @param	priority	Lane to queue the file in, or null for
+	*						the priority of its announcement
+	*/
+	public abstract void sendFile(NetFile file, NetPriority priority);
+	
+	/**
+	* Check whether files can be sent on this connection
+	*
+	* @since	0.2
+	* @return	True if sendFile will send them
+	*/
+	public abstract boolean canSendFiles();
+	
+	/**
+	* Send a packet only if this player is keeping up, without
+	* ever dropping packets or disconnecting
+	*
+	* @since	0.2
+	* @param	packet	New packet to send
+	* @return	False if the player is backed up and the packet was not sent
+	*/
+	public boolean trySend(NetPacket packet) {
+		if(!alive || isBackedUp()) {
+			return false;
+		}
+		
+		try {
+			NetFrame frame = NetFrame.encode(packet);
+			boolean sent = trySend(frame);
+			frame.release();
+			
+			return sent;
+		} catch (IOException e) {
+			log.info("(NetAPI) Could not encode packet: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	/**
+	* Send an encoded frame only if this player is keeping up
+	*
+	* @since	0.2
+	* @param	frame	Encoded frame
+	* @return	False if the player is backed up and the frame was not sent
+	*/
+	public abstract boolean trySend(NetFrame frame);
+	
+	/**
+	* Send a packet without waiting out the coalescing window
+	*
+	* @since	0.2
+	* @param	packet	New packet to send
+	*/
+	public void sendNow(NetPacket packet) {
+		send(packet);
+		flush();
+	}
+	
+	/**
+	* Write everything queued as soon as possible, without
+	* waiting out the coalescing window
+	*
+	* @since	0.2
+	*/
+	public abstract void flush();
+	
+	/**
+	* Set the username for sending data
+	*
+	* @since	0.2
+	* @param	username	Username of this sender
+	*/
+	public void setSenderName(String username) {
+		this.senderName = username;
+	}
+	
+	/**
+	* Count a frame dropped because the queue was full
+	*
+	* @since	0.2
+	*/
+	void dropped() {
+		droppedFrames.incrementAndGet();
+	}
+	
+	//===============
+	// Getters
+	//===============
+	
+	/**
+	* Get the username of this connection
+	*
+	* @since	0.2
+	* @return	Username of this sender
+	*/
+	public String getSenderName() {
+		return senderName;
+	}
+	
+	/**
+	* Get the player this connection belongs to
+	*
+	* @since	0.2
+	* @return	Player object, null if not in the game
+	*/
+	public EntityPlayerMP getPlayer() {
+		return NetAPI.getPlayer(senderName);
+	}
+	
+	/**
+	* Check if this player has too much queued to keep up. Set
+	* at the high watermark and cleared at the low watermark.
+	*
+	* @since	0.2
+	* @return	True if backed up
+	*/
+	public abstract boolean isBackedUp();
+	
+	/**
+	* Get the number of frames dropped because the send queue
+	* was full
+	*
+	* @since	0.2
+	* @return	Frames dropped
+	*/
+	public int getDroppedFrames() {
+		return droppedFrames.get();
+	}
+	
+	/**
+	* Check if this connection is still open
+	*
+	* @since	0.2
+	* @return	True if open
+	*/
+	public boolean isAlive() {
+		return alive;
+	}
+	
+	/**
+	* Check if the client wants packets sent to everyone of a
+	* packet's mod. Packets without a mod ID are always wanted, as
+	* is everything until the client has said which mods it
+	* handles. A P2P packet is wanted if its payload is.
+	*
+	* @since	0.2
+	* @param	packet	Packet about to be sent
+	* @return	True if the client handles the packet's mod
+	*/
+	public boolean isSubscribed(NetPacket packet) {
+		HashSet<String> current = subscriptions;
+		if(packet instanceof NetP2PPacket) {
+			packet = ((NetP2PPacket) packet).getPayload();
+		}
+		
+		return (current == null) || !packet.hasModID() || current.contains(packet.getModID());
+	}
+	
+	//===============
+	// Packet processing
+	//===============
+	
+	/**
+	* Handle a packet received from the client
+	*
+	* @since	0.2
+	* @param	in	Received packet
+	*/
+	void receive(NetPacket in) {
+		if(in instanceof NetRequestPacket) {
+			processRequest((NetRequestPacket) in);
+		} else if(in instanceof NetResponsePacket) {
+			in.setSender(senderName);
+			requests.receive((NetResponsePacket) in);
+		} else if(in instanceof NetSubscribePacket) {
+			String[] modIDs = ((NetSubscribePacket) in).getModIDs();
+			// Replaced whole so senders never see it part way
+			subscriptions = (modIDs == null) ? null : new HashSet<String>(Arrays.asList(modIDs));
+		// P2P packets are ignored by the server
+		} else if(in instanceof NetP2PPacket) {
+			NetP2PPacket packet = (NetP2PPacket) in;
+			log.info("(NetAPI) Received a P2P Packet: " + packet.getClass().getName());
+			
+			processP2PPacket(packet);
+		// P2S packets are controlled by the server
+		} else {
+			processPacket(in);
+		}
+	}
+	
+	/**
+	* Process a regular packet
+	*
+	* @param	packet	Packet to handle
+	*/
+	private void processPacket(NetPacket packet) {
+		packet.setSender(senderName);
+		NetPacketHandler[] handlers = NetAPI.getHandlers(packet);
+		
+		NetDispatcher dispatcher = NetAPI.getDispatcher();
+		NetCodecRegistry.dispatched(packet, handlers.length);
+		
+		for(NetPacketHandler handler : handlers) {
+			dispatcher.dispatch(handler, packet);
+		}
+	}
+	
+	/**
+	* Answer a request from the client with the responder for
+	* its type, on the dispatcher like a handler. If the
+	* dispatcher drops it the client is told straight away,
+	* rather than left waiting for it to time out.
+	*
+	* @since	0.2
+	* @param	request	Request to answer
+	*/
+	private void processRequest(NetRequestPacket request) {
+		int id = request.getID();
+		request.setSender(senderName);
+		NetCodecRegistry.dispatched(request, 1);
+		
+		if(!NetAPI.getDispatcher().dispatch(answerer, request)) {
+			send(new NetResponsePacket(id, "Too many requests waiting to be answered"));
+		}
+	}
+	
+	/**
+	* Process an incoming P2P packet and send it on to
+	* any real peers
+	*
+	* @param	packet	Packet to send
+	*/
+	private void processP2PPacket(NetP2PPacket packet) {
+		packet.setSender(senderName);
+		NetAPI.sendPacketToPlayers(packet);
+	}
+	
+	//===============
+	// Connection control methods
+	//===============
+	
+	/**
+	* Close this connection, failing every request still waiting
+	* for the client to answer
+	*
+	* @since	0.2
+	*/
+	public void close() {
+		alive = false;
+		requests.close();
+	}
+}
\ No newline at end of file
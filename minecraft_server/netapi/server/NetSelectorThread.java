@@ -0,0 +1,273 @@
+package netapi.server;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+* A thread servicing the reading and writing of many NetAPI
+* connections with a single selector, so the number of threads
+* stays the same however many players are connected.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetSelectorThread extends Thread {
+	/**
+	* Selector all our connections are registered with
+	*
+	* @since	0.2
+	*/
+	private Selector			selector;
+	/**
+	* Connections waiting to be registered on the selector
+	*
+	* @since	0.2
+	*/
+	private ConcurrentLinkedQueue<NetConnection> registrations = new ConcurrentLinkedQueue<NetConnection>();
+	/**
+	* Connections with newly queued packets to write
+	*
+	* @since	0.2
+	*/
+	private ConcurrentLinkedQueue<NetConnection> writes = new ConcurrentLinkedQueue<NetConnection>();
+	/**
+	* Connections closed by other threads whose queues are left
+	* for this thread to release
+	*
+	* @since	0.2
+	*/
+	private ConcurrentLinkedQueue<NetConnection> releases = new ConcurrentLinkedQueue<NetConnection>();
+	/**
+	* Connections waiting out the coalescing window before
+	* being written. Only used by this thread.
+	*
+	* @since	0.2
+	*/
+	private LinkedList<NetConnection> delayedWrites = new LinkedList<NetConnection>();
+	/**
+	* The logger we are logging with
+	*
+	* @since	0.2
+	*/
+	private Logger				log		= Logger.getLogger("Minecraft");
+	/**
+	* True while alive
+	*
+	* @since	0.2
+	*/
+	private volatile boolean	alive	= true;
+	
+	/**
+	* Create a new selector thread
+	*
+	* @since	0.2
+	* @throws	IOException	If the selector cannot be opened
+	* @param	name	Name of this thread
+	*/
+	public NetSelectorThread(String name) throws IOException {
+		super(name);
+		selector = Selector.open();
+	}
+	
+	//=====================
+	// Connection Management
+	//=====================
+	
+	/**
+	* Register a connection to be serviced by this thread
+	*
+	* @since	0.2
+	* @param	connection	Connection to register
+	*/
+	public void register(NetConnection connection) {
+		connection.setSelectorThread(this);
+		registrations.add(connection);
+		selector.wakeup();
+	}
+	
+	/**
+	* Ask for a connection's queue to be written
+	*
+	* @since	0.2
+	* @param	connection	Connection with new packets
+	*/
+	void requestWrite(NetConnection connection) {
+		writes.add(connection);
+		selector.wakeup();
+	}
+	
+	/**
+	* Ask for the queue of a connection closed by another thread
+	* to be released, as only this thread takes from it
+	*
+	* @since	0.2
+	* @param	connection	Closed connection
+	*/
+	void requestRelease(NetConnection connection) {
+		releases.add(connection);
+		selector.wakeup();
+	}
+	
+	/**
+	* Register all connections waiting to be registered
+	*
+	* @since	0.2
+	*/
+	private void registerConnections() {
+		NetConnection connection;
+		
+		while((connection = registrations.poll()) != null) {
+			if(!connection.isAlive()) {
+				continue;
+			}
+			
+			try {
+				connection.getChannel().configureBlocking(false);
+				connection.setKey(connection.getChannel().register(selector, SelectionKey.OP_READ, connection));
+				// Anything queued before registering
+				connection.writePackets();
+			} catch (IOException e) {
+				log.info("(NetAPI) Could not register " + connection.getSenderName() + ": " + e.getMessage());
+				connection.close();
+			}
+		}
+	}
+	
+	/**
+	* Write all connections with newly queued packets whose
+	* coalescing window has passed
+	*
+	* @since	0.2
+	* @return	Milliseconds until the next write is due, zero if none are waiting
+	*/
+	private long writeConnections() {
+		NetConnection connection;
+		
+		while((connection = writes.poll()) != null) {
+			delayedWrites.add(connection);
+		}
+		
+		long now	= System.nanoTime();
+		long wait	= 0;
+		Iterator<NetConnection> it = delayedWrites.iterator();
+		
+		while(it.hasNext()) {
+			connection = it.next();
+			long remaining = connection.getWriteDeadline() - now;
+			
+			if(remaining > 0) {
+				wait = (wait == 0) ? remaining : Math.min(wait, remaining);
+				continue;
+			}
+			
+			it.remove();
+			// Unregistered connections are written on registration
+			if(connection.isAlive() && connection.isRegistered()) {
+				try {
+					connection.writePackets();
+				} catch (IOException e) {
+					log.info("(NetAPI) Could not send packet: " + e.getMessage());
+					connection.close();
+				} catch (CancelledKeyException e) {
+					connection.close();
+				}
+			}
+		}
+		
+		// Round up so we never wake before the deadline
+		return (wait + 999999L) / 1000000L;
+	}
+	
+	/**
+	* Read and write every connection that is ready
+	*
+	* @since	0.2
+	*/
+	private void processSelectedKeys() {
+		Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+		
+		while(keys.hasNext()) {
+			SelectionKey key = keys.next();
+			keys.remove();
+			NetConnection connection = (NetConnection) key.attachment();
+			
+			try {
+				if(key.isValid() && key.isReadable()) {
+					connection.readPackets();
+				}
+				if(key.isValid() && key.isWritable()) {
+					connection.writePackets();
+				}
+			} catch (IOException e) {
+				log.info("(NetAPI) Connection to " + connection.getSenderName() + " failed: " + e.getMessage());
+				connection.close();
+			} catch (CancelledKeyException e) {
+				connection.close();
+			}
+		}
+	}
+	
+	/**
+	* Release the queues of connections closed by other threads
+	*
+	* @since	0.2
+	*/
+	private void releaseConnections() {
+		NetConnection connection;
+		
+		while((connection = releases.poll()) != null) {
+			connection.releaseQueued();
+		}
+	}
+	
+	//=====================
+	// Thread Management
+	//=====================
+	
+	/**
+	* Run the thread and service connections
+	*
+	* @since	0.2
+	*/
+	public void run() {
+		log.info("(NetAPI) " + getName() + " starting");
+		long timeout = 0;
+		
+		while(alive) {
+			try {
+				// Zero blocks until woken by new packets or sockets
+				selector.select(timeout);
+			} catch (IOException e) {
+				log.warning("(NetAPI) Selector failed: " + e.getMessage());
+				break;
+			}
+			
+			registerConnections();
+			timeout = writeConnections();
+			processSelectedKeys();
+			releaseConnections();
+		}
+		
+		try {
+			selector.close();
+		} catch (IOException e) { }
+		log.info("(NetAPI) " + getName() + " stopped");
+	}
+	
+	/**
+	* Stop the thread
+	*
+	* @since	0.2
+	*/
+	public void stopThread() {
+		alive = false;
+		selector.wakeup();
+	}
+}
\ No newline at end of file
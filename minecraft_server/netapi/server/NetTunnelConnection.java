@@ -0,0 +1,505 @@
+package netapi.server;
+
+import netapi.NetConfig;
+import netapi.NetFile;
+import netapi.NetFrame;
+import netapi.NetLanes;
+import netapi.NetOverflowPolicy;
+import netapi.NetPriority;
+import netapi.NetProtocol;
+import netapi.NetTunnel;
+import netapi.packet.NetCodecContext;
+import netapi.packet.NetPacket;
+import netapi.packet.UsernamePacket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* A player's NetAPI connection carried inside their game
+* connection rather than a socket of its own. Frames are written
+* by the game connection's writer thread and read by its reader
+* thread, so no selector thread is involved.
+*
+* Frames wait in a lane for their priority, see NetLanes, and can
+* be replaced by key while they wait, until the game connection's
+* writer thread takes them with pump. It only takes them while the
+* game connection has less than a batch queued, as frames queued on
+* the game connection cannot be taken back. Past the high watermark
+* the overflow policy is applied as on a socket connection, with
+* frames still in the lanes dropped by the writer thread.
+*
+* Files cannot be sent, as the game connection has no way to send
+* them straight from disk.
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class NetTunnelConnection extends NetPlayerConnection {
+	/**
+	* The game connection frames ride inside
+	*
+	* @since	0.2
+	*/
+	private NetTunnel			tunnel;
+	/**
+	* True until the first frame has been received
+	*
+	* @since	0.2
+	*/
+	private boolean				opening		= true;
+	/**
+	* Frames waiting to be taken by the game connection, by priority
+	*
+	* @since	0.2
+	*/
+	private NetLanes<QueuedFrame> sendLanes = new NetLanes<QueuedFrame>();
+	/**
+	* Queued frames sent with a coalescing key that a newer frame
+	* with the same key can still replace
+	*
+	* @since	0.2
+	*/
+	private ConcurrentHashMap<Object, QueuedFrame> keyedFrames = new ConcurrentHashMap<Object, QueuedFrame>();
+	/**
+	* Bytes of the frames waiting in the lanes
+	*
+	* @since	0.2
+	*/
+	private AtomicInteger		queuedBytes	= new AtomicInteger();
+	/**
+	* True from when the queue passes the high watermark until
+	* it drains to the low watermark
+	*
+	* @since	0.2
+	*/
+	private volatile boolean	backedUp;
+	/**
+	* True when the writer thread should drop frames to bring
+	* the queue back under the high watermark
+	*
+	* @since	0.2
+	*/
+	private volatile boolean	trimRequested;
+	/**
+	* What has been sent to the client, only used by the game
+	* connection's writer thread
+	*
+	* @since	0.2
+	*/
+	private NetCodecContext		sendContext		= new NetCodecContext();
+	/**
+	* What has been received from the client, only used by the
+	* game connection's reader thread
+	*
+	* @since	0.2
+	*/
+	private NetCodecContext		receiveContext	= new NetCodecContext();
+	
+	/**
+	* Create a connection inside a game connection
+	*
+	* @since	0.2
+	* @param	tunnel		The game connection
+	*/
+	public NetTunnelConnection(NetTunnel tunnel) {
+		this.tunnel = tunnel;
+	}
+	
+	//===============
+	// Setters/ Adders
+	//===============
+	
+	/**
+	* Send a frame that has already been encoded with a coalescing
+	* key, in the lane of the given priority. A frame replacing a
+	* queued frame takes its place, and so its lane.
+	*
+	* @since	0.2
+	* @param	frame		Encoded frame
+	* @param	key			Coalescing key, or null to always queue
+	* @param	priority	Lane to queue the frame in, or null for
+	*						the priority of its packet type
+	*/
+	public void send(NetFrame frame, Object key, NetPriority priority) {
+		if(!isAlive()) {
+			return;
+		} else if(priority == null) {
+			priority = frame.getPriority();
+		}
+		
+		if(key != null) {
+			QueuedFrame queued = keyedFrames.get(key);
+			
+			if((queued != null) && replace(queued, frame)) {
+				return;
+			}
+		}
+		
+		if(getQueued() + frame.length() > NetConfig.getHighWaterBytes()) {
+			backedUp = true;
+			
+			if(!overflow()) {
+				return;
+			}
+		}
+		
+		queue(frame, key, priority);
+	}
+	
+	/**
+	* Apply the overflow policy to a frame that does not fit
+	* under the high watermark
+	*
+	* @since	0.2
+	* @return	True if the frame should be queued anyway
+	*/
+	private boolean overflow() {
+		switch(NetConfig.getOverflowPolicy()) {
+			case DISCONNECT:
+				log.warning("(NetAPI) Send queue of " + getSenderName() + " overflowed, disconnecting");
+				close();
+				return false;
+			case DROP_NEWEST:
+				dropped();
+				return false;
+			default:
+				// The writer thread may be taking the oldest frame,
+				// so only it can drop queued frames
+				trimRequested = true;
+				return true;
+		}
+	}
+	
+	/**
+	* Queue a frame in a lane for the game connection to take
+	*
+	* @since	0.2
+	* @param	frame		Encoded frame
+	* @param	key			Coalescing key, or null to always queue
+	* @param	priority	Lane to queue the frame in
+	*/
+	private void queue(NetFrame frame, Object key, NetPriority priority) {
+		QueuedFrame added = new QueuedFrame(frame.retain(), key);
+		sendLanes.add(added, priority);
+		if(key != null) {
+			keyedFrames.put(key, added);
+		}
+		
+		queuedBytes.addAndGet(frame.length());
+	}
+	
+	/**
+	* Replace the frame of a queued frame, unless it has been taken
+	*
+	* @since	0.2
+	* @param	queued	Queued frame to replace
+	* @param	frame	Newer frame
+	* @return	True if replaced
+	*/
+	private boolean replace(QueuedFrame queued, NetFrame frame) {
+		NetFrame older;
+		
+		synchronized(queued) {
+			if(queued.taken) {
+				return false;
+			}
+			
+			older			= queued.frame;
+			queued.frame	= frame.retain();
+		}
+		
+		queuedBytes.addAndGet(frame.length() - older.length());
+		older.release();
+		
+		return true;
+	}
+	
+	/**
+	* Files cannot be sent through the game connection, as it
+	* cannot take them straight from the file
+	*
+	* @since	0.2
+	* @throws	UnsupportedOperationException	Always
+	* @param	file		File to send
+	* @param	priority	Priority, unused
+	*/
+	public void sendFile(NetFile file, NetPriority priority) {
+		throw new UnsupportedOperationException("Cannot send files to " + getSenderName() + " through the game connection");
+	}
+	
+	/**
+	* Check whether files can be sent on this connection
+	*
+	* @since	0.2
+	* @return	False, the game connection cannot carry them
+	*/
+	public boolean canSendFiles() {
+		return false;
+	}
+	
+	/**
+	* Send an encoded frame only if this player is keeping up
+	*
+	* @since	0.2
+	* @param	frame	Encoded frame
+	* @return	False if the player is backed up and the frame was not sent
+	*/
+	public boolean trySend(NetFrame frame) {
+		if(!isAlive() || isBackedUp()) {
+			return false;
+		} else if((getQueued() + frame.length()) > NetConfig.getHighWaterBytes()) {
+			backedUp = true;
+			return false;
+		}
+		
+		send(frame);
+		return true;
+	}
+	
+	/**
+	* Nothing to do, frames are taken by the game connection as
+	* soon as it has room for them
+	*
+	* @since	0.2
+	*/
+	public void flush() {
+	}
+	
+	/**
+	* Move queued frames onto the game connection, in turn from
+	* each lane, until it has a batch queued. Called by the game
+	* connection's writer thread before each packet it writes, and
+	* only by it.
+	*
+	* @since	0.2
+	*/
+	public void pump() {
+		if(!isAlive()) {
+			releaseQueued();
+			return;
+		} else if(trimRequested) {
+			trimQueue();
+		}
+		
+		int maxBatch = NetConfig.getMaxBatchBytes();
+		
+		while((tunnel.getQueuedBytes() < maxBatch) && (sendLanes.peek() != null)) {
+			QueuedFrame queued = sendLanes.remove();
+			NetFrame frame;
+			synchronized(queued) {
+				queued.taken	= true;
+				frame			= queued.frame;
+			}
+			
+			if(queued.key != null) {
+				keyedFrames.remove(queued.key, queued);
+			}
+			
+			sendLanes.charge(frame.length());
+			write(frame);
+			
+			queuedBytes.addAndGet(-frame.length());
+			frame.release();
+		}
+	}
+	
+	/**
+	* Encode a frame for this connection and queue it on the game
+	* connection. The frame is copied, as the game connection keeps
+	* the data until written while the frame's buffer is reused.
+	*
+	* @since	0.2
+	* @param	frame	Frame taken from the lanes
+	*/
+	private void write(NetFrame frame) {
+		ByteBuffer encoded;
+		try {
+			encoded = frame.encode(sendContext);
+		} catch (IOException e) {
+			log.info("(NetAPI) Could not encode packet: " + e.getMessage());
+			return;
+		}
+		
+		byte[] data = new byte[encoded.remaining()];
+		encoded.get(data);
+		
+		tunnel.sendFrame(data, NetProtocol.HEADER_LENGTH, data.length - NetProtocol.HEADER_LENGTH);
+	}
+	
+	/**
+	* Drop frames still waiting in the lanes until the queue is
+	* back under the high watermark. Frames already on the game
+	* connection cannot be taken back. Bulk frames are dropped
+	* first and urgent frames last.
+	*
+	* @since	0.2
+	*/
+	private void trimQueue() {
+		trimRequested = false;
+		int high = NetConfig.getHighWaterBytes();
+		NetPriority[] priorities = NetPriority.values();
+		
+		if(NetConfig.getOverflowPolicy() == NetOverflowPolicy.COALESCE) {
+			// Find the newest frame of each type, the older ones
+			// are not needed once it arrives
+			HashMap<Class, QueuedFrame> newest = new HashMap<Class, QueuedFrame>();
+			for(int x = 0; x < priorities.length; x++) {
+				for(QueuedFrame queued : sendLanes.getLane(priorities[x])) {
+					newest.put(queued.frame.getType(), queued);
+				}
+			}
+			
+			for(int x = priorities.length - 1; x >= 0; x--) {
+				Iterator<QueuedFrame> it = sendLanes.getLane(priorities[x]).iterator();
+				while((getQueued() > high) && it.hasNext()) {
+					QueuedFrame queued = it.next();
+					
+					if(newest.get(queued.frame.getType()) != queued) {
+						it.remove();
+						releaseFrame(queued);
+						dropped();
+					}
+				}
+			}
+		}
+		
+		for(int x = priorities.length - 1; x >= 0; x--) {
+			Iterator<QueuedFrame> it = sendLanes.getLane(priorities[x]).iterator();
+			while((getQueued() > high) && it.hasNext()) {
+				QueuedFrame queued = it.next();
+				
+				it.remove();
+				releaseFrame(queued);
+				dropped();
+			}
+		}
+	}
+	
+	/**
+	* Release every frame still queued once closed. Only called by
+	* the game connection's writer thread, so none are being taken.
+	*
+	* @since	0.2
+	*/
+	private void releaseQueued() {
+		QueuedFrame queued;
+		NetPriority[] priorities = NetPriority.values();
+		for(int x = 0; x < priorities.length; x++) {
+			while((queued = sendLanes.getLane(priorities[x]).poll()) != null) {
+				releaseFrame(queued);
+			}
+		}
+	}
+	
+	/**
+	* Release a frame removed from the lanes without being taken,
+	* so it can no longer be replaced
+	*
+	* @since	0.2
+	* @param	queued	Removed frame
+	*/
+	private void releaseFrame(QueuedFrame queued) {
+		NetFrame frame;
+		synchronized(queued) {
+			queued.taken	= true;
+			frame			= queued.frame;
+		}
+		
+		if(queued.key != null) {
+			keyedFrames.remove(queued.key, queued);
+		}
+		
+		queuedBytes.addAndGet(-frame.length());
+		frame.release();
+	}
+	
+	//===============
+	// Getters
+	//===============
+	
+	/**
+	* Get the bytes queued for the client, on the game connection
+	* and still waiting in the lanes
+	*
+	* @since	0.2
+	* @return	Bytes queued
+	*/
+	private int getQueued() {
+		return tunnel.getQueuedBytes() + queuedBytes.get();
+	}
+	
+	/**
+	* Check if this player has too much queued to keep up. Set
+	* at the high watermark and cleared at the low watermark.
+	*
+	* @since	0.2
+	* @return	True if backed up
+	*/
+	public boolean isBackedUp() {
+		int queued = getQueued();
+		
+		if(queued > NetConfig.getHighWaterBytes()) {
+			backedUp = true;
+		} else if(backedUp && (queued <= NetConfig.getLowWaterBytes())) {
+			backedUp = false;
+		}
+		
+		return backedUp;
+	}
+	
+	//===============
+	// Packet processing
+	//===============
+	
+	/**
+	* Decode and handle a frame read by the game connection
+	*
+	* @since	0.2
+	* @throws	IOException	If the frame is bad
+	* @param	data	Array holding the frame data
+	* @param	offset	Start of the frame data
+	* @param	length	Length of the frame data
+	*/
+	public void receiveFrame(byte[] data, int offset, int length) throws IOException {
+		NetPacket packet = NetProtocol.decode(data, offset, length, receiveContext);
+		
+		if(opening) {
+			opening = false;
+			// The client opens the tunnel with its name
+			if(packet instanceof UsernamePacket) {
+				return;
+			}
+		}
+		
+		if(isAlive()) {
+			receive(packet);
+		}
+	}
+	
+	/**
+	* A frame waiting in the lanes. Until taken by the game
+	* connection a frame with a coalescing key can be replaced, so
+	* the frame is guarded by this while not taken.
+	* No encapsulation since it's just a convenience class
+	*
+	* @author	Clinton Alexander
+	* @version	0.2
+	* @since	0.2
+	*/
+	private static class QueuedFrame {
+		public NetFrame			frame;
+		public final Object		key;
+		public boolean			taken;
+		
+		public QueuedFrame(NetFrame frame, Object key) {
+			this.frame	= frame;
+			this.key	= key;
+		}
+	}
+}
\ No newline at end of file
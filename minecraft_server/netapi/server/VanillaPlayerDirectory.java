@@ -0,0 +1,46 @@
+package netapi.server;
+
+import netapi.NetPlayerDirectory;
+import netapi.NetSession;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.src.EntityPlayerMP;
+
+/**
+* The players logged in to the vanilla server
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class VanillaPlayerDirectory implements NetPlayerDirectory {
+	/**
+	* The server players log in to
+	*
+	* @since	0.2
+	*/
+	private MinecraftServer server;
+	
+	/**
+	* Create a directory of a server's players
+	*
+	* @since	0.2
+	* @param	server	Server instance
+	*/
+	public VanillaPlayerDirectory(MinecraftServer server) {
+		this.server = server;
+	}
+	
+	/**
+	* Find a player in the server's player list
+	*
+	* @since	0.2
+	* @param	username	Player's username
+	* @return	The player's session, or null if not logged in
+	*/
+	public NetSession getSession(String username) {
+		EntityPlayerMP player = server.configManager.getPlayerEntity(username);
+		
+		return (player == null) ? null : new VanillaSession(player);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,40 @@
+package netapi.server;
+
+import netapi.NetSession;
+
+import net.minecraft.src.EntityPlayerMP;
+
+/**
+* A player logged in to the vanilla server
+*
+* @author	Clinton Alexander
+* @version	0.2
+* @since	0.2
+*/
+public class VanillaSession implements NetSession {
+	/**
+	* The player
+	*
+	* @since	0.2
+	*/
+	private EntityPlayerMP player;
+	
+	/**
+	* Create the session of a player
+	*
+	* @since	0.2
+	* @param	player	The player
+	*/
+	public VanillaSession(EntityPlayerMP player) {
+		this.player = player;
+	}
+	
+	public String getUsername() {
+		return player.username;
+	}
+	
+	public void connected() {
+		// The network manager tells NetAPI when the player leaves
+		player.playerNetServerHandler.netManager.setUsername(player.username);
+	}
+}
\ No newline at end of file